@@ -0,0 +1,213 @@
+package io.cloudsoft.tosca.a4c.benchmarks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.classloading.BrooklynClassLoadingContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.entity.software.base.VanillaSoftwareProcess;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+import alien4cloud.model.components.AbstractPropertyValue;
+import alien4cloud.model.components.Csar;
+import alien4cloud.model.components.DeploymentArtifact;
+import alien4cloud.model.components.ScalarPropertyValue;
+import alien4cloud.model.topology.NodeTemplate;
+import alien4cloud.paas.plan.ToscaNodeLifecycleConstants;
+import alien4cloud.paas.plan.ToscaRelationshipLifecycleConstants;
+import alien4cloud.tosca.normative.NormativeRelationshipConstants;
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaFacade;
+import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
+
+/**
+ * A {@link ToscaFacade} answering from the templates of the application alone, so that specs can be built without
+ * A4C's indexed types or Elasticsearch. Scripts are generated rather than read from CSARs, and only scalar
+ * properties are resolved; {@link PropertyResolutionBenchmark} covers resolution by the real facade.
+ * <p>
+ * Plans are not TOSCA but {@link TopologyShape#parse shapes}, such as {@code nodes=10, depth=4}: parsing one
+ * records an archive of that shape, and each application of it has a new topology of the shape, as the real facade
+ * gives each application its own copy of the archive's topology.
+ */
+public class InMemoryToscaFacade implements ToscaFacade<Alien4CloudApplication> {
+
+    private static final Map<String, ConfigKey<String>> LIFECYCLE = ImmutableMap.<String, ConfigKey<String>>builder()
+            .put(ToscaRelationshipLifecycleConstants.PRE_CONFIGURE_SOURCE, VanillaSoftwareProcess.PRE_CUSTOMIZE_COMMAND)
+            .put(ToscaRelationshipLifecycleConstants.POST_CONFIGURE_TARGET, VanillaSoftwareProcess.POST_CUSTOMIZE_COMMAND)
+            .put(ToscaNodeLifecycleConstants.CREATE, VanillaSoftwareProcess.INSTALL_COMMAND)
+            .put(ToscaNodeLifecycleConstants.CONFIGURE, VanillaSoftwareProcess.CUSTOMIZE_COMMAND)
+            .put(ToscaNodeLifecycleConstants.START, VanillaSoftwareProcess.LAUNCH_COMMAND)
+            .build();
+
+    private static final Iterable<String> NODE_OPERATIONS = ImmutableList.of(
+            ToscaNodeLifecycleConstants.CREATE, ToscaNodeLifecycleConstants.CONFIGURE, ToscaNodeLifecycleConstants.START);
+
+    private static final Iterable<String> RELATIONSHIP_OPERATIONS = ImmutableList.of(
+            ToscaRelationshipLifecycleConstants.PRE_CONFIGURE_SOURCE, ToscaRelationshipLifecycleConstants.POST_CONFIGURE_TARGET);
+
+    private static final String ARCHIVE_VERSION = "1.0.0-SNAPSHOT";
+
+    // the shapes of the archives parsed, by name and version
+    private final ConcurrentMap<String, TopologyShape> archives = Maps.newConcurrentMap();
+
+    @Override
+    public Map<String, Object> getPropertiesAndTypeValuesByRelationshipId(String nodeId, Alien4CloudApplication toscaApplication, String relationshipId, String computeName) {
+        return ImmutableMap.<String, Object>of();
+    }
+
+    @Override
+    public Optional<Path> getArtifactPath(String nodeId, Alien4CloudApplication toscaApplication, String artifactId) {
+        return Optional.absent();
+    }
+
+    @Override
+    public String getArtifactRef(String nodeId, Alien4CloudApplication toscaApplication, String artifactId) {
+        DeploymentArtifact artifact = toscaApplication.getNodeTemplate(nodeId).getArtifacts().get(artifactId);
+        return artifact != null ? artifact.getArtifactRef() : null;
+    }
+
+    @Override
+    public Iterable<String> getArtifacts(String nodeId, Alien4CloudApplication toscaApplication) {
+        Map<String, DeploymentArtifact> artifacts = toscaApplication.getNodeTemplate(nodeId).getArtifacts();
+        return artifacts != null ? artifacts.keySet() : ImmutableList.<String>of();
+    }
+
+    @Override
+    public Optional<Path> getCsarPath(String archiveName, String archiveVersion) {
+        return Optional.absent();
+    }
+
+    @Override
+    public ConfigKey<String> getLifeCycle(String opKey) {
+        return LIFECYCLE.get(opKey);
+    }
+
+    @Override
+    public String getParentId(String nodeId, Alien4CloudApplication toscaApplication) {
+        return toscaApplication.getGraph().getHost(nodeId);
+    }
+
+    @Override
+    public Map<String, Object> getResolvedAttributes(String nodeId, Alien4CloudApplication toscaApplication) {
+        return ImmutableMap.<String, Object>of();
+    }
+
+    @Override
+    public Optional<Object> getScript(String opKey, String nodeId, Alien4CloudApplication toscaApplication, String computeName, String expandedFolder, @Nullable ManagementContext mgmt) {
+        return Optional.<Object>of("echo " + opKey + " " + nodeId + " on " + computeName);
+    }
+
+    @Override
+    public Iterable<String> getInterfaceOperations(String nodeId, Alien4CloudApplication toscaApplication) {
+        return NODE_OPERATIONS;
+    }
+
+    @Override
+    public Multimap<String, String> getOperationOutputs(String nodeId, Alien4CloudApplication toscaApplication) {
+        // the generated topologies do not use get_operation_output
+        return ImmutableMultimap.of();
+    }
+
+    @Override
+    public Map<String, Object> getTemplatePropertyObjects(String nodeId, Alien4CloudApplication toscaApplication, String computeName) {
+        Map<String, Object> result = MutableMap.of();
+        for (Map.Entry<String, AbstractPropertyValue> property : toscaApplication.getNodeTemplate(nodeId).getProperties().entrySet()) {
+            if (property.getValue() instanceof ScalarPropertyValue) {
+                result.put(property.getKey(), ((ScalarPropertyValue) property.getValue()).getValue());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isDerivedFrom(String nodeId, Alien4CloudApplication toscaApplication, String type) {
+        NodeTemplate nodeTemplate = toscaApplication.getNodeTemplate(nodeId);
+        return nodeTemplate.getType().equals(type);
+    }
+
+    /**
+     * @param id the shape of the topology
+     */
+    @Override
+    public Alien4CloudApplication newToscaApplication(String id) {
+        TopologyShape shape = TopologyShape.parse(id);
+        return new Alien4CloudApplication(id, shape.newTopology(), id, null);
+    }
+
+    @Override
+    public Alien4CloudApplication parsePlan(String plan, Uploader uploader, BrooklynClassLoadingContext context) {
+        return newToscaApplication(parseArchive(plan, uploader, context));
+    }
+
+    @Override
+    public Csar parseArchive(String plan, Uploader uploader, BrooklynClassLoadingContext context) {
+        TopologyShape shape = TopologyShape.parse(plan);
+        Csar archive = new Csar("benchmark-" + shape.toString().replaceAll("[^A-Za-z0-9]+", "-"), ARCHIVE_VERSION);
+        archives.put(key(archive), shape);
+        return archive;
+    }
+
+    @Override
+    public Alien4CloudApplication newToscaApplication(Csar archive) {
+        TopologyShape shape = archives.get(key(archive));
+        if (shape == null) {
+            throw new IllegalArgumentException("No archive " + key(archive) + " has been parsed");
+        }
+        return new Alien4CloudApplication(archive.getName(), shape.newTopology(), "", archive);
+    }
+
+    /**
+     * @param path a file holding the shape of the topology
+     */
+    @Override
+    public Alien4CloudApplication parsePlan(Path path, Uploader uploader) {
+        try {
+            return parsePlan(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), uploader, null);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static String key(Csar archive) {
+        return archive.getName() + ":" + archive.getVersion();
+    }
+
+    @Override
+    public Iterable<String> getInterfaceOperationsByRelationship(Alien4CloudApplication toscaApplication, ToscaApplication.Relationship relationship) {
+        return NormativeRelationshipConstants.HOSTED_ON.equals(relationship.getRelationshipType())
+                ? ImmutableList.<String>of() : RELATIONSHIP_OPERATIONS;
+    }
+
+    @Override
+    public Object resolveProperty(String nodeId, Alien4CloudApplication toscaApplication, String key) {
+        AbstractPropertyValue value = toscaApplication.getNodeTemplate(nodeId).getProperties().get(key);
+        return value instanceof ScalarPropertyValue ? ((ScalarPropertyValue) value).getValue() : null;
+    }
+
+    @Override
+    public Map<String, Object> getInputDefaults(Alien4CloudApplication toscaApplication) {
+        return ImmutableMap.<String, Object>of("password", "benchmark");
+    }
+
+    @Override
+    public Optional<Object> getRelationshipScript(String opKey, Alien4CloudApplication toscaApplication, ToscaApplication.Relationship relationship, String computeName, String expandedFolder, @Nullable ManagementContext mgmt) {
+        return Optional.<Object>of("echo " + opKey + " " + relationship.getRelationshipId() + " on " + computeName);
+    }
+
+}
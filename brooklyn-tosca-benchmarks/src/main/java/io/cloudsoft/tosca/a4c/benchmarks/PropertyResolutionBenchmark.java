@@ -0,0 +1,104 @@
+package io.cloudsoft.tosca.a4c.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import alien4cloud.application.ApplicationService;
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.component.repository.ICsarRepositry;
+import alien4cloud.deployment.DeploymentTopologyService;
+import alien4cloud.model.topology.NodeTemplate;
+import alien4cloud.model.topology.Topology;
+import alien4cloud.paas.model.PaaSNodeTemplate;
+import alien4cloud.paas.model.PaaSTopology;
+import alien4cloud.paas.plan.TopologyTreeBuilderService;
+import alien4cloud.topology.TopologyServiceCore;
+import alien4cloud.topology.TopologyTemplateVersionService;
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudFacade;
+
+/**
+ * Resolves the properties of every node of a topology with the real {@link Alien4CloudFacade}. The A4C services it
+ * uses are mocks, the PaaS topology being built directly from the node templates, so no Elasticsearch is needed.
+ * <p>
+ * {@code resolveWarm} reuses one application, so measures resolution once the topology context is built;
+ * {@code resolveCold} starts from a new application each time, as creating a spec from a plan does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PropertyResolutionBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int nodes;
+
+    @Param({"4"})
+    public int depth;
+
+    private Alien4CloudFacade facade;
+    private TopologyShape shape;
+    private Topology topology;
+    private Alien4CloudApplication application;
+    private List<String> nodeIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        shape = new TopologyShape(nodes, depth, 0, 0, 0);
+        topology = shape.newTopology();
+        nodeIds = shape.getNodeIds();
+
+        Map<String, PaaSNodeTemplate> paasNodes = MutableMap.of();
+        for (Map.Entry<String, NodeTemplate> node : topology.getNodeTemplates().entrySet()) {
+            paasNodes.put(node.getKey(), new PaaSNodeTemplate(node.getKey(), node.getValue()));
+        }
+        PaaSTopology paasTopology = mock(PaaSTopology.class);
+        when(paasTopology.getAllNodes()).thenReturn(paasNodes);
+        TopologyTreeBuilderService treeBuilder = mock(TopologyTreeBuilderService.class);
+        when(treeBuilder.buildPaaSTopology(any(Topology.class))).thenReturn(paasTopology);
+
+        facade = new Alien4CloudFacade(mock(ICSARRepositorySearchService.class), treeBuilder, mock(ICsarRepositry.class),
+                mock(TopologyServiceCore.class), mock(TopologyTemplateVersionService.class),
+                mock(DeploymentTopologyService.class), mock(ApplicationService.class));
+        application = shape.newApplication(topology);
+    }
+
+    @Benchmark
+    public void resolveWarm(Blackhole blackhole) {
+        resolveAll(application, blackhole);
+    }
+
+    @Benchmark
+    public void resolveCold(Blackhole blackhole) {
+        resolveAll(shape.newApplication(topology), blackhole);
+    }
+
+    private void resolveAll(Alien4CloudApplication target, Blackhole blackhole) {
+        for (String nodeId : nodeIds) {
+            blackhole.consume(facade.getTemplatePropertyObjects(nodeId, target, nodeId));
+        }
+    }
+
+}
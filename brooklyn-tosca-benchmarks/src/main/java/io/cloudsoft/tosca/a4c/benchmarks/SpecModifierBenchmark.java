@@ -0,0 +1,127 @@
+package io.cloudsoft.tosca.a4c.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContextForTests;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.common.collect.ImmutableList;
+
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.ApplicationSpecsBuilder;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.Alien4CloudEntitySpecFactory;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.EntitySpecModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.NormativeTypesAttributesModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.PropertiesConfigKeyModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.ProvisioningPropertiesModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.RelationshipModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.RuntimeEnvironmentModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.StandardInterfaceLifecycleModifier;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.TemplateAttributesModifier;
+
+/**
+ * Applies one spec modifier to a new spec for every node of a topology. Creating the specs is included in each
+ * invocation, as modifiers change the specs they are given; {@code spec-only} measures that alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecModifierBenchmark {
+
+    @Param({"spec-only", "NormativeTypesAttributesModifier", "PropertiesConfigKeyModifier",
+            "ProvisioningPropertiesModifier", "RelationshipModifier", "RuntimeEnvironmentModifier",
+            "StandardInterfaceLifecycleModifier", "TemplateAttributesModifier"})
+    public String modifier;
+
+    @Param({"100"})
+    public int nodes;
+
+    @Param({"4"})
+    public int depth;
+
+    @Param({"8"})
+    public int fanIn;
+
+    @Param({"3"})
+    public int artifacts;
+
+    private ManagementContext mgmt;
+    private Alien4CloudEntitySpecFactory specFactory;
+    private EntitySpecModifier specModifier;
+    private Alien4CloudApplication application;
+    private List<String> nodeIds;
+
+    /**
+     * @return the modifiers the platform applies, in a fixed order
+     */
+    public static List<EntitySpecModifier> newSpecModifiers(ManagementContext mgmt, InMemoryToscaFacade facade) {
+        return ImmutableList.<EntitySpecModifier>of(
+                new NormativeTypesAttributesModifier(mgmt, facade),
+                new PropertiesConfigKeyModifier(mgmt, facade),
+                new ProvisioningPropertiesModifier(mgmt, facade),
+                new RelationshipModifier(mgmt, facade),
+                new RuntimeEnvironmentModifier(mgmt, facade),
+                new StandardInterfaceLifecycleModifier(mgmt, facade),
+                new TemplateAttributesModifier(mgmt, facade));
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mgmt = LocalManagementContextForTests.newInstance();
+        InMemoryToscaFacade facade = new InMemoryToscaFacade();
+        specFactory = new Alien4CloudEntitySpecFactory(mgmt, facade);
+        for (EntitySpecModifier candidate : newSpecModifiers(mgmt, facade)) {
+            if (candidate.getClass().getSimpleName().equals(modifier)) {
+                specModifier = candidate;
+            }
+        }
+        if (specModifier == null && !"spec-only".equals(modifier)) {
+            throw new IllegalArgumentException("Unknown modifier " + modifier);
+        }
+
+        TopologyShape shape = new TopologyShape(nodes, depth, fanIn, artifacts, 0);
+        application = shape.newApplication(shape.newTopology());
+        nodeIds = shape.getNodeIds();
+        for (String nodeId : nodeIds) {
+            application.setNodeName(nodeId, nodeId);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    @Benchmark
+    public void apply(Blackhole blackhole) {
+        for (String nodeId : nodeIds) {
+            EntitySpec<?> spec = specFactory.create(nodeId, application);
+            spec.configure(ApplicationSpecsBuilder.TOSCA_TEMPLATE_ID, nodeId);
+            if (specModifier != null) {
+                specModifier.apply(spec, nodeId, application);
+            }
+            blackhole.consume(spec);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package io.cloudsoft.tosca.a4c.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.mgmt.internal.LocalManagementContextForTests;
+import org.apache.brooklyn.entity.stock.BasicApplication;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import alien4cloud.model.topology.Topology;
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplicationSpecsBuilder;
+import io.cloudsoft.tosca.a4c.brooklyn.spec.Alien4CloudEntitySpecFactory;
+
+/**
+ * Builds the specs, then the policies, of synthetic topologies of various shapes, with all of the spec modifiers
+ * the platform uses. Each invocation starts from a new {@link Alien4CloudApplication}, as each call to create a
+ * spec from a plan does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SpecsBuilderBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int nodes;
+
+    @Param({"1", "4"})
+    public int depth;
+
+    @Param({"0", "8"})
+    public int fanIn;
+
+    @Param({"0", "3"})
+    public int artifacts;
+
+    @Param({"0", "10"})
+    public int policies;
+
+    private ManagementContext mgmt;
+    private InMemoryToscaFacade facade;
+    private Alien4CloudEntitySpecFactory specFactory;
+    private TopologyShape shape;
+    private Topology topology;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mgmt = LocalManagementContextForTests.newInstance();
+        facade = new InMemoryToscaFacade();
+        specFactory = new Alien4CloudEntitySpecFactory(mgmt, facade);
+        shape = new TopologyShape(nodes, depth, fanIn, artifacts, policies);
+        topology = shape.newTopology();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+
+    private Alien4CloudApplicationSpecsBuilder newBuilder() {
+        return new Alien4CloudApplicationSpecsBuilder(mgmt, specFactory, SpecModifierBenchmark.newSpecModifiers(mgmt, facade), facade);
+    }
+
+    @Benchmark
+    public Map<String, EntitySpec<?>> getSpecs() {
+        return newBuilder().getSpecs(shape.newApplication(topology));
+    }
+
+    @Benchmark
+    public EntitySpec<BasicApplication> getSpecsAndAddPolicies() {
+        Alien4CloudApplication application = shape.newApplication(topology);
+        Alien4CloudApplicationSpecsBuilder builder = newBuilder();
+        EntitySpec<BasicApplication> rootSpec = EntitySpec.create(BasicApplication.class);
+        Map<String, EntitySpec<?>> specs = builder.getSpecs(application);
+        rootSpec.children(specs.values());
+        builder.addToscaPolicies(rootSpec, application, specs);
+        return rootSpec;
+    }
+
+}
@@ -0,0 +1,172 @@
+package io.cloudsoft.tosca.a4c.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.entity.software.base.VanillaSoftwareProcess;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import alien4cloud.model.components.AbstractPropertyValue;
+import alien4cloud.model.components.DeploymentArtifact;
+import alien4cloud.model.components.FunctionPropertyValue;
+import alien4cloud.model.components.ScalarPropertyValue;
+import alien4cloud.model.topology.AbstractPolicy;
+import alien4cloud.model.topology.GenericPolicy;
+import alien4cloud.model.topology.NodeGroup;
+import alien4cloud.model.topology.NodeTemplate;
+import alien4cloud.model.topology.RelationshipTemplate;
+import alien4cloud.model.topology.Topology;
+import alien4cloud.tosca.normative.NormativeComputeConstants;
+import alien4cloud.tosca.normative.NormativeRelationshipConstants;
+import alien4cloud.tosca.normative.ToscaFunctionConstants;
+import io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplication;
+
+/**
+ * Builds synthetic topologies in memory, without A4C or Elasticsearch.
+ * <p>
+ * Nodes are laid out in chains of {@code depth} nodes, each hosted on the one before and the first a compute node.
+ * With a {@code fanIn} greater than one, each node also depends on an earlier node such that every target of these
+ * relationships has about {@code fanIn} sources. Every node has {@code artifacts} artifacts, referenced by URL so
+ * no CSAR is needed, and there are {@code policies} groups of one node, each with a policy.
+ */
+public class TopologyShape {
+
+    public static final String SOFTWARE_TYPE = VanillaSoftwareProcess.class.getName();
+    public static final String POLICY_TYPE = "org.apache.brooklyn.policy.ha.ServiceRestarter";
+    public static final String DEPENDS_ON = "tosca.relationships.DependsOn";
+
+    private final int nodes;
+    private final int depth;
+    private final int fanIn;
+    private final int artifacts;
+    private final int policies;
+
+    public TopologyShape(int nodes, int depth, int fanIn, int artifacts, int policies) {
+        this.nodes = nodes;
+        this.depth = Math.max(1, depth);
+        this.fanIn = fanIn;
+        this.artifacts = artifacts;
+        this.policies = policies;
+    }
+
+    /**
+     * @param description a shape as described by {@link #toString()}, such as {@code nodes=10, depth=4}; omitted
+     *                    counts are 0
+     */
+    public static TopologyShape parse(String description) {
+        Map<String, Integer> counts = MutableMap.of();
+        for (Map.Entry<String, String> count : Splitter.on(',').trimResults().omitEmptyStrings()
+                .withKeyValueSeparator(Splitter.on('=').trimResults()).split(description.trim()).entrySet()) {
+            counts.put(count.getKey(), Integer.parseInt(count.getValue()));
+        }
+        TopologyShape shape = new TopologyShape(count(counts, "nodes"), count(counts, "depth"), count(counts, "fanIn"),
+                count(counts, "artifacts"), count(counts, "policies"));
+        if (!counts.isEmpty()) {
+            throw new IllegalArgumentException("Unknown counts " + counts.keySet() + " in topology shape " + description);
+        }
+        return shape;
+    }
+
+    private static int count(Map<String, Integer> counts, String name) {
+        Integer count = counts.remove(name);
+        return count != null ? count : 0;
+    }
+
+    public static String nodeId(int i) {
+        return "node" + i;
+    }
+
+    public Topology newTopology() {
+        Map<String, NodeTemplate> nodeTemplates = MutableMap.of();
+        for (int i = 0; i < nodes; i++) {
+            NodeTemplate node = new NodeTemplate();
+            node.setName(nodeId(i));
+            boolean compute = i % depth == 0;
+            node.setType(compute ? NormativeComputeConstants.COMPUTE_TYPE : SOFTWARE_TYPE);
+            node.setProperties(properties(i));
+
+            Map<String, RelationshipTemplate> relationships = MutableMap.of();
+            if (!compute) {
+                relationships.put("host", relationship(NormativeRelationshipConstants.HOSTED_ON, nodeId(i - 1), "host"));
+            }
+            if (fanIn > 1 && i / fanIn != i) {
+                relationships.put("dependency", relationship(DEPENDS_ON, nodeId(i / fanIn), "dependency"));
+            }
+            node.setRelationships(relationships);
+
+            Map<String, DeploymentArtifact> nodeArtifacts = MutableMap.of();
+            for (int a = 0; a < artifacts; a++) {
+                DeploymentArtifact artifact = new DeploymentArtifact();
+                artifact.setArtifactName("artifact" + a);
+                artifact.setArtifactType("tosca.artifacts.File");
+                artifact.setArtifactRef("classpath://benchmarks/" + nodeId(i) + "/artifact" + a + ".sh");
+                nodeArtifacts.put("artifact" + a, artifact);
+            }
+            node.setArtifacts(nodeArtifacts);
+            nodeTemplates.put(nodeId(i), node);
+        }
+
+        Map<String, NodeGroup> groups = MutableMap.of();
+        for (int p = 0; p < policies && nodes > 0; p++) {
+            GenericPolicy policy = new GenericPolicy();
+            policy.setName("policy" + p);
+            policy.setType(POLICY_TYPE);
+            policy.setData(MutableMap.<String, Object>of("failOnRecurringFailuresInThisDuration", "5m"));
+            NodeGroup group = new NodeGroup();
+            group.setName("group" + p);
+            group.setMembers(ImmutableSet.of(nodeId(p % nodes)));
+            group.setPolicies(ImmutableList.<AbstractPolicy>of(policy));
+            groups.put(group.getName(), group);
+        }
+
+        Topology topology = new Topology();
+        topology.setNodeTemplates(nodeTemplates);
+        topology.setGroups(groups);
+        topology.setDependencies(ImmutableSet.of());
+        return topology;
+    }
+
+    /**
+     * @return a new application for the topology, as each call to create a spec would have
+     */
+    public Alien4CloudApplication newApplication(Topology topology) {
+        return new Alien4CloudApplication("benchmark", topology, "benchmark-deployment", null);
+    }
+
+    private static Map<String, AbstractPropertyValue> properties(int i) {
+        return ImmutableMap.<String, AbstractPropertyValue>of(
+                "port", new ScalarPropertyValue(String.valueOf(8000 + i)),
+                "name", new ScalarPropertyValue(nodeId(i)),
+                "password", new FunctionPropertyValue(ToscaFunctionConstants.GET_INPUT, ImmutableList.of("password")),
+                "address", new FunctionPropertyValue(ToscaFunctionConstants.GET_ATTRIBUTE, ImmutableList.of(ToscaFunctionConstants.HOST, "ip_address")));
+    }
+
+    private static RelationshipTemplate relationship(String type, String target, String requirement) {
+        RelationshipTemplate relationship = new RelationshipTemplate();
+        relationship.setType(type);
+        relationship.setTarget(target);
+        relationship.setRequirementName(requirement);
+        relationship.setRequirementType(type);
+        return relationship;
+    }
+
+    public List<String> getNodeIds() {
+        List<String> result = MutableList.of();
+        for (int i = 0; i < nodes; i++) {
+            result.add(nodeId(i));
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "nodes=" + nodes + ", depth=" + depth + ", fanIn=" + fanIn + ", artifacts=" + artifacts + ", policies=" + policies;
+    }
+
+}
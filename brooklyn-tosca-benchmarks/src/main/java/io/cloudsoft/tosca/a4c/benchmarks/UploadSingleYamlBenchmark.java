@@ -0,0 +1,96 @@
+package io.cloudsoft.tosca.a4c.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.util.stream.Streams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import alien4cloud.model.components.Csar;
+import alien4cloud.tosca.ArchiveUploadService;
+import alien4cloud.tosca.parser.ParsingContext;
+import alien4cloud.tosca.parser.ParsingResult;
+import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
+
+/**
+ * Packages a single YAML plan as a CSAR with {@link Uploader#uploadSingleYaml}, comparing the archive built in
+ * memory ({@code inMemory=true}) with the one built from a temporary directory. The upload service is a mock, so
+ * only building and cleaning up the archive is measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadSingleYamlBenchmark {
+
+    @Param({"true", "false"})
+    public boolean inMemory;
+
+    @Param({"10", "100", "1000"})
+    public int nodes;
+
+    private Uploader uploader;
+    private String plan;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        if (inMemory) {
+            BrooklynFeatureEnablement.enable(Uploader.FEATURE_IN_MEMORY_CSAR);
+        } else {
+            BrooklynFeatureEnablement.disable(Uploader.FEATURE_IN_MEMORY_CSAR);
+        }
+        ParsingContext context = mock(ParsingContext.class);
+        when(context.getParsingErrors()).thenReturn(ImmutableList.of());
+        ParsingResult<Csar> result = mock(ParsingResult.class);
+        when(result.getContext()).thenReturn(context);
+        ArchiveUploadService archiveUploadService = mock(ArchiveUploadService.class);
+        when(archiveUploadService.upload(any(Path.class))).thenReturn(result);
+        uploader = new Uploader(archiveUploadService);
+        plan = newPlan(nodes);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BrooklynFeatureEnablement.clearCache();
+    }
+
+    @Benchmark
+    public Object upload() {
+        return uploader.uploadSingleYaml(Streams.newInputStreamWithContents(plan), "benchmark");
+    }
+
+    private static String newPlan(int nodes) {
+        StringBuilder result = new StringBuilder()
+                .append("tosca_definitions_version: tosca_simple_yaml_1_0\n")
+                .append("topology_template:\n")
+                .append("  node_templates:\n");
+        for (int i = 0; i < nodes; i++) {
+            result.append("    ").append(TopologyShape.nodeId(i)).append(":\n")
+                    .append("      type: tosca.nodes.Compute\n");
+        }
+        return result.toString();
+    }
+
+}
@@ -1,15 +1,15 @@
 package io.cloudsoft.tosca.a4c.brooklyn;
 
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.brooklyn.util.text.Strings;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
 
 import alien4cloud.model.components.Csar;
 import alien4cloud.model.topology.NodeTemplate;
@@ -26,11 +26,28 @@ public class Alien4CloudApplication implements ToscaApplication {
     // so let's _us_ maintain it as well
     private final Csar archive;
 
+    // built on demand by Alien4CloudFacade; cleared by invalidate()
+    private volatile Alien4CloudTopologyContext topologyContext;
+    private final Predicate<String> isHostedOn;
+    // built on first use; cleared by invalidate()
+    private volatile Alien4CloudTopologyGraph graph;
+    // keyword maps by node id; cleared by invalidate() and whenever a node is renamed
+    private final ConcurrentMap<String, Map<String, String>> keywordMaps = Maps.newConcurrentMap();
+
     public Alien4CloudApplication(String name, Topology deploymentTopology, String deploymentId, Csar archive) {
+        this(name, deploymentTopology, deploymentId, archive, Predicates.equalTo(NormativeRelationshipConstants.HOSTED_ON));
+    }
+
+    /**
+     * @param isHostedOn whether a relationship type is (or is derived from) {@code tosca.relationships.HostedOn},
+     *                   used to find the host of each node for the {@code HOST} keyword
+     */
+    public Alien4CloudApplication(String name, Topology deploymentTopology, String deploymentId, Csar archive, Predicate<String> isHostedOn) {
         this.name = name;
         this.deploymentTopology = deploymentTopology;
         this.deploymentId = deploymentId;
         this.archive = archive;
+        this.isHostedOn = isHostedOn;
     }
 
     @Override
@@ -62,14 +79,48 @@ public class Alien4CloudApplication implements ToscaApplication {
     public Csar getArchive() {
         return archive;
     }
-    
+
+    /**
+     * @return the compiled context for the topology, or null if it has not been built since the last
+     * {@link #invalidate()}
+     */
+    public Alien4CloudTopologyContext getTopologyContext() {
+        return topologyContext;
+    }
+
+    public void setTopologyContext(Alien4CloudTopologyContext topologyContext) {
+        this.topologyContext = topologyContext;
+    }
+
+    /**
+     * Discards anything compiled from the topology. Must be called if the topology is changed after specs
+     * have been requested for this application.
+     */
+    public void invalidate() {
+        topologyContext = null;
+        graph = null;
+        keywordMaps.clear();
+    }
+
+    /**
+     * @return the indexed snapshot of the topology's nodes and relationships
+     */
+    public Alien4CloudTopologyGraph getGraph() {
+        Alien4CloudTopologyGraph result = graph;
+        if (result == null) {
+            // building twice if two threads race here is harmless, the results are equivalent
+            result = new Alien4CloudTopologyGraph(getTopology(), isHostedOn);
+            graph = result;
+        }
+        return result;
+    }
+
     private Map<String, NodeTemplate> getNodeTemplates(){
-        if (getTopology()==null) return ImmutableMap.of();
-        return ImmutableMap.copyOf(getTopology().getNodeTemplates());
+        return getGraph().getNodes();
     }
 
     public NodeTemplate getNodeTemplate(String id) {
-        return getNodeTemplates().get(id);
+        return getGraph().getNode(id);
     }
 
     @Override
@@ -83,42 +134,42 @@ public class Alien4CloudApplication implements ToscaApplication {
 
     @Override
     public Map<String, String> getKeywordMap(String id) {
-        return getKeywordMap(getNodeTemplate(id));
+        Map<String, String> result = keywordMaps.get(id);
+        if (result == null) {
+            result = buildKeywordMap(id);
+            keywordMaps.put(id, result);
+        }
+        return result;
     }
 
     public Map<String, String> getKeywordMap(NodeTemplate nodeTemplate) {
+        String id = getGraph().getNodeId(nodeTemplate);
+        if (id == null) {
+            // not one of our templates; it has no hosts we know of
+            ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+            if (nodeTemplate.getName() != null) {
+                builder.put("SELF", nodeTemplate.getName());
+                builder.put("HOST", nodeTemplate.getName());
+            }
+            return builder.build();
+        }
+        return getKeywordMap(id);
+    }
+
+    private Map<String, String> buildKeywordMap(String id) {
+        Alien4CloudTopologyGraph graph = getGraph();
         ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
-        String nodeTemplateName = nodeTemplate.getName();
+        String nodeTemplateName = graph.getNode(id).getName();
         if (nodeTemplateName != null) {
             builder.put("SELF", nodeTemplateName);
         }
-        String hostedOnRoot = hostedOnRoot(nodeTemplate);
+        String hostedOnRoot = graph.getNode(graph.getHostRoot(id)).getName();
         if (hostedOnRoot != null) {
             builder.put("HOST", hostedOnRoot);
         }
         return builder.build();
     }
 
-    private String hostedOnRoot(NodeTemplate nodeTemplate) {
-        Optional<RelationshipTemplate> relationship = findHostedOn(nodeTemplate);
-        if (!relationship.isPresent()) {
-            return nodeTemplate.getName();
-        }
-        return hostedOnRoot(getNodeTemplate(relationship.get().getTarget()));
-    }
-
-    private Optional<RelationshipTemplate> findHostedOn(NodeTemplate nodeTemplate) {
-        if (nodeTemplate.getRelationships() == null) return Optional.absent();
-        final Optional<RelationshipTemplate> relationshipTemplateOptional = Iterables.tryFind(nodeTemplate.getRelationships().values(), new Predicate<RelationshipTemplate>() {
-            @Override
-            public boolean apply(RelationshipTemplate relationshipTemplate) {
-                // TODO derives from
-                return relationshipTemplate.getType().equals(NormativeRelationshipConstants.HOSTED_ON);
-            }
-        });
-        return relationshipTemplateOptional;
-    }
-
     public Map<String, String> getKeywordMap(NodeTemplate nodeTemplate, RelationshipTemplate relationshipTemplate) {
         ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
         String nodeTemplateName = nodeTemplate.getName();
@@ -134,19 +185,7 @@ public class Alien4CloudApplication implements ToscaApplication {
 
     @Override
     public Iterable<Relationship> getAllRelationships(String nodeId) {
-        Set<Relationship> result = Sets.newHashSet();
-        for (Map.Entry<String, NodeTemplate> nodeTemplate : getNodeTemplates().entrySet()) {
-            if (nodeTemplate.getValue().getRelationships() != null) {
-                for (Map.Entry<String, RelationshipTemplate> relationshipTemplate : nodeTemplate.getValue().getRelationships().entrySet()) {
-                    if (relationshipTemplate.getValue().getTarget().equals(nodeId)) {
-                        result.add(new Relationship(nodeTemplate.getKey(), nodeId, relationshipTemplate.getKey(), relationshipTemplate.getValue().getType()));
-                    } else if (nodeTemplate.getKey().equals(nodeId)) {
-                        result.add(new Relationship(nodeId, relationshipTemplate.getValue().getTarget(), relationshipTemplate.getKey(), relationshipTemplate.getValue().getType()));
-                    }
-                }
-            }
-        }
-        return result;
+        return getGraph().getAllRelationships(nodeId);
     }
 
     @Override
@@ -157,6 +196,8 @@ public class Alien4CloudApplication implements ToscaApplication {
     @Override
     public void setNodeName(String nodeId, String newName) {
         getNodeTemplate(nodeId).setName(newName);
+        // names appear in the keyword maps of this node and of any node hosted on it
+        keywordMaps.clear();
     }
 
     @Override
@@ -4,8 +4,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.function.Predicate;
 
 import javax.inject.Inject;
@@ -17,11 +19,14 @@ import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
 import org.apache.brooklyn.api.objs.BrooklynObjectType;
 import org.apache.brooklyn.api.typereg.RegisteredType;
+import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.camp.brooklyn.BrooklynCampConstants;
 import org.apache.brooklyn.camp.brooklyn.BrooklynCampReservedKeys;
 import org.apache.brooklyn.camp.brooklyn.spi.creation.BrooklynEntityDecorationResolver;
+import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.typereg.RegisteredTypes;
 import org.apache.brooklyn.entity.software.base.SoftwareProcess;
+import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.slf4j.Logger;
@@ -33,9 +38,11 @@ import org.springframework.stereotype.Component;
 import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 
 import alien4cloud.model.topology.GenericPolicy;
 import alien4cloud.model.topology.NodeGroup;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
 import io.cloudsoft.tosca.a4c.brooklyn.spec.EntitySpecFactory;
 import io.cloudsoft.tosca.a4c.brooklyn.spec.EntitySpecModifier;
 
@@ -45,10 +52,18 @@ public class Alien4CloudApplicationSpecsBuilder implements ApplicationSpecsBuild
 
     private static final Logger LOG = LoggerFactory.getLogger(ApplicationSpecsBuilder.class);
 
+    public static final ConfigKey<Integer> SPEC_BUILD_PARALLELISM = ConfigKeys.newIntegerConfigKey(
+            "tosca.a4c.specs.parallelism",
+            "Number of threads used to build the entity specs of a topology, one subtree of hosts per task; "
+                    + "1 builds sequentially. The specs built are the same either way.",
+            1);
+
     // Beans
     @SuppressWarnings("rawtypes")
     private EntitySpecFactory entitySpecFactory;
     private Collection<EntitySpecModifier> specModifiers;
+    private ToscaMetrics metrics;
+    private SpecBuildPool pool;
 
     // State
     private Map<String, String> parents = MutableMap.of();
@@ -57,12 +72,23 @@ public class Alien4CloudApplicationSpecsBuilder implements ApplicationSpecsBuild
     private ManagementContext mgmt;
     private ToscaFacade<Alien4CloudApplication> alien4CloudFacade;
 
-    @Inject
     public Alien4CloudApplicationSpecsBuilder(ManagementContext managementContext, EntitySpecFactory<?> entitySpecFactory, Collection<EntitySpecModifier> specModifiers, ToscaFacade<Alien4CloudApplication> alien4CloudFacade) {
+        this(managementContext, entitySpecFactory, specModifiers, alien4CloudFacade, new ToscaMetrics());
+    }
+
+    /** Creates a builder which builds specs sequentially. */
+    public Alien4CloudApplicationSpecsBuilder(ManagementContext managementContext, EntitySpecFactory<?> entitySpecFactory, Collection<EntitySpecModifier> specModifiers, ToscaFacade<Alien4CloudApplication> alien4CloudFacade, ToscaMetrics metrics) {
+        this(managementContext, entitySpecFactory, specModifiers, alien4CloudFacade, metrics, new SpecBuildPool(1));
+    }
+
+    @Inject
+    public Alien4CloudApplicationSpecsBuilder(ManagementContext managementContext, EntitySpecFactory<?> entitySpecFactory, Collection<EntitySpecModifier> specModifiers, ToscaFacade<Alien4CloudApplication> alien4CloudFacade, ToscaMetrics metrics, SpecBuildPool pool) {
         this.alien4CloudFacade = alien4CloudFacade;
         this.mgmt = checkNotNull(managementContext, "managementContext");
         this.entitySpecFactory = checkNotNull(entitySpecFactory, "entitySpecFactory");
         this.specModifiers = checkNotNull(specModifiers, "specModifiers");
+        this.metrics = checkNotNull(metrics, "metrics");
+        this.pool = checkNotNull(pool, "pool");
     }
 
     /**
@@ -84,19 +110,80 @@ public class Alien4CloudApplicationSpecsBuilder implements ApplicationSpecsBuild
         }
         LOG.debug("TOSCA hierarchy inferred as: "+parents);
 
+        // Name nodes up front, so every modifier sees the same names however the specs are built
+        for (String nodeId : nodeIds) {
+            if (!toscaApplication.getNodeName(nodeId).isPresent()) {
+                toscaApplication.setNodeName(nodeId, nodeId);
+            }
+        }
+
+        Set<String> rootSet = MutableSet.of();
+        for (String id : nodeIds) {
+            rootSet.add(root(id));
+        }
+        List<String> roots = MutableList.copyOf(rootSet);
+
         // Build all specs in the tree.
-        Set<String> visited = MutableSet.of();
+        Set<String> visited = Sets.newConcurrentHashSet();
         Map<String, EntitySpec<?>> specs = MutableMap.of();
-        for (String id : nodeIds) {
-            String root = root(id);
-            if (!visited.contains(root)) {
+        int parallelism = getParallelism(roots.size());
+        if (parallelism <= 1) {
+            for (String root : roots) {
                 specs.put(root, build(toscaApplication, root, visited));
             }
+        } else {
+            // merged in the order of the roots, so the result is as if built sequentially
+            List<EntitySpec<?>> built = buildInParallel(toscaApplication, roots, visited);
+            for (int i = 0; i < roots.size(); i++) {
+                specs.put(roots.get(i), built.get(i));
+            }
         }
+        metrics.increment(ToscaMetrics.NODES, visited.size());
+        metrics.increment(ToscaMetrics.RELATIONSHIPS, countRelationships(toscaApplication, nodeIds));
         cachedSpecs = specs;
         return specs;
     }
 
+    private static int countRelationships(Alien4CloudApplication toscaApplication, Iterable<String> nodeIds) {
+        int count = 0;
+        for (String nodeId : nodeIds) {
+            for (ToscaApplication.Relationship relationship : toscaApplication.getAllRelationships(nodeId)) {
+                if (nodeId.equals(relationship.getSourceNodeId())) count++;
+            }
+        }
+        return count;
+    }
+
+    private int getParallelism(int roots) {
+        int parallelism = Math.min(pool.getParallelism(), roots);
+        if (parallelism > 1) {
+            for (EntitySpecModifier modifier : specModifiers) {
+                if (!modifier.isThreadSafe()) {
+                    LOG.debug("Building specs sequentially as modifier {} is not thread-safe", modifier);
+                    return 1;
+                }
+            }
+        }
+        return parallelism;
+    }
+
+    /**
+     * Builds the subtree under each root as a separate task on the shared {@link SpecBuildPool}, returning the
+     * specs in the same order as the roots.
+     */
+    private List<EntitySpec<?>> buildInParallel(final Alien4CloudApplication toscaApplication, List<String> roots, final Set<String> visited) {
+        List<Callable<EntitySpec<?>>> tasks = MutableList.of();
+        for (final String root : roots) {
+            tasks.add(new Callable<EntitySpec<?>>() {
+                @Override
+                public EntitySpec<?> call() {
+                    return build(toscaApplication, root, visited);
+                }
+            });
+        }
+        return pool.invokeAll(tasks);
+    }
+
     /**
      * Creates an entity spec for the given node then recursively adds its {@link EntitySpec#child children}.
      * Children are configured to stsart {@link SoftwareProcess.ChildStartableMode#BACKGROUND_LATE}.
@@ -108,7 +195,9 @@ public class Alien4CloudApplicationSpecsBuilder implements ApplicationSpecsBuild
         EntitySpec<?> spec = createSpec(node, toscaApplication);
         LOG.trace("applying spec modifiers {} to spec {}", specModifiers, spec);
         for (EntitySpecModifier builder : specModifiers) {
-            builder.apply(spec, node, toscaApplication);
+            try (ToscaMetrics.Timer t = metrics.time(builder)) {
+                builder.apply(spec, node, toscaApplication);
+            }
         }
         for (String child : children.get(node)) {
             if (!visited.contains(child)) {
@@ -152,6 +241,13 @@ public class Alien4CloudApplicationSpecsBuilder implements ApplicationSpecsBuild
         return spec;
     }
 
+    @Override
+    public void addToscaInputs(EntitySpec<? extends Application> rootSpec, Alien4CloudApplication toscaApplication) {
+        for (Map.Entry<String, Object> input : alien4CloudFacade.getInputDefaults(toscaApplication).entrySet()) {
+            rootSpec.configure(ConfigKeys.newConfigKey(Object.class, input.getKey()), input.getValue());
+        }
+    }
+
     @Override
     public void addToscaPolicies(EntitySpec<? extends Application> rootSpec, Alien4CloudApplication toscaApplication, Map<String, EntitySpec<?>> specs) {
         if (toscaApplication.getTopology()==null) return;
@@ -208,6 +304,7 @@ public class Alien4CloudApplicationSpecsBuilder implements ApplicationSpecsBuild
         }
         
         decorator.decorate(p.getData(), p.getName(), type, groupMembers);
+        metrics.increment(ToscaMetrics.POLICIES_ADDED, 1);
     }
     
     private Optional<String> getBrooklynObjectTypeName(Optional<String> typeFromToscaModel, Map<String, ?> toscaObjectData){
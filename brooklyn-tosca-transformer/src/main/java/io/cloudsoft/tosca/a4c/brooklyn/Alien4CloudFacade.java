@@ -2,7 +2,6 @@ package io.cloudsoft.tosca.a4c.brooklyn;
 
 import java.io.File;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -20,8 +19,8 @@ import org.apache.brooklyn.util.collections.MutableList;
 import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.collections.MutableSet;
 import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.net.Urls;
-import org.apache.brooklyn.util.os.Os;
 import org.apache.brooklyn.util.text.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,11 +28,13 @@ import org.springframework.stereotype.Component;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Multimap;
 
 import alien4cloud.application.ApplicationService;
 import alien4cloud.component.ICSARRepositorySearchService;
@@ -56,6 +57,8 @@ import alien4cloud.model.components.IndexedRelationshipType;
 import alien4cloud.model.components.Interface;
 import alien4cloud.model.components.ListPropertyValue;
 import alien4cloud.model.components.Operation;
+import alien4cloud.model.components.PropertyDefinition;
+import alien4cloud.model.components.PropertyValue;
 import alien4cloud.model.components.ScalarPropertyValue;
 import alien4cloud.model.deployment.DeploymentTopology;
 import alien4cloud.model.templates.TopologyTemplate;
@@ -66,18 +69,21 @@ import alien4cloud.model.topology.RelationshipTemplate;
 import alien4cloud.model.topology.Requirement;
 import alien4cloud.model.topology.Topology;
 import alien4cloud.paas.IPaaSTemplate;
-import alien4cloud.paas.function.FunctionEvaluator;
 import alien4cloud.paas.model.PaaSNodeTemplate;
 import alien4cloud.paas.model.PaaSRelationshipTemplate;
-import alien4cloud.paas.model.PaaSTopology;
 import alien4cloud.paas.plan.TopologyTreeBuilderService;
 import alien4cloud.paas.plan.ToscaNodeLifecycleConstants;
 import alien4cloud.paas.plan.ToscaRelationshipLifecycleConstants;
 import alien4cloud.topology.TopologyServiceCore;
 import alien4cloud.topology.TopologyTemplateVersionService;
 import alien4cloud.tosca.normative.NormativeComputeConstants;
+import alien4cloud.tosca.normative.NormativeRelationshipConstants;
 import alien4cloud.tosca.normative.ToscaFunctionConstants;
 import alien4cloud.tosca.parser.ParsingResult;
+import io.cloudsoft.tosca.a4c.brooklyn.function.OperationOutputs;
+import io.cloudsoft.tosca.a4c.brooklyn.function.ToscaEvaluationContext;
+import io.cloudsoft.tosca.a4c.brooklyn.function.ToscaExpressionCompiler;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
 import io.cloudsoft.tosca.a4c.brooklyn.spec.AbstractSpecModifier;
 import io.cloudsoft.tosca.a4c.brooklyn.util.NodeTemplates;
 
@@ -98,28 +104,35 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
             .put(ToscaNodeLifecycleConstants.STOP, VanillaSoftwareProcess.STOP_COMMAND)
             .build();
 
-    private ICSARRepositorySearchService repositorySearchService;
+    private IndexedToscaElementCache indexedElements;
+    private ScriptContentCache scriptContents;
     private TopologyTreeBuilderService treeBuilder;
-    private ICsarRepositry csarFileRepository;
+    private CsarArtifactIndex csarArtifacts;
     private TopologyServiceCore topologyService;
     private TopologyTemplateVersionService topologyTemplateVersionService;
     private DeploymentTopologyService deploymentTopologyService;
     private ApplicationService applicationService;
+    private ToscaMetrics metrics;
+    private LinkedResourceCache linkedResources;
 
-    private final File tmpRoot;
+    private final ToscaExpressionCompiler expressionCompiler = new ToscaExpressionCompiler();
 
-    @Inject
     public Alien4CloudFacade(ICSARRepositorySearchService repositorySearchService, TopologyTreeBuilderService treeBuilder, ICsarRepositry csarFileRepository, TopologyServiceCore topologyService, TopologyTemplateVersionService topologyTemplateVersionService, DeploymentTopologyService deploymentTopologyService, ApplicationService applicationService) {
-        this.repositorySearchService = repositorySearchService;
+        this(new IndexedToscaElementCache(repositorySearchService), new ScriptContentCache(), new CsarArtifactIndex(csarFileRepository), treeBuilder, topologyService, topologyTemplateVersionService, deploymentTopologyService, applicationService, new ToscaMetrics(), null);
+    }
+
+    @Inject
+    public Alien4CloudFacade(IndexedToscaElementCache indexedElements, ScriptContentCache scriptContents, CsarArtifactIndex csarArtifacts, TopologyTreeBuilderService treeBuilder, TopologyServiceCore topologyService, TopologyTemplateVersionService topologyTemplateVersionService, DeploymentTopologyService deploymentTopologyService, ApplicationService applicationService, ToscaMetrics metrics, @Nullable LinkedResourceCache linkedResources) {
+        this.indexedElements = indexedElements;
+        this.scriptContents = scriptContents;
         this.treeBuilder = treeBuilder;
-        this.csarFileRepository = csarFileRepository;
+        this.csarArtifacts = csarArtifacts;
         this.topologyService = topologyService;
         this.topologyTemplateVersionService = topologyTemplateVersionService;
         this.deploymentTopologyService = deploymentTopologyService;
         this.applicationService = applicationService;
-
-        tmpRoot = Os.newTempDir("brooklyn-a4c");
-        Os.deleteOnExitRecursively(tmpRoot);
+        this.metrics = metrics;
+        this.linkedResources = linkedResources;
     }
 
     private Topology getTopologyOfCsar(Csar cs) {
@@ -181,7 +194,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
     }
 
     private IndexedArtifactToscaElement getIndexedNodeTemplate(String nodeId, Alien4CloudApplication toscaApplication) {
-        return repositorySearchService.getRequiredElementInDependencies(
+        return indexedElements.getRequiredElementInDependencies(
                 IndexedArtifactToscaElement.class,
                 toscaApplication.getNodeTemplate(nodeId).getType(),
                 toscaApplication.getTopology().getDependencies());
@@ -191,7 +204,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
         Optional<RelationshipTemplate> optionalRelationshipTemplate = findRelationshipRequirement(nodeId, toscaApplication, requirementId);
         if(optionalRelationshipTemplate.isPresent()) {
             RelationshipTemplate relationshipTemplate = optionalRelationshipTemplate.get();
-            return Optional.<IndexedArtifactToscaElement>of(repositorySearchService.getRequiredElementInDependencies(
+            return Optional.<IndexedArtifactToscaElement>of(indexedElements.getRequiredElementInDependencies(
                     IndexedRelationshipType.class,
                     relationshipTemplate.getType(),
                     toscaApplication.getTopology().getDependencies()
@@ -210,8 +223,22 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
                         .contains(type);
     }
 
+    /**
+     * @return the compiled context of the application's topology, building it if the application does not yet have one
+     */
+    private Alien4CloudTopologyContext getTopologyContext(Alien4CloudApplication toscaApplication) {
+        Alien4CloudTopologyContext context = toscaApplication.getTopologyContext();
+        if (context == null) {
+            // building twice if two threads race here is harmless, the results are equivalent
+            Topology topology = toscaApplication.getTopology();
+            context = new Alien4CloudTopologyContext(topology, treeBuilder.buildPaaSTopology(topology));
+            toscaApplication.setTopologyContext(context);
+        }
+        return context;
+    }
+
     private Map<String, PaaSNodeTemplate> getAllNodes(Alien4CloudApplication toscaApplication) {
-        return treeBuilder.buildPaaSTopology(toscaApplication.getTopology()).getAllNodes();
+        return getTopologyContext(toscaApplication).getAllNodes();
     }
 
     @Override
@@ -261,28 +288,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
     }
 
     private Optional<Object> resolveIncludingToscaFunctions(IValue v,  IPaaSTemplate<? extends IndexedInheritableToscaElement> template, Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates, Map<String, String> keywordMap) {
-        Optional<Object> value = getToscaScalarValueUnlessItsAFunction(v);
-        if (!value.isPresent()) {
-            if (v instanceof FunctionPropertyValue) {
-                FunctionPropertyValue functionPropertyValue = (FunctionPropertyValue) v;
-                String node = Optional.fromNullable(keywordMap.get(functionPropertyValue.getTemplateName())).or(functionPropertyValue.getTemplateName());
-                switch (functionPropertyValue.getFunction()) {
-                    case ToscaFunctionConstants.GET_PROPERTY:
-                        value = Optional.<Object>fromNullable(FunctionEvaluator.evaluateGetPropertyFunction(functionPropertyValue, template, builtPaaSNodeTemplates));
-                        break;
-                    case ToscaFunctionConstants.GET_ATTRIBUTE:
-                        value = Optional.<Object>fromNullable(BrooklynDslCommon.entity(node).attributeWhenReady(functionPropertyValue.getElementNameToFetch()));
-                        break;
-                    case ToscaFunctionConstants.GET_INPUT:
-                    case ToscaFunctionConstants.GET_OPERATION_OUTPUT:
-                        // also "get_artifact" in recent TOSCA spec
-                    default:
-                        LOG.warn("TOSCA DSL function "+functionPropertyValue.getFunction()+" not supported, for "+v+" in "+template);
-                        value = Optional.absent();
-                }
-            }
-        }
-        return value;
+        return expressionCompiler.compile(v).evaluate(new ToscaEvaluationContext(template, builtPaaSNodeTemplates, keywordMap));
     }
 
     private Optional<Object> resolveKeyIncludingToscaFunctions(Map<String, ? extends IValue> props, String key, IPaaSTemplate<? extends IndexedInheritableToscaElement> template, Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates, Map<String, String> keywordMap) {
@@ -300,11 +306,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
 
     @Override
     public Optional<Path> getCsarPath(String archiveName, String archiveVersion) {
-        try {
-            return Optional.of(csarFileRepository.getCSAR(archiveName, archiveVersion));
-        } catch (Exception e) {
-            return Optional.absent();
-        }
+        return csarArtifacts.getCsarPath(archiveName, archiveVersion);
     }
 
     private Optional<Map<String, DeploymentArtifact>> getArtifactsMap(String nodeId, Alien4CloudApplication toscaApplication) {
@@ -347,7 +349,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
     private Map<String, Operation> getConfigureInterfaceOperationsMap(Alien4CloudApplication toscaApplication, ToscaApplication.Relationship relationship) {
         Map<String, Operation> operations = MutableMap.of();
 
-        Optional<IndexedArtifactToscaElement> indexedRelationshipTemplate = Optional.<IndexedArtifactToscaElement>of(repositorySearchService.getRequiredElementInDependencies(
+        Optional<IndexedArtifactToscaElement> indexedRelationshipTemplate = Optional.<IndexedArtifactToscaElement>of(indexedElements.getRequiredElementInDependencies(
                 IndexedRelationshipType.class,
                 relationship.getRelationshipType(),
                 toscaApplication.getTopology().getDependencies()
@@ -377,6 +379,71 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
         return getStandardInterfaceOperationsMap(nodeId, toscaApplication).keySet();
     }
 
+    @Override
+    public Multimap<String, String> getOperationOutputs(String nodeId, Alien4CloudApplication toscaApplication) {
+        String nodeName = toscaApplication.getNodeName(nodeId).or(nodeId);
+        Multimap<String, String> result = LinkedHashMultimap.create();
+        for (String referrerId : toscaApplication.getNodeIds()) {
+            NodeTemplate referrer = toscaApplication.getNodeTemplate(referrerId);
+            List<IValue> values = MutableList.of();
+            if (referrer.getProperties() != null) {
+                values.addAll(referrer.getProperties().values());
+            }
+            Map<String, IValue> attributes = getIndexedNodeTemplate(referrerId, toscaApplication).getAttributes();
+            if (attributes != null) {
+                values.addAll(attributes.values());
+            }
+            for (Operation op : getStandardInterfaceOperationsMap(referrerId, toscaApplication).values()) {
+                if (op.getInputParameters() != null) {
+                    values.addAll(op.getInputParameters().values());
+                }
+            }
+            addOperationOutputs(values, toscaApplication.getKeywordMap(referrerId), nodeName, result);
+
+            if (referrer.getRelationships() != null) {
+                for (RelationshipTemplate relationshipTemplate : referrer.getRelationships().values()) {
+                    IndexedRelationshipType relationshipType = indexedElements.getRequiredElementInDependencies(
+                            IndexedRelationshipType.class, relationshipTemplate.getType(), toscaApplication.getTopology().getDependencies());
+                    values = MutableList.of();
+                    for (Operation op : getInterfaceOperationsMap(relationshipType, ImmutableList.of("tosca.interfaces.relationship.Configure", "Configure", "configure")).values()) {
+                        if (op.getInputParameters() != null) {
+                            values.addAll(op.getInputParameters().values());
+                        }
+                    }
+                    addOperationOutputs(values, toscaApplication.getKeywordMap(referrer, relationshipTemplate), nodeName, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addOperationOutputs(Iterable<? extends IValue> values, Map<String, String> keywordMap, String nodeName, Multimap<String, String> result) {
+        for (IValue value : values) {
+            if (value instanceof ConcatPropertyValue && ((ConcatPropertyValue) value).getParameters() != null) {
+                addOperationOutputs(((ConcatPropertyValue) value).getParameters(), keywordMap, nodeName, result);
+            } else if (value instanceof FunctionPropertyValue
+                    && ToscaFunctionConstants.GET_OPERATION_OUTPUT.equals(((FunctionPropertyValue) value).getFunction())) {
+                List<String> parameters = ((FunctionPropertyValue) value).getParameters();
+                if (parameters == null || parameters.size() != 4) {
+                    continue;
+                }
+                String target = Optional.fromNullable(keywordMap.get(parameters.get(0))).or(parameters.get(0));
+                if (!nodeName.equals(target)) {
+                    continue;
+                }
+                if (!validInterfaceNames.contains(parameters.get(1))) {
+                    LOG.warn("Output " + parameters.get(3) + " of " + parameters.get(1) + " operation " + parameters.get(2) + " on " + nodeName
+                            + " cannot be published; only Standard interface operations publish outputs");
+                } else if (!OperationOutputs.isPublishable(parameters.get(3))) {
+                    LOG.warn("Output " + parameters.get(3) + " of operation " + parameters.get(2) + " on " + nodeName
+                            + " cannot be published; it is not a shell variable name");
+                } else {
+                    result.put(parameters.get(2), parameters.get(3));
+                }
+            }
+        }
+    }
+
     @Override
     public Iterable<String> getInterfaceOperationsByRelationship(Alien4CloudApplication toscaApplication, ToscaApplication.Relationship relationship) {
         return getConfigureInterfaceOperationsMap(toscaApplication, relationship).keySet();
@@ -384,9 +451,9 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
 
     private Optional<PaaSNodeTemplate> getPaasNodeTemplate(String nodeId, Alien4CloudApplication toscaApplication) {
         NodeTemplate nodeTemplate = toscaApplication.getNodeTemplate(nodeId);
-        PaaSTopology paaSTopology = treeBuilder.buildPaaSTopology(toscaApplication.getTopology());
-        if (paaSTopology != null) {
-            Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates = paaSTopology.getAllNodes();
+        Alien4CloudTopologyContext context = getTopologyContext(toscaApplication);
+        if (context.getPaaSTopology() != null) {
+            Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates = context.getAllNodes();
             String computeName = nodeTemplate.getName();
             return Optional.of(builtPaaSNodeTemplates.get(computeName));
         }
@@ -429,7 +496,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
     }
 
     private Object resolveAttributeOrNullPossiblyWarning(Map.Entry<String, IValue> attribute, Alien4CloudApplication toscaApplication, String nodeId, PaaSNodeTemplate paaSNodeTemplate, Map<String, PaaSNodeTemplate> allNodes) {
-        Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates = getAllNodes(toscaApplication);
+        Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates = allNodes;
         PaaSNodeTemplate paasNodeTemplate = builtPaaSNodeTemplates.get(nodeId);
         // TODO can we get attribute value set in the node template?
         IValue attributeValue = attribute.getValue();
@@ -451,15 +518,41 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
     }
 
     private Object resolveConcat(ConcatPropertyValue attributeValue, PaaSNodeTemplate paasNodeTemplate, Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates, Map<String, String> keywordMap) {
-        Object[] vals = new Object[attributeValue.getParameters().size()];
-        for (int i = 0; i < attributeValue.getParameters().size(); i++) {
-            IValue param = attributeValue.getParameters().get(i);
-            Optional<Object> optionalResolvedAttribute = resolveIncludingToscaFunctions(param, paasNodeTemplate, builtPaaSNodeTemplates, keywordMap);
-            vals[i] = optionalResolvedAttribute.or("");
+        return resolveIncludingToscaFunctions(attributeValue, paasNodeTemplate, builtPaaSNodeTemplates, keywordMap).orNull();
+    }
+
+    @Override
+    public Map<String, Object> getInputDefaults(Alien4CloudApplication toscaApplication) {
+        Map<String, Object> result = MutableMap.of();
+        Topology topology = toscaApplication.getTopology();
+        if (topology == null) {
+            return result;
+        }
+        if (topology.getInputs() != null) {
+            for (Map.Entry<String, PropertyDefinition> input : topology.getInputs().entrySet()) {
+                Object value = unwrapPropertyValue(input.getValue().getDefault());
+                if (value != null) {
+                    result.put(input.getKey(), value);
+                }
+            }
+        }
+        if (topology instanceof DeploymentTopology && ((DeploymentTopology) topology).getInputProperties() != null) {
+            // values supplied when the topology was set up for deployment in A4C
+            for (Map.Entry<String, ?> input : ((DeploymentTopology) topology).getInputProperties().entrySet()) {
+                Object value = unwrapPropertyValue(input.getValue());
+                if (value != null) {
+                    result.put(input.getKey(), value);
+                }
+            }
         }
+        return result;
+    }
 
-        String format = Strings.repeat("%s", vals.length);
-        return BrooklynDslCommon.formatString(format, vals);
+    private Object unwrapPropertyValue(Object value) {
+        if (value instanceof PropertyValue) {
+            return ((PropertyValue<?>) value).getValue();
+        }
+        return value;
     }
 
     @Override
@@ -566,43 +659,80 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
         if (!optionalArtifact.isPresent()) return Optional.absent();
 
         DeploymentArtifact artifact = optionalArtifact.get();
-        Set<Optional<Path>> csarPaths = Sets.newLinkedHashSet();
-        csarPaths.add(getCsarPath(artifact));
-        for (CSARDependency d: toscaApplication.getTopology().getDependencies()) {
-            csarPaths.add(getCsarPath(d.getName(), d.getVersion()));
-        }
-
-        for (Optional<Path> csarPath: csarPaths) {
-            if (csarPath.isPresent()) {
-                // found the path to the CSAR, check if file is there; if not, traverse dependencies
-                Path candidate = Paths.get(csarPath.get().getParent().toAbsolutePath().toString(), "expanded", artifact.getArtifactRef());
-                if (candidate.toFile().exists()) {
-                    return Optional.of(candidate);
+        // look in the artifact's own archive first; if not there, traverse dependencies
+        Optional<CsarArtifactIndex.Artifact> candidate = csarArtifacts.getArtifact(artifact.getArchiveName(), artifact.getArchiveVersion(), artifact.getArtifactRef());
+        if (candidate.isPresent()) {
+            return Optional.of(candidate.get().getPath());
+        }
+        Set<CSARDependency> dependencies = toscaApplication.getTopology().getDependencies();
+        if (dependencies != null) {
+            for (CSARDependency d : dependencies) {
+                candidate = csarArtifacts.getArtifact(d.getName(), d.getVersion(), artifact.getArtifactRef());
+                if (candidate.isPresent()) {
+                    return Optional.of(candidate.get().getPath());
                 }
             }
         }
-        
-        LOG.warn("Cannot find artifact '"+artifact.getArtifactRef()+"' in "+csarPaths);
+
+        LOG.warn("Cannot find artifact '"+artifact.getArtifactRef()+"' in archive "+artifact.getArchiveName()+":"+artifact.getArchiveVersion()+" or dependencies "+dependencies);
         return Optional.absent();
     }
 
-    private Alien4CloudApplication newToscaApplication(Csar csar) {
-        return new Alien4CloudApplication(csar.getName(), getTopologyOfCsar(csar), "", csar);
+    @Override
+    public Alien4CloudApplication newToscaApplication(Csar csar) {
+        Topology topology;
+        try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.TOPOLOGY)) {
+            topology = getTopologyOfCsar(csar);
+        }
+        return new Alien4CloudApplication(csar.getName(), topology, "", csar, isHostedOn(topology));
+    }
+
+    /**
+     * @return a predicate matching relationship types which are, or are derived from, {@code tosca.relationships.HostedOn}
+     *         in the context of the given topology's dependencies
+     */
+    private Predicate<String> isHostedOn(final Topology topology) {
+        return new Predicate<String>() {
+            @Override
+            public boolean apply(String relationshipType) {
+                if (NormativeRelationshipConstants.HOSTED_ON.equals(relationshipType)) return true;
+                if (relationshipType == null || topology == null) return false;
+                try {
+                    IndexedRelationshipType indexed = indexedElements.getRequiredElementInDependencies(
+                            IndexedRelationshipType.class, relationshipType, topology.getDependencies());
+                    return indexed != null && indexed.getDerivedFrom() != null
+                            && indexed.getDerivedFrom().contains(NormativeRelationshipConstants.HOSTED_ON);
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    LOG.debug("Could not resolve relationship type " + relationshipType + "; assuming it is not a HostedOn: " + e);
+                    return false;
+                }
+            }
+        };
     }
 
     @Override
     public Alien4CloudApplication newToscaApplication(String id) {
-        DeploymentTopology deploymentTopology = deploymentTopologyService.getOrFail(id);
-        Application application = applicationService.getOrFail(deploymentTopology.getDelegateId());
+        DeploymentTopology deploymentTopology;
+        Application application;
+        try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.TOPOLOGY)) {
+            deploymentTopology = deploymentTopologyService.getOrFail(id);
+            application = applicationService.getOrFail(deploymentTopology.getDelegateId());
+        }
         return new Alien4CloudApplication(application.getName(), deploymentTopology, id,
-            null /* TODO is there a way to find the containing CSAR; will things in topologies in here break without it? */);
+            null /* TODO is there a way to find the containing CSAR; will things in topologies in here break without it? */,
+            isHostedOn(deploymentTopology));
     }
 
     @Override
     public Alien4CloudApplication parsePlan(String plan, Uploader uploader, BrooklynClassLoadingContext context) {
-        ParsingResult<Csar> tp = new ToscaParser(uploader).parse(plan, context);
-        Csar csar = tp.getResult();
-        return newToscaApplication(csar);
+        return newToscaApplication(parseArchive(plan, uploader, context));
+    }
+
+    @Override
+    public Csar parseArchive(String plan, Uploader uploader, BrooklynClassLoadingContext context) {
+        ParsingResult<Csar> tp = new ToscaParser(uploader, linkedResources).parse(plan, context);
+        return tp.getResult();
     }
 
     @Override
@@ -682,8 +812,9 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
                     csarPath = getCsarPath(toscaApplication.getArchive().getName(), toscaApplication.getArchive().getVersion());
                 }
                 if (csarPath.isPresent()) {
-                    if (new File(csarPath.get().getParent().toString() + expandedFolder + artifactRef).exists()) {
-                        return new ResourceUtils(this).getResourceAsString(csarPath.get().getParent().toString() + expandedFolder + artifactRef);
+                    Optional<String> script = getScriptInArchive(artifact, csarPath.get(), artifactRef);
+                    if (script.isPresent()) {
+                        return script.get();
                     }
                 }
             }
@@ -693,7 +824,7 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
             // so could remove the above error eg if it's a tosca yaml in a brooklyn bundle),
             // and in the call below use that search sequence
             try {
-                return new ResourceUtils(this).getResourceAsString(artifactRef);
+                return scriptContents.getResourceContents(artifactRef, new ResourceUtils(this));
             } catch (RuntimeException e) {
                 LOG.warn("Could not find "+artifactRef+" (rethrowing); "+
                         (csarPath.isPresent() ? "csar found as "+csarPath : proto==null ? "csar not found" : "context not set")
@@ -702,6 +833,22 @@ public class Alien4CloudFacade implements ToscaFacade<Alien4CloudApplication> {
             }
         }
 
+        private Optional<String> getScriptInArchive(ImplementationArtifact artifact, Path csarPath, String artifactRef) {
+            if (CsarArtifactIndex.EXPANDED_FOLDER_NAME.equals(Strings.removeAllFromStart(Strings.removeAllFromEnd(expandedFolder, "/"), "/"))) {
+                // the usual case; resolve from the index rather than the filesystem
+                Optional<CsarArtifactIndex.Artifact> indexed = csarArtifacts.getArtifact(artifact.getArchiveName(), artifact.getArchiveVersion(), artifactRef);
+                if (!indexed.isPresent() && toscaApplication.getArchive() != null) {
+                    indexed = csarArtifacts.getArtifact(toscaApplication.getArchive().getName(), toscaApplication.getArchive().getVersion(), artifactRef);
+                }
+                if (!indexed.isPresent() || indexed.get().isDirectory()) {
+                    return Optional.absent();
+                }
+                // stat rather than trust the indexed stamp, so an edited script is read again
+                return scriptContents.getFileContents(indexed.get().getPath().toFile());
+            }
+            return scriptContents.getFileContents(new File(csarPath.getParent().toString() + expandedFolder + artifactRef));
+        }
+
         protected Optional<Object> buildExportStatements(Operation op, String script, @Nullable ManagementContext mgmt) {
             Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates = getAllNodes(toscaApplication);
             PaaSNodeTemplate paasNodeTemplate = builtPaaSNodeTemplates.get(computeName);
@@ -0,0 +1,55 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+
+import alien4cloud.model.topology.Topology;
+import alien4cloud.paas.model.PaaSNodeTemplate;
+import alien4cloud.paas.model.PaaSTopology;
+
+/**
+ * The parts of an {@link Alien4CloudApplication}'s topology which are expensive to compute and which do not change
+ * while specs are being built for it. It is built once by the {@link Alien4CloudFacade} and kept on the application
+ * until the application is {@link Alien4CloudApplication#invalidate() invalidated}.
+ */
+public class Alien4CloudTopologyContext {
+
+    private final Topology topology;
+    private final PaaSTopology paaSTopology;
+    private final Map<String, PaaSNodeTemplate> allNodes;
+
+    public Alien4CloudTopologyContext(Topology topology, PaaSTopology paaSTopology) {
+        this.topology = topology;
+        this.paaSTopology = paaSTopology;
+        if (paaSTopology == null || paaSTopology.getAllNodes() == null) {
+            this.allNodes = Collections.emptyMap();
+        } else {
+            // PaaSTopology exposes its maps directly; take a copy so callers cannot change what we share
+            this.allNodes = Collections.unmodifiableMap(MutableMap.copyOf(paaSTopology.getAllNodes()));
+        }
+    }
+
+    /**
+     * @return the topology this context was built from
+     */
+    public Topology getTopology() {
+        return topology;
+    }
+
+    /**
+     * @return the PaaS topology built from {@link #getTopology()}, possibly null
+     */
+    public PaaSTopology getPaaSTopology() {
+        return paaSTopology;
+    }
+
+    /**
+     * @return the PaaS node templates of the topology, keyed by node id
+     */
+    public Map<String, PaaSNodeTemplate> getAllNodes() {
+        return allNodes;
+    }
+
+}
@@ -0,0 +1,178 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.ListMultimap;
+
+import alien4cloud.model.topology.NodeTemplate;
+import alien4cloud.model.topology.RelationshipTemplate;
+import alien4cloud.model.topology.Topology;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication.Relationship;
+
+/**
+ * An immutable snapshot of the nodes of a topology and the relationships between them, indexed by node id.
+ * Built once by {@link Alien4CloudApplication} so that node lookups and relationship queries do not copy
+ * or scan the topology.
+ * <p>
+ * The graph also records the host of each node (the target of its first relationship which is a HostedOn,
+ * as determined by the predicate supplied), and the root of each node's chain of hosts.
+ */
+public class Alien4CloudTopologyGraph {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Alien4CloudTopologyGraph.class);
+
+    private final ImmutableMap<String, NodeTemplate> nodes;
+    private final Map<NodeTemplate, String> idsByTemplate;
+    private final ImmutableListMultimap<String, Relationship> outgoing;
+    private final ImmutableListMultimap<String, Relationship> incoming;
+    private final ImmutableSetMultimap<String, Relationship> all;
+    private final ImmutableMap<String, String> hosts;
+    private final ImmutableMap<String, String> hostRoots;
+    private final ImmutableList<String> hostOrder;
+
+    /**
+     * @param isHostedOn whether a relationship type is (or is derived from) {@code tosca.relationships.HostedOn}
+     */
+    public Alien4CloudTopologyGraph(Topology topology, Predicate<String> isHostedOn) {
+        Map<String, NodeTemplate> nodeTemplates = topology != null ? topology.getNodeTemplates() : null;
+        this.nodes = nodeTemplates != null ? ImmutableMap.copyOf(nodeTemplates) : ImmutableMap.<String, NodeTemplate>of();
+        this.idsByTemplate = new IdentityHashMap<>();
+        for (Map.Entry<String, NodeTemplate> node : nodes.entrySet()) {
+            idsByTemplate.put(node.getValue(), node.getKey());
+        }
+
+        ImmutableListMultimap.Builder<String, Relationship> outgoing = ImmutableListMultimap.builder();
+        ImmutableListMultimap.Builder<String, Relationship> incoming = ImmutableListMultimap.builder();
+        ImmutableSetMultimap.Builder<String, Relationship> all = ImmutableSetMultimap.builder();
+        Map<String, String> hosts = MutableMap.of();
+        for (Map.Entry<String, NodeTemplate> node : nodes.entrySet()) {
+            Map<String, RelationshipTemplate> relationships = node.getValue().getRelationships();
+            if (relationships == null) continue;
+            for (Map.Entry<String, RelationshipTemplate> relationship : relationships.entrySet()) {
+                if (relationship.getValue() == null) continue;
+                String target = relationship.getValue().getTarget();
+                Relationship r = new Relationship(node.getKey(), target, relationship.getKey(), relationship.getValue().getType());
+                outgoing.put(node.getKey(), r);
+                all.put(node.getKey(), r);
+                if (target != null) {
+                    incoming.put(target, r);
+                    all.put(target, r);
+                    if (!hosts.containsKey(node.getKey()) && isHostedOn.apply(r.getRelationshipType())) {
+                        hosts.put(node.getKey(), target);
+                    }
+                }
+            }
+        }
+        this.outgoing = outgoing.build();
+        this.incoming = incoming.build();
+        this.all = all.build();
+        this.hosts = ImmutableMap.copyOf(hosts);
+
+        // visit hosts before the nodes they host, so each node's root is known from its host's
+        ListMultimap<String, String> hosted = ArrayListMultimap.create();
+        Deque<String> queue = new ArrayDeque<>();
+        for (String id : nodes.keySet()) {
+            String host = hosts.get(id);
+            if (host != null && nodes.containsKey(host)) {
+                hosted.put(host, id);
+            } else {
+                queue.add(id);
+            }
+        }
+        ImmutableList.Builder<String> hostOrder = ImmutableList.builder();
+        Map<String, String> hostRoots = MutableMap.of();
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            String host = hosts.get(id);
+            hostRoots.put(id, host != null && hostRoots.containsKey(host) ? hostRoots.get(host) : id);
+            hostOrder.add(id);
+            queue.addAll(hosted.get(id));
+        }
+        if (hostRoots.size() < nodes.size()) {
+            for (String id : nodes.keySet()) {
+                if (!hostRoots.containsKey(id)) {
+                    LOG.warn("Node " + id + " is in a cycle of HostedOn relationships; treating it as its own host");
+                    hostRoots.put(id, id);
+                    hostOrder.add(id);
+                }
+            }
+        }
+        this.hostRoots = ImmutableMap.copyOf(hostRoots);
+        this.hostOrder = hostOrder.build();
+    }
+
+    /**
+     * @return the node templates keyed by id, in the order of the topology
+     */
+    public ImmutableMap<String, NodeTemplate> getNodes() {
+        return nodes;
+    }
+
+    public NodeTemplate getNode(String id) {
+        return nodes.get(id);
+    }
+
+    /**
+     * @return the id under which the given template (compared by identity) is in the topology, or null
+     */
+    public String getNodeId(NodeTemplate nodeTemplate) {
+        return idsByTemplate.get(nodeTemplate);
+    }
+
+    /**
+     * @return the id of the node the given node is hosted on, or null if it is not hosted
+     */
+    public String getHost(String nodeId) {
+        return hosts.get(nodeId);
+    }
+
+    /**
+     * @return the id of the node at the bottom of the given node's chain of hosts; the node itself if it is not hosted
+     */
+    public String getHostRoot(String nodeId) {
+        return hostRoots.get(nodeId);
+    }
+
+    /**
+     * @return all node ids, ordered so that every node comes after the node it is hosted on
+     */
+    public List<String> getHostOrder() {
+        return hostOrder;
+    }
+
+    /**
+     * @return the relationships declared on each node, keyed by source node id
+     */
+    public ImmutableListMultimap<String, Relationship> getOutgoing() {
+        return outgoing;
+    }
+
+    /**
+     * @return the relationships targeting each node, keyed by target node id
+     */
+    public ImmutableListMultimap<String, Relationship> getIncoming() {
+        return incoming;
+    }
+
+    /**
+     * @return the relationships in which the given node is either source or target
+     */
+    public Iterable<Relationship> getAllRelationships(String nodeId) {
+        return all.get(nodeId);
+    }
+
+}
@@ -17,4 +17,10 @@ public interface ApplicationSpecsBuilder<A extends ToscaApplication> {
     Map<String, EntitySpec<?>> getSpecs(A toscaApplication);
 
     void addToscaPolicies(EntitySpec<? extends Application> rootSpec, A toscaApplication, Map<String, EntitySpec<?>> specs);
+
+    /**
+     * Sets the topology's input values as config on the root spec, where the entities' {@code get_input}
+     * references will find them unless they are overridden.
+     */
+    void addToscaInputs(EntitySpec<? extends Application> rootSpec, A toscaApplication);
 }
@@ -0,0 +1,182 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.Csar;
+import alien4cloud.tosca.parser.ParsingContext;
+import alien4cloud.tosca.parser.ParsingResult;
+
+/**
+ * The archives uploaded from a stream, keyed by the SHA-256 digest of their content, so that an archive which
+ * has already been indexed, such as the same {@code csar_link} used by several blueprints, is not parsed and
+ * indexed again.
+ * <p>
+ * Entries are saved to {@link #FILE} so they survive restarts. An entry is only used if A4C still has its
+ * archive, and entries for an archive are discarded when it is indexed from other content.
+ */
+@Component
+public class ArchiveDigestRegistry implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveDigestRegistry.class);
+
+    public static final ConfigKey<String> FILE = ConfigKeys.newStringConfigKey(
+            "tosca.a4c.archives.digests.file",
+            "File recording the digests of uploaded TOSCA archives; defaults to tosca-archive-digests.properties "
+                    + "in the management base directory");
+
+    private static final String NAME = ".name";
+    private static final String VERSION = ".version";
+    private static final String SUMMARY = ".summary";
+
+    /** The archive indexed from some content, and a summary of the notes A4C made when parsing it. */
+    public static class Entry {
+        private final String name;
+        private final String version;
+        private final String summary;
+
+        public Entry(String name, String version, String summary) {
+            this.name = name;
+            this.version = version;
+            this.summary = summary;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public String getSummary() {
+            return summary;
+        }
+
+        @Override
+        public String toString() {
+            return name + ":" + version;
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+    private final ICSARRepositorySearchService repositorySearchService;
+    private final PropertiesFile file;
+
+    @Inject
+    public ArchiveDigestRegistry(ManagementContext mgmt, ICSARRepositorySearchService repositorySearchService) {
+        this(PropertiesFile.getFile(mgmt, FILE, "tosca-archive-digests.properties"), repositorySearchService);
+    }
+
+    /**
+     * @param file where to save the registry, or null to keep it only in memory
+     */
+    public ArchiveDigestRegistry(@Nullable File file, ICSARRepositorySearchService repositorySearchService) {
+        this.file = new PropertiesFile(file, "SHA-256 digests of uploaded TOSCA archives");
+        this.repositorySearchService = repositorySearchService;
+        load();
+    }
+
+    /**
+     * @return the result of the earlier upload of content with the given digest, if its archive is still indexed
+     */
+    public Optional<ParsingResult<Csar>> get(String digest) {
+        Entry entry = entries.get(digest);
+        if (entry == null) {
+            return Optional.absent();
+        }
+        Csar csar;
+        try {
+            csar = repositorySearchService.getArchive(entry.getName() + ":" + entry.getVersion());
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Could not look up archive " + entry + " for digest " + digest + "; will upload again", e);
+            csar = null;
+        }
+        if (csar == null) {
+            LOG.debug("Archive {} for digest {} is no longer indexed; will upload again", entry, digest);
+            remove(digest, entry);
+            return Optional.absent();
+        }
+        return Optional.of(new ParsingResult<>(csar, new ParsingContext(entry.toString())));
+    }
+
+    /**
+     * Records that content with the given digest was uploaded successfully as the archive in the result.
+     */
+    public void put(String digest, ParsingResult<Csar> result) {
+        Csar csar = result != null ? result.getResult() : null;
+        if (csar == null) {
+            return;
+        }
+        int notes = result.getContext() != null && result.getContext().getParsingErrors() != null
+                ? result.getContext().getParsingErrors().size() : 0;
+        Entry entry = new Entry(csar.getName(), csar.getVersion(), notes + " parse note(s)");
+        entries.put(digest, entry);
+        LOG.debug("Recorded digest {} for archive {}", digest, entry);
+        save();
+    }
+
+    public Map<String, Entry> getEntries() {
+        return Maps.newHashMap(entries);
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        if (archive == null) {
+            return;
+        }
+        // the archive may now hold other content; the uploader records the new digest after notifying listeners
+        if (entries.values().removeIf(entry -> archive.getName().equals(entry.getName()) && archive.getVersion().equals(entry.getVersion()))) {
+            save();
+        }
+    }
+
+    private void remove(String digest, Entry entry) {
+        if (entries.remove(digest, entry)) {
+            save();
+        }
+    }
+
+    private void load() {
+        Properties properties = file.load();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(NAME)) {
+                String digest = key.substring(0, key.length() - NAME.length());
+                String version = properties.getProperty(digest + VERSION);
+                if (version != null) {
+                    entries.put(digest, new Entry(properties.getProperty(key), version, properties.getProperty(digest + SUMMARY, "")));
+                }
+            }
+        }
+        LOG.debug("Loaded {} archive digest(s)", entries.size());
+    }
+
+    private synchronized void save() {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            properties.setProperty(entry.getKey() + NAME, entry.getValue().getName());
+            properties.setProperty(entry.getKey() + VERSION, entry.getValue().getVersion());
+            properties.setProperty(entry.getKey() + SUMMARY, entry.getValue().getSummary());
+        }
+        file.save(properties);
+    }
+
+}
@@ -0,0 +1,16 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import alien4cloud.model.components.Csar;
+
+/**
+ * Notified by the {@link Uploader} whenever an archive has been handed to A4C for indexing, so that anything derived
+ * from what was previously indexed can be discarded. All beans implementing this interface are registered.
+ */
+public interface ArchiveIndexedListener {
+
+    /**
+     * @param archive the archive which was indexed, or null if A4C did not return one (e.g. on a parse error)
+     */
+    void onArchiveIndexed(Csar archive);
+
+}
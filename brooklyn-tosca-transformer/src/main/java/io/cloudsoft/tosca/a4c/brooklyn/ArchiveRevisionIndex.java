@@ -0,0 +1,253 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.inject.Inject;
+
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
+import alien4cloud.component.repository.ICsarRepositry;
+import alien4cloud.model.components.Csar;
+import alien4cloud.utils.FileUtil;
+
+/**
+ * Digests of every file of each SNAPSHOT archive uploaded, so that a new revision whose type definitions and
+ * topology templates are unchanged, such as one where only a script was edited, replaces the stored archive and
+ * its expanded artifacts without being parsed and indexed again.
+ * <p>
+ * A4C can only index a whole archive, so any change to a definition file, or to {@code TOSCA-Metadata}, has the
+ * whole archive uploaded as before. Digests are held in memory, so the first revision after a restart is always
+ * uploaded in full.
+ */
+@Component
+public class ArchiveRevisionIndex implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveRevisionIndex.class);
+
+    /** The digests of the files of one revision of an archive. */
+    private static class Revision {
+        final Csar csar;
+        final String definitionsDigest;
+        final SortedMap<String, String> files;
+
+        Revision(Csar csar, String definitionsDigest, SortedMap<String, String> files) {
+            this.csar = csar;
+            this.definitionsDigest = definitionsDigest;
+            this.files = files;
+        }
+    }
+
+    private final ICsarRepositry csarRepository;
+    // keyed by name:version
+    private final ConcurrentMap<String, Revision> revisions = Maps.newConcurrentMap();
+    // held while replacing or re-recording an archive, so that two revisions of one archive are not written at once
+    private final ConcurrentMap<String, Object> locks = Maps.newConcurrentMap();
+
+    @Inject
+    public ArchiveRevisionIndex(ICsarRepositry csarRepository) {
+        this.csarRepository = csarRepository;
+    }
+
+    /**
+     * If the given archive is a revision of an uploaded SNAPSHOT archive which differs only in files other than
+     * definitions, replaces the stored archive and its expanded artifacts with it. The caller should
+     * {@link #record(Path, Csar) record} the archive once listeners have been notified.
+     *
+     * @return the archive updated, or absent if the archive must be uploaded
+     */
+    public Optional<Csar> updateArtifactsOnly(Path zip) {
+        if (revisions.isEmpty()) {
+            return Optional.absent();
+        }
+        SortedMap<String, String> files;
+        try {
+            files = fileDigests(zip);
+        } catch (IOException e) {
+            LOG.debug("Could not read " + zip + " as an archive; will upload it", e);
+            return Optional.absent();
+        }
+        String definitionsDigest = definitionsDigest(files);
+        for (Revision previous : revisions.values()) {
+            if (!previous.definitionsDigest.equals(definitionsDigest) || !isSnapshot(previous.csar)) {
+                continue;
+            }
+            Set<String> changed = changedFiles(previous.files, files);
+            if (changed.isEmpty()) {
+                // same content; let the upload proceed as A4C would otherwise
+                return Optional.absent();
+            }
+            Csar csar = previous.csar;
+            try {
+                if (!replace(previous, zip)) {
+                    return Optional.absent();
+                }
+            } catch (Exception e) {
+                LOG.debug("Could not replace artifacts of " + key(csar) + "; will upload " + zip, e);
+                return Optional.absent();
+            }
+            LOG.debug("Updated {} without re-indexing, as only these files changed: {}", key(csar), changed);
+            return Optional.of(csar);
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * Records the files of an archive which has been uploaded and indexed.
+     */
+    public void record(Path zip, Csar csar) {
+        if (csar == null || !isSnapshot(csar)) {
+            return;
+        }
+        try {
+            SortedMap<String, String> files = fileDigests(zip);
+            synchronized (lockFor(key(csar))) {
+                revisions.put(key(csar), new Revision(csar, definitionsDigest(files), files));
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not record file digests of " + zip + "; next revision of " + key(csar) + " will be uploaded in full", e);
+        }
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        if (archive != null && archive.getName() != null) {
+            // the uploader records the new revision after notifying listeners; waits for any replacement to finish
+            synchronized (lockFor(key(archive))) {
+                revisions.remove(key(archive));
+            }
+        }
+    }
+
+    /**
+     * Replaces the stored archive and its expanded artifacts with those of the given archive. Each is written
+     * beside the original and renamed into place, so readers see either the old files or the new ones.
+     *
+     * @return false if the revision was re-indexed or replaced by another caller meanwhile
+     */
+    private boolean replace(Revision previous, Path zip) throws Exception {
+        Csar csar = previous.csar;
+        String key = key(csar);
+        synchronized (lockFor(key)) {
+            if (revisions.get(key) != previous) {
+                LOG.debug("Revision of {} changed while checking {}; will upload it", key, zip);
+                return false;
+            }
+            Path stored = csarRepository.getCSAR(csar.getName(), csar.getVersion());
+            if (stored == null || !Files.exists(stored)) {
+                throw new IOException("Archive " + key + " is not in the repository");
+            }
+            stored = stored.toAbsolutePath();
+            Path expanded = stored.getParent().resolve(CsarArtifactIndex.EXPANDED_FOLDER_NAME);
+            String suffix = "." + Identifiers.makeRandomId(8);
+            Path newArchive = stored.resolveSibling(stored.getFileName() + suffix + ".tmp");
+            Path newExpanded = expanded.resolveSibling(expanded.getFileName() + suffix + ".tmp");
+            Path oldExpanded = expanded.resolveSibling(expanded.getFileName() + suffix + ".old");
+            try {
+                Files.copy(zip, newArchive);
+                FileUtil.unzip(newArchive, newExpanded);
+                Files.move(newArchive, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                // a non-empty directory cannot be renamed over another, so move the old one aside first
+                if (Files.exists(expanded)) {
+                    Files.move(expanded, oldExpanded, StandardCopyOption.ATOMIC_MOVE);
+                }
+                Files.move(newExpanded, expanded, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(newArchive);
+                Os.deleteRecursively(newExpanded.toFile());
+                Os.deleteRecursively(oldExpanded.toFile());
+            }
+            return true;
+        }
+    }
+
+    private Object lockFor(String key) {
+        return locks.computeIfAbsent(key, k -> new Object());
+    }
+
+    @VisibleForTesting
+    static SortedMap<String, String> fileDigests(Path zip) throws IOException {
+        ImmutableSortedMap.Builder<String, String> result = ImmutableSortedMap.naturalOrder();
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) continue;
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    HashingInputStream hashed = new HashingInputStream(Hashing.sha256(), in);
+                    ByteStreams.exhaust(hashed);
+                    result.put(normalize(entry.getName()), hashed.hash().toString());
+                }
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * @return a digest of the names and digests of the definition files, which A4C parses
+     */
+    @VisibleForTesting
+    static String definitionsDigest(SortedMap<String, String> files) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            if (isDefinition(file.getKey())) {
+                hasher.putString(file.getKey() + "=" + file.getValue() + "\n", StandardCharsets.UTF_8);
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private static boolean isDefinition(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".yaml") || lower.endsWith(".yml") || lower.startsWith("tosca-metadata/");
+    }
+
+    private static Set<String> changedFiles(Map<String, String> before, Map<String, String> after) {
+        Set<String> changed = Sets.newTreeSet();
+        for (String name : Sets.union(before.keySet(), after.keySet())) {
+            if (!Objects.equals(before.get(name), after.get(name))) {
+                changed.add(name);
+            }
+        }
+        return changed;
+    }
+
+    private static String normalize(String name) {
+        return name.replaceFirst("^\\.?/", "");
+    }
+
+    private static boolean isSnapshot(Csar csar) {
+        return csar.getVersion() != null && csar.getVersion().endsWith("-SNAPSHOT");
+    }
+
+    private static String key(Csar csar) {
+        return csar.getName() + ":" + csar.getVersion();
+    }
+
+}
@@ -0,0 +1,224 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+
+import alien4cloud.component.repository.ICsarRepositry;
+import alien4cloud.model.components.Csar;
+
+/**
+ * Records where each archive is stored and the location of every artifact in its expanded folder, so that
+ * artifacts and scripts can be resolved without asking the repository (which throws for unknown archives) or
+ * probing the filesystem for every candidate archive.
+ * <p>
+ * An archive is indexed when the {@link Uploader} reports it has been indexed, or on first use for archives which
+ * were already in the repository. At most {@link #DEFAULT_MAXIMUM_ARCHIVES} archives are held. An archive the
+ * repository does not have is remembered for {@link #DEFAULT_ABSENT_TTL} only, as archives may reach the repository
+ * other than through the {@link Uploader}.
+ */
+@Component
+public class CsarArtifactIndex implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CsarArtifactIndex.class);
+
+    /** The folder, alongside the stored CSAR, which A4C expands it into. */
+    public static final String EXPANDED_FOLDER_NAME = "expanded";
+
+    public static final int DEFAULT_MAXIMUM_ARCHIVES = 500;
+    public static final Duration DEFAULT_ABSENT_TTL = Duration.TEN_SECONDS;
+
+    private final ICsarRepositry csarRepository;
+    private final Cache<String, ArchiveEntry> archives;
+    private final long absentTtlNanos;
+
+    @Inject
+    public CsarArtifactIndex(ICsarRepositry csarRepository) {
+        this(csarRepository, DEFAULT_MAXIMUM_ARCHIVES, DEFAULT_ABSENT_TTL);
+    }
+
+    public CsarArtifactIndex(ICsarRepositry csarRepository, int maximumArchives, Duration absentTtl) {
+        this.csarRepository = csarRepository;
+        this.archives = CacheBuilder.newBuilder().maximumSize(maximumArchives).build();
+        this.absentTtlNanos = absentTtl.toNanoseconds();
+    }
+
+    /**
+     * @return the path of the stored CSAR for the given archive, or absent if the repository does not have it
+     */
+    public Optional<Path> getCsarPath(String archiveName, String archiveVersion) {
+        return getArchive(archiveName, archiveVersion).csarPath;
+    }
+
+    /**
+     * @return the location of the given artifact in the expanded folder of the given archive, or absent if the
+     *         archive is unknown or does not contain it
+     */
+    public Optional<Artifact> getArtifact(String archiveName, String archiveVersion, String artifactRef) {
+        if (artifactRef == null) return Optional.absent();
+        return Optional.fromNullable(getArchive(archiveName, archiveVersion).artifacts.get(normalize(artifactRef)));
+    }
+
+    /**
+     * Discards what is recorded about the given archive, or about all archives if null.
+     */
+    public void invalidate(Csar archive) {
+        if (archive == null || archive.getName() == null) {
+            archives.invalidateAll();
+        } else {
+            archives.invalidate(key(archive.getName(), archive.getVersion()));
+        }
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        invalidate(archive);
+        if (archive != null && archive.getName() != null) {
+            // index now, while the archive is fresh on disk, rather than when the first spec needs it
+            getArchive(archive.getName(), archive.getVersion());
+        }
+    }
+
+    private ArchiveEntry getArchive(String archiveName, String archiveVersion) {
+        if (archiveName == null || archiveVersion == null) {
+            return ArchiveEntry.ABSENT;
+        }
+        String key = key(archiveName, archiveVersion);
+        ArchiveEntry result = archives.getIfPresent(key);
+        if (result == null || (!result.csarPath.isPresent() && System.nanoTime() - result.indexedAt > absentTtlNanos)) {
+            // indexing twice if two threads race here is harmless, the results are equivalent
+            result = index(archiveName, archiveVersion);
+            archives.put(key, result);
+        }
+        return result;
+    }
+
+    private ArchiveEntry index(String archiveName, String archiveVersion) {
+        Path csarPath;
+        try {
+            csarPath = csarRepository.getCSAR(archiveName, archiveVersion);
+        } catch (Exception e) {
+            // not in the repository; remembered until this archive is indexed or the entry expires
+            LOG.trace("Archive {}:{} not found in repository: {}", new Object[] { archiveName, archiveVersion, e });
+            return ArchiveEntry.absent();
+        }
+        if (csarPath == null) {
+            return ArchiveEntry.absent();
+        }
+
+        final Path expanded = csarPath.toAbsolutePath().getParent().resolve(EXPANDED_FOLDER_NAME);
+        final ImmutableMap.Builder<String, Artifact> artifacts = ImmutableMap.builder();
+        if (Files.isDirectory(expanded)) {
+            try {
+                Files.walkFileTree(expanded, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        // directories are artifacts too, e.g. resources folders
+                        add(dir, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        add(file, attrs);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    private void add(Path path, BasicFileAttributes attrs) {
+                        if (path.equals(expanded)) return;
+                        String ref = normalize(expanded.relativize(path).toString());
+                        artifacts.put(ref, new Artifact(path, attrs.isDirectory(), attrs.lastModifiedTime().toMillis(), attrs.size()));
+                    }
+                });
+            } catch (IOException e) {
+                LOG.warn("Error indexing artifacts of " + archiveName + ":" + archiveVersion + " in " + expanded + "; artifacts may not be found", e);
+            }
+        }
+        ArchiveEntry result = new ArchiveEntry(Optional.of(csarPath), artifacts.build());
+        LOG.debug("Indexed {} artifacts for archive {}:{}", new Object[] { result.artifacts.size(), archiveName, archiveVersion });
+        return result;
+    }
+
+    private static String key(String archiveName, String archiveVersion) {
+        return archiveName + ":" + archiveVersion;
+    }
+
+    /** Reduces an artifact ref to a canonical path relative to the expanded folder, e.g. {@code ./scripts//a.sh} to {@code scripts/a.sh}. */
+    static String normalize(String artifactRef) {
+        String path = Paths.get("/", artifactRef.replace('\\', '/')).normalize().toString().replace('\\', '/');
+        return Strings.removeAllFromStart(path, "/");
+    }
+
+    /** The location of an artifact in an expanded archive, with the modification stamp and size recorded when indexed. */
+    public static class Artifact {
+        private final Path path;
+        private final boolean directory;
+        private final long lastModified;
+        private final long size;
+
+        Artifact(Path path, boolean directory, long lastModified, long size) {
+            this.path = path;
+            this.directory = directory;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+    }
+
+    private static class ArchiveEntry {
+        /** For archives which cannot be looked up at all; never stored. */
+        static final ArchiveEntry ABSENT = absent();
+
+        final Optional<Path> csarPath;
+        final Map<String, Artifact> artifacts;
+        final long indexedAt = System.nanoTime();
+
+        ArchiveEntry(Optional<Path> csarPath, Map<String, Artifact> artifacts) {
+            this.csarPath = csarPath;
+            this.artifacts = artifacts;
+        }
+
+        static ArchiveEntry absent() {
+            return new ArchiveEntry(Optional.<Path>absent(), ImmutableMap.<String, Artifact>of());
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.text.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.Csar;
+
+/**
+ * The archives indexed from each type resource loaded at startup, such as the normative types, with the SHA-256
+ * digest of the resource, so that a restart which finds the same content already indexed can skip unpacking,
+ * repacking and uploading it.
+ * <p>
+ * Saved to {@link #FILE} alongside the management state. A resource is only skipped if every archive indexed from
+ * it is still in A4C, so a fresh A4C data directory has the types loaded again; a resource is also loaded again if
+ * any of its archives has since been indexed from other content.
+ */
+@Component
+public class DefaultTypesSnapshot implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultTypesSnapshot.class);
+
+    public static final ConfigKey<String> FILE = ConfigKeys.newStringConfigKey(
+            "tosca.a4c.types.snapshot.file",
+            "File recording the digests and archives of the TOSCA types loaded at startup; defaults to "
+                    + "tosca-types-snapshot.properties in the management base directory");
+
+    private static final String DIGEST = ".digest";
+    private static final String ARCHIVES = ".archives";
+
+    /** The digest of a resource and the archives, as name:version, indexed from it. */
+    private static class Entry {
+        final String digest;
+        final List<String> archives;
+
+        Entry(String digest, List<String> archives) {
+            this.digest = digest;
+            this.archives = ImmutableList.copyOf(archives);
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+    private final ICSARRepositorySearchService repositorySearchService;
+    private final PropertiesFile file;
+
+    @Inject
+    public DefaultTypesSnapshot(ManagementContext mgmt, ICSARRepositorySearchService repositorySearchService) {
+        this(PropertiesFile.getFile(mgmt, FILE, "tosca-types-snapshot.properties"), repositorySearchService);
+    }
+
+    /**
+     * @param file where to save the snapshot, or null to keep it only in memory
+     */
+    public DefaultTypesSnapshot(@Nullable File file, ICSARRepositorySearchService repositorySearchService) {
+        this.file = new PropertiesFile(file, "SHA-256 digests of TOSCA types loaded at startup");
+        this.repositorySearchService = repositorySearchService;
+        load();
+    }
+
+    /**
+     * @return whether content with the given digest was loaded from the given url, and all its archives are
+     *         still indexed
+     */
+    public boolean isIndexed(String url, String digest) {
+        Entry entry = entries.get(url);
+        if (entry == null || !entry.digest.equals(digest)) {
+            return false;
+        }
+        for (String archive : entry.archives) {
+            Csar csar;
+            try {
+                csar = repositorySearchService.getArchive(archive);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Could not look up archive " + archive + " loaded from " + url + "; will load again", e);
+                csar = null;
+            }
+            if (csar == null) {
+                LOG.debug("Archive {} loaded from {} is no longer indexed; will load again", archive, url);
+                remove(url, entry);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records that content with the given digest was loaded from the given url, indexing the given archives.
+     */
+    public void put(String url, String digest, Collection<Csar> archives) {
+        List<String> names = MutableList.of();
+        for (Csar archive : archives) {
+            if (archive == null) {
+                // cannot verify it is still indexed, so load the resource again next time
+                return;
+            }
+            names.add(key(archive));
+        }
+        entries.put(url, new Entry(digest, names));
+        LOG.debug("Recorded digest {} of {} for archives {}", new Object[] { digest, url, names });
+        save();
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        if (archive == null || archive.getName() == null) {
+            return;
+        }
+        // the loader records the resource after its archives are indexed
+        String key = key(archive);
+        if (entries.values().removeIf(entry -> entry.archives.contains(key))) {
+            save();
+        }
+    }
+
+    private void remove(String url, Entry entry) {
+        if (entries.remove(url, entry)) {
+            save();
+        }
+    }
+
+    private static String key(Csar archive) {
+        return archive.getName() + ":" + archive.getVersion();
+    }
+
+    private void load() {
+        Properties properties = file.load();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.endsWith(DIGEST)) {
+                String url = key.substring(0, key.length() - DIGEST.length());
+                String archives = properties.getProperty(url + ARCHIVES, "");
+                entries.put(url, new Entry(properties.getProperty(key), Splitter.on(',').omitEmptyStrings().splitToList(archives)));
+            }
+        }
+        LOG.debug("Loaded snapshot of {} TOSCA type resource(s)", entries.size());
+    }
+
+    private synchronized void save() {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            properties.setProperty(entry.getKey() + DIGEST, entry.getValue().digest);
+            properties.setProperty(entry.getKey() + ARCHIVES, Strings.join(entry.getValue().archives, ","));
+        }
+        file.save(properties);
+    }
+
+}
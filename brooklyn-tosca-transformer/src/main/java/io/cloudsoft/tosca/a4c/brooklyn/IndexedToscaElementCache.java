@@ -0,0 +1,139 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableSet;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.CSARDependency;
+import alien4cloud.model.components.Csar;
+import alien4cloud.model.components.IndexedToscaElement;
+
+/**
+ * Caches the indexed TOSCA elements looked up through {@link ICSARRepositorySearchService}, keyed by the element class,
+ * the type name and the set of dependencies it is resolved against, so that resolving the same type for every node
+ * of a topology does not go to Elasticsearch each time.
+ * <p>
+ * The cache is bounded. When an archive is indexed, the elements resolved against it are evicted; lookups are
+ * confined to their dependencies, so other entries are unaffected.
+ */
+@Component
+public class IndexedToscaElementCache implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IndexedToscaElementCache.class);
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 2000;
+
+    private final ICSARRepositorySearchService repositorySearchService;
+    private final Cache<Key, IndexedToscaElement> cache;
+    // incremented on every invalidation so that lookups racing with an upload do not cache what they found
+    private final AtomicLong generation = new AtomicLong();
+
+    @Inject
+    public IndexedToscaElementCache(ICSARRepositorySearchService repositorySearchService) {
+        this(repositorySearchService, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public IndexedToscaElementCache(ICSARRepositorySearchService repositorySearchService, int maximumSize) {
+        this.repositorySearchService = repositorySearchService;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * As {@link ICSARRepositorySearchService#getRequiredElementInDependencies(Class, String, Collection)},
+     * answering from the cache where possible.
+     */
+    public <T extends IndexedToscaElement> T getRequiredElementInDependencies(Class<T> elementClass, String elementId, Collection<CSARDependency> dependencies) {
+        Key key = new Key(elementClass, elementId, dependencies);
+        IndexedToscaElement cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return elementClass.cast(cached);
+        }
+        long generationAtLookup = generation.get();
+        T result = repositorySearchService.getRequiredElementInDependencies(elementClass, elementId, dependencies);
+        if (result != null && generation.get() == generationAtLookup) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the hit and miss counts of the cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * @return the number of elements currently cached
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        if (archive == null || archive.getName() == null) {
+            // some types may have been indexed before A4C failed, and which archive they belong to is unknown
+            invalidateAll();
+            return;
+        }
+        final String id = archive.getName() + ":" + archive.getVersion();
+        generation.incrementAndGet();
+        int before = cache.asMap().size();
+        cache.asMap().keySet().removeIf(key -> key.dependencies.contains(id));
+        LOG.trace("Evicted {} indexed element(s) resolved against {}", before - cache.asMap().size(), id);
+    }
+
+    private static class Key {
+        private final Class<?> elementClass;
+        private final String elementId;
+        private final ImmutableSet<String> dependencies;
+
+        Key(Class<?> elementClass, String elementId, Collection<CSARDependency> dependencies) {
+            this.elementClass = elementClass;
+            this.elementId = elementId;
+            ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+            if (dependencies != null) {
+                for (CSARDependency dependency : dependencies) {
+                    builder.add(dependency.getName() + ":" + dependency.getVersion());
+                }
+            }
+            this.dependencies = builder.build();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(elementClass, elementId, dependencies);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            Key that = Key.class.cast(obj);
+            return Objects.equal(this.elementClass, that.elementClass) &&
+                    Objects.equal(this.elementId, that.elementId) &&
+                    Objects.equal(this.dependencies, that.dependencies);
+        }
+    }
+}
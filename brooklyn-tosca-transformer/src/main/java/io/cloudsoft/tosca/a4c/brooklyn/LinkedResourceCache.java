@@ -0,0 +1,453 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.server.BrooklynServerConfig;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.http.HttpTool;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.stream.Streams;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+/**
+ * A disk-backed, least-recently-used cache of the resources named by {@code csar_link} and {@code tosca_link},
+ * so that a remote archive is downloaded once rather than on every parse.
+ * <p>
+ * Every use revalidates the copy held: HTTP resources with {@code If-None-Match} and {@code If-Modified-Since},
+ * files by their modification time and length. HTTP resources are fetched with {@link HttpTool}, configured as
+ * {@link ResourceUtils} does. Those with neither an {@code ETag} nor a {@code Last-Modified} header are streamed
+ * to the caller without being cached; other protocols, such as {@code classpath:}, are left to the loader.
+ * An HTTP error status is the caller's failure, as it would be from the loader; only when the cache itself or the
+ * connection fails is the resource loaded again by the loader.
+ * Cached copies are opened while holding the cache's lock, so an eviction or replacement cannot race the open.
+ * The cache is bounded by {@link #MAXIMUM_BYTES} and persists in {@link #DIRECTORY} across restarts.
+ */
+@Component
+public class LinkedResourceCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LinkedResourceCache.class);
+
+    public static final ConfigKey<String> DIRECTORY = ConfigKeys.newStringConfigKey(
+            "tosca.a4c.links.cache.dir",
+            "Directory holding downloaded csar_link and tosca_link resources; defaults to tosca-links "
+                    + "in the management base directory");
+
+    public static final ConfigKey<Long> MAXIMUM_BYTES = ConfigKeys.newLongConfigKey(
+            "tosca.a4c.links.cache.size",
+            "Maximum number of bytes of csar_link and tosca_link resources to keep on disk; 0 disables the cache",
+            512L * 1024 * 1024);
+
+    public static final ConfigKey<Long> MAXIMUM_ENTRY_BYTES = ConfigKeys.newLongConfigKey(
+            "tosca.a4c.links.cache.entry.size",
+            "Largest csar_link or tosca_link resource to keep on disk",
+            128L * 1024 * 1024);
+
+    /** Resources served from the cache, including those revalidated with the server. */
+    public static final String HITS = "links.cache.hits";
+    /** Resources fetched because they were not held, had changed or could not be revalidated. */
+    public static final String MISSES = "links.cache.misses";
+
+    private static final Duration TIMEOUT = Duration.THIRTY_SECONDS;
+    private static final String DATA = ".data";
+    private static final String META = ".properties";
+
+    private static class Entry {
+        final String url;
+        final String etag;
+        final String lastModified;
+        final long sourceModified;
+        final long sourceLength;
+        final long size;
+
+        Entry(String url, String etag, String lastModified, long sourceModified, long sourceLength, long size) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.sourceModified = sourceModified;
+            this.sourceLength = sourceLength;
+            this.size = size;
+        }
+    }
+
+    private final File directory;
+    private final long maximumBytes;
+    private final long maximumEntryBytes;
+    private final ToscaMetrics metrics;
+    // access-ordered, so iteration starts with the least recently used
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long residentBytes;
+
+    @Inject
+    public LinkedResourceCache(ManagementContext mgmt, ToscaMetrics metrics) {
+        this(getDirectory(mgmt), mgmt.getConfig().getConfig(MAXIMUM_BYTES), mgmt.getConfig().getConfig(MAXIMUM_ENTRY_BYTES), metrics);
+    }
+
+    public LinkedResourceCache(File directory, long maximumBytes, long maximumEntryBytes, ToscaMetrics metrics) {
+        this.directory = directory;
+        this.maximumBytes = maximumBytes;
+        this.maximumEntryBytes = Math.min(maximumEntryBytes, maximumBytes);
+        this.metrics = metrics;
+        if (maximumBytes > 0) {
+            load();
+        }
+    }
+
+    private static File getDirectory(ManagementContext mgmt) {
+        String configured = mgmt.getConfig().getConfig(DIRECTORY);
+        if (Strings.isNonBlank(configured)) {
+            return new File(Os.tidyPath(configured));
+        }
+        return new File(BrooklynServerConfig.getMgmtBaseDir(mgmt), "tosca-links");
+    }
+
+    /**
+     * @return the contents of the URL, from the cache if they are unchanged, otherwise as loaded by the given loader
+     */
+    public InputStream getResourceFromUrl(String url, ResourceUtils loader) {
+        try {
+            InputStream result = open(url);
+            if (result != null) {
+                return result;
+            }
+        } catch (HttpStatusException e) {
+            // the server answered; asking it again through the loader would get the same answer
+            throw Exceptions.propagate(e);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Could not use cached copy of " + url + "; loading it directly", e);
+        }
+        return loader.getResourceFromUrl(url);
+    }
+
+    /**
+     * @return the current contents of the URL, or null if the loader should be used
+     */
+    @VisibleForTesting
+    InputStream open(String url) throws IOException {
+        if (maximumBytes <= 0) {
+            return null;
+        }
+        if (url.startsWith("file:")) {
+            return getFile(url, new File(URI.create(url)));
+        }
+        if (url.startsWith("http:") || url.startsWith("https:")) {
+            return getHttp(url);
+        }
+        return null;
+    }
+
+    private InputStream getFile(String url, File source) throws IOException {
+        String key = key(url);
+        long modified = source.lastModified();
+        long length = source.length();
+        if (modified == 0L && !source.exists()) {
+            throw new IOException("No such file " + source);
+        }
+        Entry entry = lookup(key);
+        if (entry != null && entry.sourceModified == modified && entry.sourceLength == length) {
+            InputStream cached = openData(key, entry);
+            if (cached != null) {
+                metrics.increment(HITS, 1);
+                return cached;
+            }
+        }
+        metrics.increment(MISSES, 1);
+        if (length > maximumEntryBytes) {
+            return null;
+        }
+        return store(key, new Entry(url, null, null, modified, length, length), new FileInputStream(source));
+    }
+
+    private InputStream getHttp(String url) throws IOException {
+        String key = key(url);
+        Entry entry = lookup(key);
+        URI uri = URI.create(url);
+        // as ResourceUtils fetches over HTTP, so proxies, TLS trust and redirects are handled the same way
+        HttpTool.HttpClientBuilder builder = HttpTool.httpClientBuilder()
+                .uri(uri)
+                .laxRedirect(true)
+                .connectionTimeout(TIMEOUT)
+                .socketTimeout(TIMEOUT);
+        if (uri.getRawUserInfo() != null) {
+            builder.credentials(new UsernamePasswordCredentials(URLDecoder.decode(uri.getRawUserInfo(), "UTF-8")));
+        }
+        HttpGet request = new HttpGet(uri);
+        if (entry != null) {
+            if (entry.etag != null) request.setHeader("If-None-Match", entry.etag);
+            if (entry.lastModified != null) request.setHeader("If-Modified-Since", entry.lastModified);
+        }
+        // a client per request, as the credentials are those of the URL; its connections are closed when done
+        final HttpClient client = builder.build();
+        boolean handedOver = false;
+        try {
+            HttpResponse response = client.execute(request);
+            int code = response.getStatusLine().getStatusCode();
+            if (code == HttpStatus.SC_NOT_MODIFIED && entry != null) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                InputStream cached = openData(key, entry);
+                if (cached != null) {
+                    metrics.increment(HITS, 1);
+                    return cached;
+                }
+                // evicted or replaced while revalidating; rare, so let the loader fetch it
+                return null;
+            }
+            if (code >= HttpStatus.SC_BAD_REQUEST) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                throw new HttpStatusException("Server returned " + response.getStatusLine() + " for " + url);
+            }
+            if (code != HttpStatus.SC_OK || response.getEntity() == null) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                throw new IOException("Server returned " + code + " for " + url);
+            }
+            metrics.increment(MISSES, 1);
+            String etag = header(response, "ETag");
+            String lastModified = header(response, "Last-Modified");
+            long length = response.getEntity().getContentLength();
+            InputStream body = new FilterInputStream(response.getEntity().getContent()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        shutdown(client);
+                    }
+                }
+            };
+            handedOver = true;
+            if ((etag == null && lastModified == null) || length > maximumEntryBytes) {
+                // cannot revalidate, or too big; give the caller this response rather than fetching it again
+                remove(key);
+                return body;
+            }
+            return store(key, new Entry(url, etag, lastModified, 0, 0, 0), body);
+        } finally {
+            if (!handedOver) {
+                shutdown(client);
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void shutdown(HttpClient client) {
+        client.getConnectionManager().shutdown();
+    }
+
+    private static String header(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    /**
+     * Copies the stream into the cache, taking ownership of it.
+     *
+     * @return the stored copy, or if it is too big to keep, what was read of it followed by the rest of the stream
+     */
+    private InputStream store(String key, Entry entry, InputStream in) throws IOException {
+        Os.mkdirs(directory);
+        final File tmp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+        boolean handedOver = false;
+        try {
+            long size;
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                size = ByteStreams.copy(ByteStreams.limit(in, maximumEntryBytes + 1), out);
+            }
+            if (size > maximumEntryBytes) {
+                LOG.debug("Not caching {}: larger than {} bytes", entry.url, maximumEntryBytes);
+                InputStream head = new FileInputStream(tmp) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        tmp.delete();
+                    }
+                };
+                handedOver = true;
+                return new SequenceInputStream(head, in);
+            }
+            in.close();
+            Entry stored = new Entry(entry.url, entry.etag, entry.lastModified, entry.sourceModified, entry.sourceLength, size);
+            synchronized (this) {
+                Files.move(tmp.toPath(), data(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                writeMeta(key, stored);
+                Entry previous = entries.put(key, stored);
+                residentBytes += size - (previous != null ? previous.size : 0);
+                evict(key);
+                LOG.debug("Cached {} ({} bytes)", entry.url, size);
+                return new FileInputStream(data(key));
+            }
+        } finally {
+            if (!handedOver) {
+                Streams.closeQuietly(in);
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the cached copy, opened while it cannot be evicted or replaced, or null if the entry is no longer
+     * the one given; an open file remains readable after it is deleted or replaced
+     */
+    private synchronized InputStream openData(String key, Entry expected) throws IOException {
+        if (entries.get(key) != expected) {
+            return null;
+        }
+        return new FileInputStream(data(key));
+    }
+
+    private synchronized Entry lookup(String key) {
+        return entries.get(key);
+    }
+
+    private synchronized void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            residentBytes -= removed.size;
+            data(key).delete();
+            meta(key).delete();
+        }
+    }
+
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (residentBytes > maximumBytes && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (eldest.getKey().equals(keep)) continue;
+            iterator.remove();
+            residentBytes -= eldest.getValue().size;
+            data(eldest.getKey()).delete();
+            meta(eldest.getKey()).delete();
+            LOG.debug("Evicted cached {}", eldest.getValue().url);
+        }
+    }
+
+    private void writeMeta(String key, Entry entry) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("url", entry.url);
+        if (entry.etag != null) properties.setProperty("etag", entry.etag);
+        if (entry.lastModified != null) properties.setProperty("lastModified", entry.lastModified);
+        properties.setProperty("sourceModified", Long.toString(entry.sourceModified));
+        properties.setProperty("sourceLength", Long.toString(entry.sourceLength));
+        try (OutputStream out = new FileOutputStream(meta(key))) {
+            properties.store(out, null);
+        }
+    }
+
+    private synchronized void load() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(META));
+        if (files == null) {
+            return;
+        }
+        // oldest first, so the most recently written are the last to be evicted
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            String key = file.getName().substring(0, file.getName().length() - META.length());
+            File data = data(key);
+            Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+                Entry entry = new Entry(properties.getProperty("url"), properties.getProperty("etag"), properties.getProperty("lastModified"),
+                        Long.parseLong(properties.getProperty("sourceModified", "0")), Long.parseLong(properties.getProperty("sourceLength", "0")),
+                        data.length());
+                if (entry.url != null && data.exists()) {
+                    entries.put(key, entry);
+                    residentBytes += entry.size;
+                    continue;
+                }
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Discarding unreadable cache entry " + file, e);
+            }
+            file.delete();
+            data.delete();
+        }
+        evict(null);
+        LOG.debug("Loaded {} cached link(s), {} bytes, from {}", entries.size(), residentBytes, directory);
+    }
+
+    private static String key(String url) {
+        return Hashing.sha256().hashString(url, StandardCharsets.UTF_8).toString();
+    }
+
+    private File data(String key) {
+        return new File(directory, key + DATA);
+    }
+
+    private File meta(String key) {
+        return new File(directory, key + META);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    /**
+     * @return the fraction of lookups of cacheable resources served from the cache
+     */
+    public double getHitRate() {
+        long hits = metrics.getCount(HITS);
+        long total = hits + metrics.getCount(MISSES);
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return the loader's stream for the URL, through the cache if there is one
+     */
+    public static InputStream getResourceFromUrl(@Nullable LinkedResourceCache cache, ResourceUtils loader, String url) {
+        return cache != null ? cache.getResourceFromUrl(url, loader) : loader.getResourceFromUrl(url);
+    }
+
+    /** The server answered with an error, which is passed to the caller rather than loading the resource again. */
+    private static class HttpStatusException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        HttpStatusException(String message) {
+            super(message);
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.classloading.BrooklynClassLoadingContext;
+import org.apache.brooklyn.api.typereg.OsgiBundleWithUrl;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.mgmt.classloading.BrooklynClassLoadingContextSequential;
+import org.apache.brooklyn.core.mgmt.classloading.OsgiBrooklynClassLoadingContext;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import alien4cloud.model.components.CSARDependency;
+import alien4cloud.model.components.Csar;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+/**
+ * The archives indexed from plans, keyed by a SHA-256 hash of the plan text and of the bundles of the
+ * class-loading context it was parsed in, so that creating a spec from the same catalog item again does not
+ * re-upload and re-index its archive.
+ * <p>
+ * Only the archive is cached, not an application: building a spec renames nodes and caches compiled state on the
+ * application, so each caller builds its own from the archive, and concurrent callers share nothing mutable.
+ * <p>
+ * Bounded by {@link #MAXIMUM_SIZE}, with entries expiring {@link #EXPIRY} after they were parsed, as a
+ * {@code csar_link} may point at content which changes. Entries for an archive are discarded when that archive,
+ * or one it depends on, is indexed again. Failures are not cached.
+ */
+@Component
+public class ParsedPlanCache implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParsedPlanCache.class);
+
+    public static final ConfigKey<Integer> MAXIMUM_SIZE = ConfigKeys.newIntegerConfigKey(
+            "tosca.a4c.plans.cache.size",
+            "Maximum number of parsed TOSCA plans to keep; 0 disables the cache",
+            100);
+
+    public static final ConfigKey<Duration> EXPIRY = ConfigKeys.newConfigKey(Duration.class,
+            "tosca.a4c.plans.cache.expiry",
+            "How long after it was parsed a cached TOSCA plan is discarded",
+            Duration.ONE_HOUR);
+
+    public static final String HITS = "plans.cache.hits";
+    public static final String MISSES = "plans.cache.misses";
+
+    private final Cache<String, Csar> cache;
+    private final ToscaMetrics metrics;
+    private final boolean enabled;
+
+    @Inject
+    public ParsedPlanCache(ManagementContext mgmt, ToscaMetrics metrics) {
+        this(mgmt.getConfig().getConfig(MAXIMUM_SIZE), mgmt.getConfig().getConfig(EXPIRY), metrics);
+    }
+
+    public ParsedPlanCache(int maximumSize, Duration expiry, ToscaMetrics metrics) {
+        this.enabled = maximumSize > 0;
+        this.metrics = metrics;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maximumSize, 0))
+                .expireAfterWrite(expiry.toMilliseconds(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the archive previously indexed from the same plan in an equivalent context, or the result of
+     * parsing it with the given loader
+     */
+    public Csar get(String plan, BrooklynClassLoadingContext context, Callable<Csar> loader) {
+        if (!enabled) {
+            return call(loader);
+        }
+        final boolean[] loaded = {false};
+        try {
+            Csar result = cache.get(hash(plan, context), () -> {
+                loaded[0] = true;
+                return loader.call();
+            });
+            metrics.increment(loaded[0] ? MISSES : HITS, 1);
+            return result;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            metrics.increment(MISSES, 1);
+            throw Exceptions.propagate(e.getCause());
+        }
+    }
+
+    private static Csar call(Callable<Csar> loader) {
+        try {
+            return loader.call();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /**
+     * @return the hex SHA-256 of the plan and the names, versions and URLs of the bundles in the context
+     */
+    static String hash(String plan, BrooklynClassLoadingContext context) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(plan, StandardCharsets.UTF_8);
+        hasher.putByte((byte) 0);
+        describe(context, hasher);
+        return hasher.hash().toString();
+    }
+
+    private static void describe(BrooklynClassLoadingContext context, Hasher hasher) {
+        if (context == null) {
+            hasher.putString("null", StandardCharsets.UTF_8);
+        } else if (context instanceof BrooklynClassLoadingContextSequential) {
+            BrooklynClassLoadingContextSequential sequential = (BrooklynClassLoadingContextSequential) context;
+            hasher.putString("sequential[", StandardCharsets.UTF_8);
+            for (BrooklynClassLoadingContext primary : sequential.getPrimaries()) {
+                describe(primary, hasher);
+            }
+            hasher.putString("|", StandardCharsets.UTF_8);
+            for (BrooklynClassLoadingContext secondary : sequential.getSecondaries()) {
+                describe(secondary, hasher);
+            }
+            hasher.putString("]", StandardCharsets.UTF_8);
+        } else if (context instanceof OsgiBrooklynClassLoadingContext) {
+            hasher.putString("osgi[", StandardCharsets.UTF_8);
+            for (OsgiBundleWithUrl bundle : ((OsgiBrooklynClassLoadingContext) context).getBundles()) {
+                hasher.putString(String.valueOf(bundle.getVersionedName()), StandardCharsets.UTF_8);
+                hasher.putString("@" + bundle.getUrl() + ";", StandardCharsets.UTF_8);
+            }
+            hasher.putString("]", StandardCharsets.UTF_8);
+        } else {
+            hasher.putString(context.getClass().getName() + ":" + context, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        if (archive == null) {
+            return;
+        }
+        String indexed = archive.getName() + ":" + archive.getVersion();
+        for (Map.Entry<String, Csar> entry : cache.asMap().entrySet()) {
+            if (uses(entry.getValue(), archive.getName(), archive.getVersion())) {
+                LOG.debug("Discarding cached plan {} as archive {} has been indexed", entry.getKey(), indexed);
+                cache.asMap().remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean uses(Csar csar, String name, String version) {
+        if (csar == null) {
+            return false;
+        }
+        if (name.equals(csar.getName()) && version.equals(csar.getVersion())) {
+            return true;
+        }
+        if (csar.getDependencies() != null) {
+            for (CSARDependency dependency : csar.getDependencies()) {
+                if (name.equals(dependency.getName()) && version.equals(dependency.getVersion())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+}
@@ -0,0 +1,98 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import javax.annotation.Nullable;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.server.BrooklynServerConfig;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.text.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A properties file kept by one of the registries which survive restarts, such as {@link ArchiveDigestRegistry}.
+ * It is written to a temporary file which then replaces it, so a crash leaves either the old or the new contents.
+ */
+class PropertiesFile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PropertiesFile.class);
+
+    private final File file;
+    private final String description;
+
+    /**
+     * @param file the file, or null to keep nothing
+     * @param description what the file holds, for its header and for diagnostics
+     */
+    PropertiesFile(@Nullable File file, String description) {
+        this.file = file;
+        this.description = description;
+    }
+
+    /**
+     * @return the file configured by the given key, or the named file in the management base directory
+     */
+    static File getFile(ManagementContext mgmt, ConfigKey<String> key, String defaultName) {
+        String configured = mgmt.getConfig().getConfig(key);
+        if (Strings.isNonBlank(configured)) {
+            return new File(Os.tidyPath(configured));
+        }
+        return new File(BrooklynServerConfig.getMgmtBaseDir(mgmt), defaultName);
+    }
+
+    /**
+     * @return the properties saved, or none if there is no file or it cannot be read
+     */
+    Properties load() {
+        Properties properties = new Properties();
+        if (file == null || !file.exists()) {
+            return properties;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException e) {
+            LOG.warn("Could not read " + description + " from " + file + "; starting without them", e);
+            properties.clear();
+        }
+        return properties;
+    }
+
+    /**
+     * Replaces the file with the given properties, logging rather than throwing if it cannot be written.
+     */
+    synchronized void save(Properties properties) {
+        if (file == null) {
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                properties.store(out, description);
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not save " + description + " to " + file + " (continuing)", e);
+        }
+    }
+
+}
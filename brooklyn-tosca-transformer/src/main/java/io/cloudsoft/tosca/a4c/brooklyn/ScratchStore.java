@@ -0,0 +1,279 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.exceptions.UserFacingException;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+/**
+ * The one directory in which archives are written while they are built and uploaded. The store creates the
+ * directory, under {@link #DIRECTORY} if configured, and deletes it on close; nothing else there is touched.
+ * <p>
+ * Each operation takes a {@link Lease} of its own subdirectory and closes it when done, which deletes the
+ * subdirectory, so files do not accumulate while the server runs. When the files of open leases reach
+ * {@link #QUOTA} bytes, new leases wait for others to close for up to {@link #ADMISSION_TIMEOUT} before being
+ * refused. Bytes and files in use are published by {@link io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetricsSensors}.
+ * <p>
+ * The directories are measured without holding the lock on the leases, and the measurement is reused for
+ * {@link #MEASUREMENT_MAX_AGE} or until a lease is opened or closed, so neither the sensors nor waiting leases
+ * walk the directories each time they look.
+ */
+@Component
+public class ScratchStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScratchStore.class);
+
+    public static final ConfigKey<String> DIRECTORY = ConfigKeys.newStringConfigKey(
+            "tosca.a4c.scratch.dir",
+            "Directory under which a directory of its own is created for archives being built and uploaded; defaults to the temporary directory");
+
+    public static final ConfigKey<Long> QUOTA = ConfigKeys.newLongConfigKey(
+            "tosca.a4c.scratch.quota",
+            "Number of bytes in the scratch directory beyond which new uploads wait; 0 for no limit",
+            1024L * 1024 * 1024);
+
+    public static final ConfigKey<Duration> ADMISSION_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "tosca.a4c.scratch.admission.timeout",
+            "How long to wait for space in the scratch directory before refusing an upload",
+            Duration.ONE_MINUTE);
+
+    /** How long the bytes and files in use are reused for, unless a lease is opened or closed meanwhile. */
+    private static final Duration MEASUREMENT_MAX_AGE = Duration.ONE_SECOND;
+
+    private final File root;
+    private final long quota;
+    private final Duration admissionTimeout;
+    private final Set<Lease> leases = Sets.newLinkedHashSet();
+    /** The number of leases opened and closed, guarded by {@link #leases}. */
+    private long changes;
+    private volatile Usage usage = new Usage(-1, 0, 0, 0);
+
+    /** Creates a store in a new temporary directory, without a quota. */
+    public ScratchStore() {
+        this(null, 0, Duration.ONE_MINUTE);
+    }
+
+    @Inject
+    public ScratchStore(ManagementContext mgmt) {
+        this(mgmt.getConfig().getConfig(DIRECTORY), mgmt.getConfig().getConfig(QUOTA), mgmt.getConfig().getConfig(ADMISSION_TIMEOUT));
+    }
+
+    /**
+     * @param directory the directory in which to create this store's directory, or null for the temporary directory
+     * @param quota the number of bytes in use beyond which leases wait, or 0 for no limit
+     */
+    public ScratchStore(String directory, long quota, Duration admissionTimeout) {
+        if (Strings.isBlank(directory)) {
+            this.root = Os.newTempDir("brooklyn-a4c");
+        } else {
+            // a directory of our own, as the one configured may be shared with other servers or hold other files
+            this.root = new File(Os.tidyPath(directory), "brooklyn-a4c-" + Identifiers.makeRandomId(8));
+            if (!root.mkdirs()) {
+                throw new IllegalStateException("Failed to create scratch directory " + root);
+            }
+        }
+        Os.deleteOnExitRecursively(root);
+        this.quota = quota;
+        this.admissionTimeout = admissionTimeout;
+    }
+
+    /**
+     * Creates a directory for one operation, waiting while the quota is used up.
+     *
+     * @param name a name for the directory, for diagnostics
+     * @throws UserFacingException if the quota is still used up after the admission timeout
+     */
+    public Lease lease(String name) {
+        long deadline = System.currentTimeMillis() + admissionTimeout.toMilliseconds();
+        while (quota > 0) {
+            Usage used = usage();
+            if (used.bytes < quota) {
+                break;
+            }
+            synchronized (leases) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new UserFacingException("Not enough scratch space to upload TOSCA archives (" + used.bytes + " of "
+                            + quota + " bytes in use by " + leases.size() + " upload(s)); try again later");
+                }
+                // unless a lease opened or closed while measuring, in which case measure again
+                if (changes == used.changes) {
+                    try {
+                        leases.wait(remaining);
+                    } catch (InterruptedException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                }
+            }
+        }
+        Lease lease;
+        synchronized (leases) {
+            lease = new Lease(new File(root, Strings.makeValidFilename(name) + "_" + Identifiers.makeRandomId(6)));
+            leases.add(lease);
+            changes++;
+        }
+        if (!lease.directory.mkdirs()) {
+            lease.close();
+            throw new IllegalStateException("Failed to create scratch directory " + lease.directory);
+        }
+        return lease;
+    }
+
+    /** @return the number of bytes in the directories of open leases */
+    public long getBytesInUse() {
+        return usage().bytes;
+    }
+
+    /** @return the number of files in the directories of open leases */
+    public long getFilesInUse() {
+        return usage().files;
+    }
+
+    /** @return the number of open leases */
+    public int getLeaseCount() {
+        synchronized (leases) {
+            return leases.size();
+        }
+    }
+
+    /** @return the directory this store created and owns */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * @return the last measurement of the directories of open leases, or a new one if it is too old or a lease
+     * has been opened or closed since
+     */
+    private Usage usage() {
+        Usage cached = usage;
+        long start = System.nanoTime();
+        long changesBefore;
+        List<Lease> open;
+        synchronized (leases) {
+            changesBefore = changes;
+            if (cached.changes == changesBefore && start - cached.measuredAt < MEASUREMENT_MAX_AGE.toNanoseconds()) {
+                return cached;
+            }
+            open = ImmutableList.copyOf(leases);
+        }
+        final long[] result = new long[2];
+        for (Lease lease : open) {
+            if (!lease.directory.exists()) continue;
+            try {
+                Files.walkFileTree(lease.directory.toPath(), new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        result[0] += attrs.size();
+                        result[1]++;
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        // deleted while walking
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LOG.trace("Could not measure " + lease.directory + ": " + e);
+            }
+        }
+        Usage measured = new Usage(changesBefore, start, result[0], result[1]);
+        usage = measured;
+        return measured;
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (leases) {
+            leases.clear();
+            changes++;
+            leases.notifyAll();
+        }
+        Os.deleteRecursively(root);
+    }
+
+    /** The bytes and files in the directories of open leases, measured when {@link #changes} was as given. */
+    private static class Usage {
+        private final long changes;
+        private final long measuredAt;
+        private final long bytes;
+        private final long files;
+
+        private Usage(long changes, long measuredAt, long bytes, long files) {
+            this.changes = changes;
+            this.measuredAt = measuredAt;
+            this.bytes = bytes;
+            this.files = files;
+        }
+    }
+
+    /**
+     * A directory for the files of one operation, deleted when closed:
+     * <pre>
+     * try (ScratchStore.Lease lease = scratch.lease("upload")) {
+     *     File archive = lease.newFile("archive.zip");
+     *     ...
+     * }
+     * </pre>
+     */
+    public class Lease implements AutoCloseable {
+        private final File directory;
+
+        private Lease(File directory) {
+            this.directory = directory;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        /** @return a file of the given name in this lease's directory; it is not created */
+        public File newFile(String name) {
+            return new File(directory, name);
+        }
+
+        @Override
+        public void close() {
+            if (!Os.deleteRecursively(directory).wasSuccessful() && directory.exists()) {
+                LOG.debug("Could not delete scratch directory " + directory + "; will be deleted on exit");
+            }
+            synchronized (leases) {
+                leases.remove(this);
+                changes++;
+                leases.notifyAll();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "ScratchStore.Lease[" + directory + "]";
+        }
+    }
+
+}
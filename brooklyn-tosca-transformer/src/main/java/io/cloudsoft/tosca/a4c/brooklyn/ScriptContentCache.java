@@ -0,0 +1,203 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.net.Urls;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+
+import alien4cloud.model.components.Csar;
+
+/**
+ * Caches the contents of lifecycle scripts so that the same artifact is read once rather than once per operation
+ * per node. The cache is bounded by the (approximate) number of bytes held and evicts least recently used scripts.
+ * <p>
+ * Files, whether referenced by path or by a relative ref which resolves to one, are keyed by their path and
+ * modification stamp, so a script changed on disk is read again. Only {@code classpath:} and bundle resources,
+ * which cannot change while loaded, are keyed by URL alone; they are dropped when an archive is indexed.
+ */
+@Component
+public class ScriptContentCache implements ArchiveIndexedListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptContentCache.class);
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 16 * 1024 * 1024;
+
+    /** Protocols whose content is fixed for the lifetime of the loader, and so safe to cache by URL. */
+    private static final ImmutableSet<String> CACHEABLE_PROTOCOLS = ImmutableSet.of("classpath", "bundle", "bundleentry", "bundleresource");
+
+    private final Cache<Key, String> cache;
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    public ScriptContentCache() {
+        this(DEFAULT_MAXIMUM_BYTES);
+    }
+
+    public ScriptContentCache(long maximumBytes) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher(new Weigher<Key, String>() {
+                    @Override
+                    public int weigh(Key key, String value) {
+                        return bytes(value);
+                    }
+                })
+                .removalListener(new RemovalListener<Key, String>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, String> notification) {
+                        residentBytes.addAndGet(-bytes(notification.getValue()));
+                    }
+                })
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @return the contents of the given file, or absent if it does not exist
+     */
+    public Optional<String> getFileContents(File file) {
+        // a single stat tells us both whether the file exists and whether what we hold is current
+        long modified = file.lastModified();
+        if (modified == 0L && !file.exists()) {
+            return Optional.absent();
+        }
+        return Optional.of(getFileContents(file, modified, file.length()));
+    }
+
+    private String getFileContents(File file, long modified, long length) {
+        Key key = new Key(file.getAbsolutePath(), modified, length);
+        String result = cache.getIfPresent(key);
+        if (result == null) {
+            result = ResourceUtils.create(this).getResourceAsString(file.getAbsolutePath());
+            put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the contents of the resource at the given URL, as loaded by the given {@link ResourceUtils}.
+     *         Classpath and bundle resources are cached by URL, and files, including relative refs which resolve
+     *         to one, by modification stamp; anything else is loaded each time.
+     */
+    public String getResourceContents(String url, ResourceUtils loader) {
+        if (!isCacheable(url)) {
+            Optional<File> file = asFile(url);
+            if (file.isPresent()) {
+                Optional<String> result = getFileContents(file.get());
+                if (result.isPresent()) {
+                    return result.get();
+                }
+            }
+            return loader.getResourceAsString(url);
+        }
+        Key key = new Key(url, -1L, -1L);
+        String result = cache.getIfPresent(key);
+        if (result == null) {
+            result = loader.getResourceAsString(url);
+            put(key, result);
+        }
+        return result;
+    }
+
+    private boolean isCacheable(String url) {
+        String protocol = Urls.getProtocol(url);
+        return protocol != null && CACHEABLE_PROTOCOLS.contains(protocol);
+    }
+
+    private Optional<File> asFile(String url) {
+        String protocol = Urls.getProtocol(url);
+        if ("file".equals(protocol)) {
+            try {
+                return Optional.of(new File(URI.create(url)));
+            } catch (IllegalArgumentException e) {
+                return Optional.absent();
+            }
+        }
+        if (protocol == null) {
+            // ResourceUtils may resolve a relative ref from the filesystem, which can change under us
+            File file = new File(url);
+            return file.isFile() ? Optional.of(file) : Optional.<File>absent();
+        }
+        return Optional.absent();
+    }
+
+    private void put(Key key, String value) {
+        residentBytes.addAndGet(bytes(value));
+        cache.put(key, value);
+    }
+
+    /**
+     * @return hit and miss counts for the cache
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    /**
+     * @return approximate number of bytes of script content currently held
+     */
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void onArchiveIndexed(Csar archive) {
+        LOG.trace("Clearing script cache after indexing {}", archive);
+        invalidateAll();
+    }
+
+    private static int bytes(String value) {
+        return value == null ? 0 : 2 * value.length();
+    }
+
+    private static class Key {
+        private final String location;
+        private final long modified;
+        private final long length;
+
+        Key(String location, long modified, long length) {
+            this.location = location;
+            this.modified = modified;
+            this.length = length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(location, modified, length);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            Key that = Key.class.cast(obj);
+            return this.modified == that.modified && this.length == that.length && Objects.equal(this.location, that.location);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.entitlement.EntitlementContext;
+import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+/**
+ * The threads on which {@link Alien4CloudApplicationSpecsBuilder} builds the specs of a topology, shared by all
+ * builders. There are {@link Alien4CloudApplicationSpecsBuilder#SPEC_BUILD_PARALLELISM} of them, or none if specs
+ * are built sequentially.
+ * <p>
+ * Each task runs with the caller's A4C security context and Brooklyn entitlement context, both cleared when it ends.
+ */
+@Component
+public class SpecBuildPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpecBuildPool.class);
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    @Inject
+    public SpecBuildPool(ManagementContext mgmt) {
+        this(parallelism(mgmt));
+    }
+
+    /**
+     * @param parallelism the number of threads, or 1 or less to build specs on the caller's thread
+     */
+    public SpecBuildPool(int parallelism) {
+        this.parallelism = Math.max(parallelism, 1);
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    private static int parallelism(ManagementContext mgmt) {
+        Integer configured = mgmt.getConfig().getConfig(Alien4CloudApplicationSpecsBuilder.SPEC_BUILD_PARALLELISM);
+        return configured == null ? 1 : configured;
+    }
+
+    /** @return the number of tasks run at once */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Runs the tasks, on the pool if there is one, waiting for them all to complete.
+     *
+     * @return the results, in the same order as the tasks
+     */
+    public <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        List<T> result = MutableList.of();
+        if (pool == null) {
+            for (Callable<T> task : tasks) {
+                try {
+                    result.add(task.call());
+                } catch (Exception e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+            return result;
+        }
+
+        final SecurityContext securityContext = SecurityContextHolder.getContext();
+        final EntitlementContext entitlementContext = Entitlements.getEntitlementContext();
+        List<ForkJoinTask<T>> submitted = MutableList.of();
+        for (final Callable<T> task : tasks) {
+            submitted.add(pool.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    SecurityContextHolder.setContext(securityContext);
+                    Entitlements.setEntitlementContext(entitlementContext);
+                    try {
+                        return task.call();
+                    } finally {
+                        Entitlements.clearEntitlementContext();
+                        SecurityContextHolder.clearContext();
+                    }
+                }
+            }));
+        }
+        boolean completed = false;
+        try {
+            for (ForkJoinTask<T> task : submitted) {
+                result.add(task.get());
+            }
+            completed = true;
+            return result;
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            if (!completed) {
+                // those not yet started need not run; the pool is shared, so it is not shut down
+                for (ForkJoinTask<T> task : submitted) {
+                    task.cancel(true);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            LOG.debug("Shutting down spec build pool");
+            pool.shutdownNow();
+        }
+    }
+
+}
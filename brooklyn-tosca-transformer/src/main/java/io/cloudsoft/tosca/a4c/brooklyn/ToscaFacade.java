@@ -11,6 +11,9 @@ import org.apache.brooklyn.camp.brooklyn.spi.dsl.BrooklynDslDeferredSupplier;
 import org.apache.brooklyn.config.ConfigKey;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Multimap;
+
+import alien4cloud.model.components.Csar;
 
 /**
  * A facade to the tosca model
@@ -83,6 +86,14 @@ public interface ToscaFacade<A extends ToscaApplication> {
      */
     Iterable<String> getInterfaceOperations(String nodeId, A toscaApplication);
 
+    /**
+     * @param nodeId the node id
+     * @param toscaApplication the tosca application
+     * @return the outputs of the node's Standard interface operations which {@code get_operation_output} refers to
+     * anywhere in the topology, keyed by operation
+     */
+    Multimap<String, String> getOperationOutputs(String nodeId, A toscaApplication);
+
     /**
      * @param nodeId the node id
      * @param toscaApplication the tosca application
@@ -113,6 +124,20 @@ public interface ToscaFacade<A extends ToscaApplication> {
      */
     A parsePlan(String plan, Uploader uploader, BrooklynClassLoadingContext context);
 
+    /**
+     * @param plan the Tosca plan to parse
+     * @param uploader the Uploader object to use
+     * @param context
+     * @return the archive the plan was indexed as, from which applications can be created
+     */
+    Csar parseArchive(String plan, Uploader uploader, BrooklynClassLoadingContext context);
+
+    /**
+     * @param archive an indexed archive
+     * @return a new ToscaApplication for the archive's topology, sharing no state with any other
+     */
+    A newToscaApplication(Csar archive);
+
     /**
      *
      * @param path the path to a CSAR archive
@@ -132,6 +157,13 @@ public interface ToscaFacade<A extends ToscaApplication> {
      */
     Object resolveProperty(String nodeId, A toscaApplication, String key);
 
+    /**
+     * @param toscaApplication the tosca application
+     * @return the values of the topology's inputs known when it is parsed (e.g. declared defaults), keyed by input name;
+     * {@code get_input} resolves against config of the same name, so these can be overridden when deploying
+     */
+    Map<String, Object> getInputDefaults(A toscaApplication);
+
     /**
      * @param expandedFolder the name of the expanded CSAR folder
      * @return the script to be run as part of the relationship is present, Optional.absent() otherwise
@@ -35,6 +35,7 @@ public class ToscaParser {
     private static final Logger log = LoggerFactory.getLogger(ToscaParser.class);
 
     private Uploader uploader;
+    private LinkedResourceCache linkedResources;
 
     private static class PlanTypeChecker {
 
@@ -45,11 +46,9 @@ public class ToscaParser {
 
         // will set either error or obj, isTosca=true, or csarLink!=null (but not both),
         // or both null meaning it's YAML but not TOSCA
-        public PlanTypeChecker(String plan, BrooklynClassLoadingContext context) {
-            try {
-                obj = Yamls.parseAll(plan).iterator().next();
-            } catch (Exception e) {
-                Exceptions.propagateIfFatal(e);
+        public PlanTypeChecker(String plan, ToscaPlanSniffer.Result sniffed, BrooklynClassLoadingContext context, LinkedResourceCache linkedResources) {
+            if (!sniffed.isYaml()) {
+                Exception e = sniffed.getError();
                 if (isToscaScore(plan)>0) {
                     error = new UserFacingException("Plan looks like it's meant to be TOSCA but it is not valid YAML", e);
                     log.debug("Invalid TOSCA YAML: "+error, error);
@@ -59,7 +58,7 @@ public class ToscaParser {
                 }
                 return;
             }
-            if (!(obj instanceof Map)) {
+            if (!sniffed.isMap()) {
                 // don't support just a URL pointing to CSAR (we used to) -- it needs to be a map with key csar_link
                 error = new UserFacingException("Plan does not look like TOSCA: parses as YAML but not as a map");
 //                log.trace("Not a map");
@@ -73,21 +72,23 @@ public class ToscaParser {
                 return;
             }
 
-            if (isToscaScore((Map<?,?>)obj)>0) {
+            if (sniffed.getToscaScore()>0) {
+                // the rest of the plan is checked by A4C when it is uploaded
                 isTosca = true;
                 return;
             }
 
-            if (((Map<?,?>)obj).size()==1) {
-                csarLink = (String) ((Map<?,?>)obj).get("csar_link");
+            if (sniffed.isLink()) {
+                csarLink = sniffed.get(ToscaPlanSniffer.CSAR_LINK);
                 if (csarLink!=null) {
                     return;
                 }
                 
-                String toscaLink = (String) ((Map<?,?>)obj).get("tosca_link");
+                String toscaLink = sniffed.get(ToscaPlanSniffer.TOSCA_LINK);
                 if (toscaLink!=null) {
                     ResourceUtils resLoader = context!=null ? new ResourceUtils(context) : new ResourceUtils(this);
-                    obj = Yamls.parseAll(resLoader.getResourceAsString(toscaLink)).iterator().next();
+                    String linked = Streams.readFullyStringAndClose(LinkedResourceCache.getResourceFromUrl(linkedResources, resLoader, toscaLink));
+                    obj = Yamls.parseAll(linked).iterator().next();
                     isTosca = true;
                 }
             }
@@ -113,12 +114,20 @@ public class ToscaParser {
     }
 
     public ToscaParser(Uploader uploader) {
+        this(uploader, null);
+    }
+
+    /**
+     * @param linkedResources caches the resources of {@code csar_link} and {@code tosca_link}, or null to load them each time
+     */
+    public ToscaParser(Uploader uploader, LinkedResourceCache linkedResources) {
         this.uploader = uploader;
+        this.linkedResources = linkedResources;
     }
 
     public ParsingResult<Csar> parse(String plan, BrooklynClassLoadingContext context) {
         ParsingResult<Csar> tp;
-        PlanTypeChecker type = new PlanTypeChecker(plan, context);
+        PlanTypeChecker type = new PlanTypeChecker(plan, ToscaPlanSniffer.classify(plan), context, linkedResources);
         
         if (type.error!=null) {
             throw Exceptions.propagate(type.error);
@@ -137,7 +146,7 @@ public class ToscaParser {
                 }
             } else {
                 try {
-                    resourceFromUrl = resLoader.getResourceFromUrl(type.csarLink);
+                    resourceFromUrl = LinkedResourceCache.getResourceFromUrl(linkedResources, resLoader, type.csarLink);
                 } catch (Exception e) {
                     if (type.csarLink.startsWith("classpath:")) {
                         throw Exceptions.propagateAnnotated("Could not load csar_link "+type.csarLink+" relative to context "+context, e);
@@ -0,0 +1,261 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Classifies a plan from the top-level keys of its first YAML document, using the SnakeYAML event API so that
+ * no objects are built for the rest of the plan. Reading stops as soon as {@code tosca_definitions_version} is
+ * seen or the first document ends.
+ * <p>
+ * {@link #classify(String)} remembers the result for each plan instance, so the classification made when a
+ * transformer scores a plan is reused when the same plan is then parsed.
+ */
+public class ToscaPlanSniffer {
+
+    public static final String TOSCA_DEFINITIONS_VERSION = "tosca_definitions_version";
+    public static final String CSAR_LINK = "csar_link";
+    public static final String TOSCA_LINK = "tosca_link";
+
+    // weak keys are compared by identity, and dropped once the plan is no longer referenced
+    private static final Cache<String, Result> CLASSIFIED = CacheBuilder.newBuilder()
+            .weakKeys()
+            .maximumSize(256)
+            .build();
+
+    public static class Result {
+        private final Exception error;
+        private final boolean map;
+        private final Map<String, String> keys;
+        private final boolean complete;
+
+        private Result(Exception error, boolean map, Map<String, String> keys, boolean complete) {
+            this.error = error;
+            this.map = map;
+            this.keys = Collections.unmodifiableMap(keys);
+            this.complete = complete;
+        }
+
+        /** @return whether the plan could be read as YAML, as far as it was read */
+        public boolean isYaml() {
+            return error == null;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+
+        /** @return whether the first document is a map */
+        public boolean isMap() {
+            return map;
+        }
+
+        /**
+         * @return the top-level keys read, with their values where those are scalars, in order; not all keys if
+         * reading stopped early
+         */
+        public Map<String, String> getKeys() {
+            return keys;
+        }
+
+        /** @return whether every top-level key was read */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /** @return the scalar value of a top-level key, or null */
+        public String get(String key) {
+            return keys.get(key);
+        }
+
+        /** @return as {@link ToscaParser#isToscaScore(Map)} for the top-level keys, 0 if not a map */
+        public double getToscaScore() {
+            return map ? ToscaParser.isToscaScore(keys) : 0;
+        }
+
+        /** @return whether the plan is only a {@code csar_link} or {@code tosca_link} */
+        public boolean isLink() {
+            return map && complete && keys.size() == 1 && (keys.containsKey(CSAR_LINK) || keys.containsKey(TOSCA_LINK));
+        }
+
+        @Override
+        public String toString() {
+            return isYaml() ? (map ? "map" + keys.keySet() + (complete ? "" : "...") : "not-map") : "not-yaml";
+        }
+    }
+
+    private ToscaPlanSniffer() {}
+
+    /**
+     * @return the result of {@link #sniff(String)} for this instance of the plan, reading it only the first time
+     */
+    public static Result classify(String plan) {
+        Result result = CLASSIFIED.getIfPresent(plan);
+        if (result == null) {
+            result = sniff(plan);
+            CLASSIFIED.put(plan, result);
+        }
+        return result;
+    }
+
+    public static Result sniff(String plan) {
+        Map<String, String> keys = MutableMap.of();
+        try {
+            Iterator<Event> events = new Yaml().parse(new StringReader(plan)).iterator();
+            Event event = next(events, DocumentStartEvent.class);
+            if (event == null) {
+                throw new IllegalArgumentException("No YAML document");
+            }
+            event = events.next();
+            if (!(event instanceof MappingStartEvent)) {
+                // a scalar or a sequence; need not read further
+                return new Result(null, false, Collections.<String, String>emptyMap(), true);
+            }
+            while (true) {
+                event = events.next();
+                if (event instanceof CollectionEndEvent) {
+                    return new Result(null, true, keys, true);
+                }
+                String key = event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+                skipValue(event, events);
+
+                event = events.next();
+                String value = event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+                skipValue(event, events);
+
+                if (key != null) {
+                    keys.put(key, value);
+                    if (TOSCA_DEFINITIONS_VERSION.equals(key)) {
+                        return new Result(null, true, keys, false);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            return new Result(e, false, keys, false);
+        }
+    }
+
+    /**
+     * Reads the values of the given top-level keys of the first YAML document as strings, lists and maps, skipping
+     * everything else without building it. Tags are ignored, so no other objects are constructed.
+     *
+     * @return the values of those of the keys present, or none if the document is not a map
+     */
+    public static Map<String, Object> readKeys(Reader reader, Set<String> wanted) {
+        Map<String, Object> result = MutableMap.of();
+        Iterator<Event> events = new Yaml().parse(reader).iterator();
+        Event event = next(events, DocumentStartEvent.class);
+        if (event == null || !((event = events.next()) instanceof MappingStartEvent)) {
+            return result;
+        }
+        while (!((event = events.next()) instanceof CollectionEndEvent)) {
+            String key = event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+            skipValue(event, events);
+            event = events.next();
+            if (key != null && wanted.contains(key)) {
+                result.put(key, readValue(event, events));
+            } else {
+                skipValue(event, events);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the top-level keys of the first YAML document, in order, without building any of their values,
+     * or none if the document is not a map
+     */
+    public static Set<String> readKeyNames(Reader reader) {
+        Set<String> result = MutableSet.of();
+        Iterator<Event> events = new Yaml().parse(reader).iterator();
+        Event event = next(events, DocumentStartEvent.class);
+        if (event == null || !((event = events.next()) instanceof MappingStartEvent)) {
+            return result;
+        }
+        while (!((event = events.next()) instanceof CollectionEndEvent)) {
+            if (event instanceof ScalarEvent) {
+                result.add(((ScalarEvent) event).getValue());
+            }
+            skipValue(event, events);
+            event = events.next();
+            skipValue(event, events);
+        }
+        return result;
+    }
+
+    /** @return the string, list or map which the given event starts, or null for an alias */
+    private static Object readValue(Event event, Iterator<Event> events) {
+        if (event instanceof ScalarEvent) {
+            return ((ScalarEvent) event).getValue();
+        }
+        if (event instanceof SequenceStartEvent) {
+            List<Object> result = MutableList.of();
+            while (!((event = events.next()) instanceof CollectionEndEvent)) {
+                result.add(readValue(event, events));
+            }
+            return result;
+        }
+        if (event instanceof MappingStartEvent) {
+            Map<String, Object> result = MutableMap.of();
+            while (!((event = events.next()) instanceof CollectionEndEvent)) {
+                Object key = readValue(event, events);
+                result.put(String.valueOf(key), readValue(events.next(), events));
+            }
+            return result;
+        }
+        return null;
+    }
+
+    /** Reads to the end of a collection, if the given event starts one. */
+    private static void skipValue(Event event, Iterator<Event> events) {
+        if (!(event instanceof CollectionStartEvent)) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            Event next = events.next();
+            if (next instanceof CollectionStartEvent) {
+                depth++;
+            } else if (next instanceof CollectionEndEvent) {
+                depth--;
+            }
+        }
+    }
+
+    private static Event next(Iterator<Event> events, Class<? extends Event> type) {
+        while (events.hasNext()) {
+            Event event = events.next();
+            if (type.isInstance(event)) {
+                return event;
+            }
+            if (event instanceof DocumentEndEvent) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,176 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.mgmt.entitlement.EntitlementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.exceptions.UserFacingException;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.cloudsoft.tosca.a4c.platform.Alien4CloudToscaPlatform;
+
+/**
+ * Runs TOSCA transformations on a bounded pool of workers, so that many catalog items can be transformed
+ * concurrently without unbounded load on A4C.
+ * <p>
+ * At most {@link #PARALLELISM} tasks run at once, and at most {@link #QUEUE_SIZE} more wait; further callers
+ * block for up to {@link #ADMISSION_TIMEOUT} for room before being refused. Each task runs with its own security
+ * context granting A4C admin rights, which is cleared when the task ends, so the caller's context is untouched;
+ * the caller's Brooklyn entitlement context is carried over.
+ * A task which itself transforms a plan runs that transformation inline on the same worker, to avoid deadlock.
+ */
+@Component
+public class ToscaWorkerPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ToscaWorkerPool.class);
+
+    public static final ConfigKey<Integer> PARALLELISM = ConfigKeys.newIntegerConfigKey(
+            "tosca.a4c.transform.parallelism",
+            "Maximum number of TOSCA plans transformed at once; defaults to the number of processors");
+
+    public static final ConfigKey<Integer> QUEUE_SIZE = ConfigKeys.newIntegerConfigKey(
+            "tosca.a4c.transform.queue",
+            "Maximum number of TOSCA plans waiting to be transformed; defaults to twice the parallelism");
+
+    public static final ConfigKey<Duration> ADMISSION_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "tosca.a4c.transform.admission.timeout",
+            "How long to wait for room in the queue before refusing to transform a TOSCA plan",
+            Duration.ONE_MINUTE);
+
+    private static final ThreadLocal<Boolean> IN_WORKER = new ThreadLocal<>();
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore admission;
+    private final Duration admissionTimeout;
+
+    @Inject
+    public ToscaWorkerPool(ManagementContext mgmt) {
+        this(parallelism(mgmt), queueSize(mgmt), mgmt.getConfig().getConfig(ADMISSION_TIMEOUT));
+    }
+
+    public ToscaWorkerPool(int parallelism, int queueSize, Duration admissionTimeout) {
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-tosca-worker-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.admission = new Semaphore(parallelism + queueSize, true);
+        this.admissionTimeout = admissionTimeout;
+    }
+
+    private static int parallelism(ManagementContext mgmt) {
+        Integer configured = mgmt.getConfig().getConfig(PARALLELISM);
+        return configured != null && configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    private static int queueSize(ManagementContext mgmt) {
+        Integer configured = mgmt.getConfig().getConfig(QUEUE_SIZE);
+        return configured != null && configured >= 0 ? configured : 2 * parallelism(mgmt);
+    }
+
+    /**
+     * Runs the task on a worker with A4C admin rights, waiting for it to complete.
+     *
+     * @throws UserFacingException if there is no room for the task within the admission timeout
+     */
+    public <T> T call(Callable<T> task) {
+        if (Boolean.TRUE.equals(IN_WORKER.get())) {
+            return callInContext(task);
+        }
+        boolean admitted;
+        try {
+            admitted = admission.tryAcquire(admissionTimeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+        if (!admitted) {
+            throw new UserFacingException("Too many TOSCA plans are being transformed (" + getActiveCount() + " running, "
+                    + getQueuedCount() + " waiting); try again later");
+        }
+        // Brooklyn's entitlement context is also per thread, and applies to catalog lookups made by the task
+        final EntitlementContext entitlementContext = Entitlements.getEntitlementContext();
+        // the permit is held until the task ends, even if the caller stops waiting; whichever of the task and an
+        // interrupted caller claims it first releases it, so a task cancelled before it starts does not leak it
+        final AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return null;
+                }
+                IN_WORKER.set(true);
+                Entitlements.setEntitlementContext(entitlementContext);
+                try {
+                    return callInContext(task);
+                } finally {
+                    Entitlements.clearEntitlementContext();
+                    IN_WORKER.remove();
+                    admission.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            admission.release();
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw Exceptions.propagate(e.getCause());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            if (claimed.compareAndSet(false, true)) {
+                admission.release();
+            }
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static <T> T callInContext(Callable<T> task) {
+        SecurityContext previous = SecurityContextHolder.getContext();
+        SecurityContextHolder.setContext(SecurityContextHolder.createEmptyContext());
+        try {
+            Alien4CloudToscaPlatform.grantAdminAuth();
+            return task.call();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            SecurityContextHolder.setContext(previous);
+        }
+    }
+
+    /** @return the number of tasks running */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /** @return the number of tasks admitted but not yet running */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        LOG.debug("Shutting down TOSCA worker pool");
+        executor.shutdownNow();
+    }
+
+}
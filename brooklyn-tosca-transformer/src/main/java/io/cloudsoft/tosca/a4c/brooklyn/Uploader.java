@@ -1,17 +1,25 @@
 package io.cloudsoft.tosca.a4c.brooklyn;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
 import org.apache.brooklyn.util.core.file.ArchiveBuilder;
 import org.apache.brooklyn.util.exceptions.Exceptions;
 import org.apache.brooklyn.util.exceptions.UserFacingException;
-import org.apache.brooklyn.util.os.Os;
 import org.apache.brooklyn.util.stream.Streams;
 import org.apache.brooklyn.util.text.Identifiers;
 import org.apache.brooklyn.util.text.Strings;
@@ -20,40 +28,110 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+
 import alien4cloud.component.repository.exception.CSARVersionAlreadyExistsException;
 import alien4cloud.model.components.Csar;
 import alien4cloud.tosca.ArchiveUploadService;
+import alien4cloud.tosca.parser.ParsingContext;
 import alien4cloud.tosca.parser.ParsingErrorLevel;
 import alien4cloud.tosca.parser.ParsingException;
 import alien4cloud.tosca.parser.ParsingResult;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
 
 @Component
 public class Uploader {
     private static final Logger LOG = LoggerFactory.getLogger(Uploader.class);
 
+    /**
+     * Whether {@link #uploadSingleYaml(InputStream, String)} builds the archive in memory, rather than writing the
+     * YAML to a temporary directory and zipping that. Enabled by default.
+     */
+    public static final String FEATURE_IN_MEMORY_CSAR = BrooklynFeatureEnablement.FEATURE_PROPERTY_PREFIX + ".tosca.inMemoryCsar";
+
+    static {
+        BrooklynFeatureEnablement.setDefault(FEATURE_IN_MEMORY_CSAR, true);
+    }
+
+    /** Counts archives not uploaded as content with the same digest had been. */
+    public static final String ARCHIVES_UNCHANGED = "archives.unchanged";
+    /** Counts archives whose artifacts were replaced without re-indexing, as their definitions had not changed. */
+    public static final String ARCHIVES_ARTIFACTS_UPDATED = "archives.artifacts.updated";
+
     private ArchiveUploadService archiveUploadService;
-    private final File tmpRoot;
+    private final Collection<ArchiveIndexedListener> listeners;
+    private final ToscaMetrics metrics;
+    private final ArchiveDigestRegistry digests;
+    private final ArchiveRevisionIndex revisions;
+    private final ScratchStore scratch;
 
-    @Inject
+    /** Uploads every archive in full, without listeners or published metrics. */
     public Uploader(ArchiveUploadService archiveUploadService){
+        this(archiveUploadService, Collections.<ArchiveIndexedListener>emptyList(), new ToscaMetrics(), null, null, new ScratchStore());
+    }
+
+    /**
+     * @param digests the archives already uploaded, or null to upload every archive
+     * @param revisions the files of SNAPSHOT archives uploaded, or null to upload every revision in full
+     * @param scratch where archives are written before being uploaded
+     */
+    @Inject
+    public Uploader(ArchiveUploadService archiveUploadService, Collection<ArchiveIndexedListener> listeners, ToscaMetrics metrics,
+            @Nullable ArchiveDigestRegistry digests, @Nullable ArchiveRevisionIndex revisions, ScratchStore scratch){
         this.archiveUploadService = archiveUploadService;
-        tmpRoot = Os.newTempDir("brooklyn-a4c");
-        Os.deleteOnExitRecursively(tmpRoot);
+        this.listeners = listeners;
+        this.metrics = metrics;
+        this.digests = digests;
+        this.revisions = revisions;
+        this.scratch = scratch;
     }
 
-    public void upload(Path zip) throws ParsingException, CSARVersionAlreadyExistsException {
+    /**
+     * @return the result of uploading the archive, which may include warnings but not errors
+     */
+    public ParsingResult<Csar> upload(Path zip) throws ParsingException, CSARVersionAlreadyExistsException {
         LOG.debug("Uploading type: " + zip);
-        ParsingResult<Csar> types = archiveUploadService.upload(zip);
+        ParsingResult<Csar> types;
+        try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.UPLOAD)) {
+            types = archiveUploadService.upload(zip);
+        }
+        notifyIndexed(types);
         if (ArchiveUploadService.hasError(types, ParsingErrorLevel.ERROR)) {
             throw new UserFacingException("Errors parsing types:\n" + Strings.join(types.getContext().getParsingErrors(), "\n  "));
         }
+        return types;
     }
 
+    /**
+     * Uploads the archive, unless content with the same SHA-256 digest has already been uploaded and its archive
+     * is still indexed.
+     */
     public ParsingResult<Csar> uploadArchive(InputStream resourceFromUrl, String callerReferenceName) {
-        try {
-            File f = new File(tmpRoot, callerReferenceName + "_" + Identifiers.makeRandomId(8));
-            Streams.copy(resourceFromUrl, new FileOutputStream(f));
-            return uploadArchive(f, callerReferenceName);
+        try (ScratchStore.Lease lease = scratch.lease(callerReferenceName)) {
+            File f = lease.newFile(Strings.makeValidFilename(callerReferenceName) + ".zip");
+            HashingInputStream hashed = new HashingInputStream(Hashing.sha256(), resourceFromUrl);
+            try (FileOutputStream out = new FileOutputStream(f)) {
+                Streams.copy(hashed, out);
+            }
+            if (digests == null) {
+                return uploadArchive(f, callerReferenceName);
+            }
+
+            String digest = hashed.hash().toString();
+            Optional<ParsingResult<Csar>> existing = digests.get(digest);
+            if (existing.isPresent()) {
+                LOG.debug("Archive " + callerReferenceName + " has digest " + digest + " of indexed archive "
+                        + existing.get().getResult().getName() + ":" + existing.get().getResult().getVersion() + "; not uploading");
+                metrics.increment(ARCHIVES_UNCHANGED, 1);
+                return existing.get();
+            }
+            ParsingResult<Csar> result = uploadArchive(f, callerReferenceName);
+            digests.put(digest, result);
+            return result;
 
         } catch (Exception e) {
             throw Exceptions.propagate(e);
@@ -63,7 +141,22 @@ public class Uploader {
     public ParsingResult<Csar> uploadArchive(File zipFile, String callerReferenceName) {
         try {
             String nameCleaned = Strings.makeValidFilename(callerReferenceName);
-            ParsingResult<Csar> result = archiveUploadService.upload(Paths.get(zipFile.toString()));
+            Path zip = Paths.get(zipFile.toString());
+            if (revisions != null) {
+                Optional<Csar> updated = revisions.updateArtifactsOnly(zip);
+                if (updated.isPresent()) {
+                    metrics.increment(ARCHIVES_ARTIFACTS_UPDATED, 1);
+                    ParsingResult<Csar> result = new ParsingResult<>(updated.get(), new ParsingContext(nameCleaned));
+                    notifyIndexed(result);
+                    revisions.record(zip, updated.get());
+                    return result;
+                }
+            }
+            ParsingResult<Csar> result;
+            try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.UPLOAD)) {
+                result = archiveUploadService.upload(zip);
+            }
+            notifyIndexed(result);
 
             if (ArchiveUploadService.hasError(result, null)) {
                 LOG.debug("A4C parse notes for " + nameCleaned + ":\n  " + Strings.join(result.getContext().getParsingErrors(), "\n  "));
@@ -73,6 +166,9 @@ public class Uploader {
                 throw new UserFacingException("Could not parse " + callerReferenceName + " as TOSCA:\n  "
                         + Strings.join(result.getContext().getParsingErrors(), "\n  "));
             }
+            if (revisions != null) {
+                revisions.record(zip, result.getResult());
+            }
 
             return result;
 
@@ -82,10 +178,12 @@ public class Uploader {
     }
 
     public ParsingResult<Csar> uploadSingleYaml(InputStream resourceFromUrl, String callerReferenceName) {
-        try {
+        if (BrooklynFeatureEnablement.isEnabled(FEATURE_IN_MEMORY_CSAR)) {
+            return uploadSingleYamlInMemory(resourceFromUrl, callerReferenceName);
+        }
+        try (ScratchStore.Lease lease = scratch.lease(callerReferenceName)) {
             String nameCleaned = Strings.makeValidFilename(callerReferenceName);
-            File tmpBase = new File(tmpRoot, nameCleaned + "_" + Identifiers.makeRandomId(6));
-            File tmpExpanded = new File(tmpBase, nameCleaned + "_" + Identifiers.makeRandomId(6));
+            File tmpExpanded = lease.newFile(nameCleaned + "_" + Identifiers.makeRandomId(6));
             File tmpTarget = new File(tmpExpanded.toString() + ".csar.zip");
             boolean created = tmpExpanded.mkdirs();
             if (!created) {
@@ -94,15 +192,51 @@ public class Uploader {
             FileUtils.copyInputStreamToFile(resourceFromUrl, new File(tmpExpanded, nameCleaned + ".yaml"));
             ArchiveBuilder.archive(tmpTarget.toString()).addDirContentsAt(tmpExpanded, "").create();
 
-            try {
-                return uploadArchive(tmpTarget, callerReferenceName);
-            } finally {
-                Os.deleteRecursively(tmpBase);
-            }
+            return uploadArchive(tmpTarget, callerReferenceName);
+
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
 
+    /**
+     * Zips the YAML in memory and writes the archive in one go, as A4C can only upload an archive from a file.
+     */
+    private ParsingResult<Csar> uploadSingleYamlInMemory(InputStream resourceFromUrl, String callerReferenceName) {
+        String nameCleaned = Strings.makeValidFilename(callerReferenceName);
+        try (ScratchStore.Lease lease = scratch.lease(callerReferenceName)) {
+            File tmpTarget = lease.newFile(nameCleaned + ".csar.zip");
+            Files.write(tmpTarget.toPath(), singleEntryArchive(nameCleaned + ".yaml", resourceFromUrl));
+            return uploadArchive(tmpTarget, callerReferenceName);
         } catch (Exception e) {
             throw Exceptions.propagate(e);
         }
     }
 
+    @VisibleForTesting
+    static byte[] singleEntryArchive(String entryName, InputStream contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry(entryName));
+            ByteStreams.copy(contents, zip);
+            zip.closeEntry();
+        } finally {
+            Streams.closeQuietly(contents);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void notifyIndexed(ParsingResult<Csar> result) {
+        // notify even if there were errors; A4C may have indexed some of the archive's types before failing
+        Csar archive = result != null ? result.getResult() : null;
+        for (ArchiveIndexedListener listener : listeners) {
+            try {
+                listener.onArchiveIndexed(archive);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.warn("Error notifying " + listener + " of indexed archive " + archive + " (continuing)", e);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,67 @@
+package io.cloudsoft.tosca.a4c.brooklyn.function;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * How the outputs of lifecycle operations, read with {@code get_operation_output}, are published.
+ * <p>
+ * An output is a variable exported by the operation's script. When the script exits it writes each output
+ * something refers to into a file in a directory on the host, one per entity; a sensor named as
+ * {@link #sensorName} then reads the file back, so the function can wait on that sensor like {@code get_attribute}.
+ */
+public class OperationOutputs {
+
+    public static final String SENSOR_PREFIX = "tosca.output.";
+
+    // outputs are environment variables of the script
+    private static final Pattern OUTPUT_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+
+    private OperationOutputs() {}
+
+    /**
+     * @return the name of the sensor an output is published as
+     */
+    public static String sensorName(String interfaceName, String operationName, String outputName) {
+        return SENSOR_PREFIX + interfaceKey(interfaceName) + "." + operationName + "." + outputName;
+    }
+
+    /**
+     * @return the key used for an interface, the same for "tosca.interfaces.node.lifecycle.Standard", "Standard" and "standard"
+     */
+    static String interfaceKey(String interfaceName) {
+        return interfaceName.substring(interfaceName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return whether the output can be published, i.e. it names a shell variable
+     */
+    public static boolean isPublishable(String outputName) {
+        return outputName != null && OUTPUT_NAME.matcher(outputName).matches();
+    }
+
+    /**
+     * @param directory where outputs are written on the host, which may refer to {@code $HOME}
+     * @return a line which, put at the start of the operation's script, writes the given outputs when it exits
+     */
+    public static String exitTrap(String directory, String operationName, Iterable<String> outputNames) {
+        StringBuilder commands = new StringBuilder("mkdir -p \"" + directory + "\"");
+        for (String output : outputNames) {
+            commands.append(" && printf \"%s\" \"${").append(output).append("}\" > \"")
+                    .append(file(directory, operationName, output)).append("\"");
+        }
+        return "trap '" + commands + "' EXIT";
+    }
+
+    /**
+     * @return a command printing the value of an output written by {@link #exitTrap}, failing if it has not been
+     */
+    public static String readCommand(String directory, String operationName, String outputName) {
+        return "cat \"" + file(directory, operationName, outputName) + "\"";
+    }
+
+    private static String file(String directory, String operationName, String outputName) {
+        return directory + "/" + operationName + "." + outputName;
+    }
+
+}
@@ -0,0 +1,43 @@
+package io.cloudsoft.tosca.a4c.brooklyn.function;
+
+import java.util.Map;
+
+import com.google.common.base.Optional;
+
+import alien4cloud.model.components.IndexedInheritableToscaElement;
+import alien4cloud.paas.IPaaSTemplate;
+import alien4cloud.paas.model.PaaSNodeTemplate;
+
+/**
+ * What a {@link ToscaExpression} is evaluated against: the template it belongs to, the nodes of the topology
+ * and the keywords (SELF, HOST, SOURCE, TARGET) in scope.
+ */
+public class ToscaEvaluationContext {
+
+    private final IPaaSTemplate<? extends IndexedInheritableToscaElement> template;
+    private final Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates;
+    private final Map<String, String> keywordMap;
+
+    public ToscaEvaluationContext(IPaaSTemplate<? extends IndexedInheritableToscaElement> template, Map<String, PaaSNodeTemplate> builtPaaSNodeTemplates, Map<String, String> keywordMap) {
+        this.template = template;
+        this.builtPaaSNodeTemplates = builtPaaSNodeTemplates;
+        this.keywordMap = keywordMap;
+    }
+
+    public IPaaSTemplate<? extends IndexedInheritableToscaElement> getTemplate() {
+        return template;
+    }
+
+    public Map<String, PaaSNodeTemplate> getBuiltPaaSNodeTemplates() {
+        return builtPaaSNodeTemplates;
+    }
+
+    /**
+     * @return the node id a keyword such as SELF refers to, or the name itself if it is not a keyword
+     */
+    public String resolveNodeName(String templateName) {
+        if (keywordMap == null) return templateName;
+        return Optional.fromNullable(keywordMap.get(templateName)).or(Optional.fromNullable(templateName)).orNull();
+    }
+
+}
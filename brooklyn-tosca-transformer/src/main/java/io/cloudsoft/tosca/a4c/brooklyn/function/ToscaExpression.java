@@ -0,0 +1,17 @@
+package io.cloudsoft.tosca.a4c.brooklyn.function;
+
+import com.google.common.base.Optional;
+
+/**
+ * A TOSCA value, possibly containing intrinsic functions, compiled by the {@link ToscaExpressionCompiler}
+ * into a form which can be evaluated repeatedly without being interpreted again.
+ */
+public interface ToscaExpression {
+
+    /**
+     * @return the value, which may be a Brooklyn DSL supplier if it can only be resolved at runtime,
+     *         or absent if it cannot be resolved
+     */
+    Optional<Object> evaluate(ToscaEvaluationContext context);
+
+}
@@ -0,0 +1,97 @@
+package io.cloudsoft.tosca.a4c.brooklyn.function;
+
+import java.util.List;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+
+import alien4cloud.model.components.ComplexPropertyValue;
+import alien4cloud.model.components.ConcatPropertyValue;
+import alien4cloud.model.components.FunctionPropertyValue;
+import alien4cloud.model.components.IValue;
+import alien4cloud.model.components.ListPropertyValue;
+import alien4cloud.model.components.ScalarPropertyValue;
+import alien4cloud.tosca.normative.ToscaFunctionConstants;
+
+/**
+ * Compiles TOSCA property, attribute and operation input values into {@link ToscaExpression} trees.
+ * <p>
+ * Compiled expressions are kept for as long as the value they were compiled from is reachable, keyed by identity,
+ * so each value of a topology (or of an indexed type shared by several topologies) is compiled once however
+ * often it is evaluated. Values are assumed not to change once parsed.
+ */
+public class ToscaExpressionCompiler {
+
+    private final LoadingCache<IValue, ToscaExpression> compiled = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<IValue, ToscaExpression>() {
+                @Override
+                public ToscaExpression load(IValue value) {
+                    return doCompile(value);
+                }
+            });
+
+    /**
+     * @return the compiled form of the given value
+     */
+    public ToscaExpression compile(IValue value) {
+        if (value == null) {
+            return new ToscaExpressions.Literal(null);
+        }
+        return compiled.getUnchecked(value);
+    }
+
+    private ToscaExpression doCompile(IValue value) {
+        if (value instanceof ScalarPropertyValue) {
+            return new ToscaExpressions.Literal(((ScalarPropertyValue) value).getValue());
+        }
+        if (value instanceof ComplexPropertyValue) {
+            return new ToscaExpressions.Literal(((ComplexPropertyValue) value).getValue());
+        }
+        if (value instanceof ListPropertyValue) {
+            return new ToscaExpressions.Literal(((ListPropertyValue) value).getValue());
+        }
+        if (value instanceof ConcatPropertyValue) {
+            List<ToscaExpression> parts = Lists.newArrayList();
+            List<IValue> parameters = ((ConcatPropertyValue) value).getParameters();
+            if (parameters != null) {
+                for (IValue parameter : parameters) {
+                    parts.add(compile(parameter));
+                }
+            }
+            return new ToscaExpressions.Concat(parts);
+        }
+        if (value instanceof FunctionPropertyValue) {
+            return compileFunction((FunctionPropertyValue) value);
+        }
+        return new ToscaExpressions.Unsupported(value, "Ignoring unsupported property value");
+    }
+
+    private ToscaExpression compileFunction(FunctionPropertyValue function) {
+        List<String> parameters = function.getParameters();
+        String name = function.getFunction();
+        if (name == null || parameters == null || parameters.isEmpty()) {
+            return new ToscaExpressions.Unsupported(function, "TOSCA DSL function " + name + " has no arguments");
+        }
+        switch (name) {
+            case ToscaFunctionConstants.GET_PROPERTY:
+                return new ToscaExpressions.GetProperty(function);
+            case ToscaFunctionConstants.GET_ATTRIBUTE:
+                return new ToscaExpressions.NodeSensor(function.getTemplateName(), function.getElementNameToFetch());
+            case ToscaFunctionConstants.GET_INPUT:
+                return new ToscaExpressions.GetInput(parameters.get(0));
+            case ToscaFunctionConstants.GET_OPERATION_OUTPUT:
+                // [node, interface, operation, output]; the node's entity publishes the output as a sensor
+                if (parameters.size() != 4 || !OperationOutputs.isPublishable(parameters.get(3))) {
+                    return new ToscaExpressions.Unsupported(function, "TOSCA DSL function " + name + " needs a node, interface, operation and output variable");
+                }
+                return new ToscaExpressions.NodeSensor(parameters.get(0), OperationOutputs.sensorName(parameters.get(1), parameters.get(2), parameters.get(3)));
+            default:
+                // also "get_artifact" in recent TOSCA spec
+                return new ToscaExpressions.Unsupported(function, "TOSCA DSL function " + name + " not supported");
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package io.cloudsoft.tosca.a4c.brooklyn.function;
+
+import java.util.List;
+
+import org.apache.brooklyn.camp.brooklyn.spi.dsl.methods.BrooklynDslCommon;
+import org.apache.brooklyn.util.text.Strings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+
+import alien4cloud.model.components.FunctionPropertyValue;
+import alien4cloud.paas.function.FunctionEvaluator;
+
+/**
+ * The node types of compiled {@link ToscaExpression} trees.
+ */
+public class ToscaExpressions {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ToscaExpressions.class);
+
+    private ToscaExpressions() {}
+
+    /** A value with no functions in it. */
+    static class Literal implements ToscaExpression {
+        private final Optional<Object> value;
+
+        Literal(Object value) {
+            this.value = Optional.fromNullable(value);
+        }
+
+        @Override
+        public Optional<Object> evaluate(ToscaEvaluationContext context) {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return "literal(" + value.orNull() + ")";
+        }
+    }
+
+    /** A value this evaluator cannot handle; logs each time it is evaluated, as the interpreter did. */
+    static class Unsupported implements ToscaExpression {
+        private final Object source;
+        private final String message;
+
+        Unsupported(Object source, String message) {
+            this.source = source;
+            this.message = message;
+        }
+
+        @Override
+        public Optional<Object> evaluate(ToscaEvaluationContext context) {
+            LOG.warn(message + ", for " + source + " in " + context.getTemplate());
+            return Optional.absent();
+        }
+
+        @Override
+        public String toString() {
+            return "unsupported(" + source + ")";
+        }
+    }
+
+    /** {@code get_property}, delegated to A4C as it requires walking the PaaS topology. */
+    static class GetProperty implements ToscaExpression {
+        private final FunctionPropertyValue function;
+
+        GetProperty(FunctionPropertyValue function) {
+            this.function = function;
+        }
+
+        @Override
+        public Optional<Object> evaluate(ToscaEvaluationContext context) {
+            return Optional.<Object>fromNullable(FunctionEvaluator.evaluateGetPropertyFunction(function, context.getTemplate(), context.getBuiltPaaSNodeTemplates()));
+        }
+
+        @Override
+        public String toString() {
+            return "get_property(" + function.getParameters() + ")";
+        }
+    }
+
+    /** A sensor on the entity for a node, resolved at runtime, for {@code get_attribute} and {@code get_operation_output}. */
+    static class NodeSensor implements ToscaExpression {
+        private final String templateName;
+        private final String sensorName;
+
+        NodeSensor(String templateName, String sensorName) {
+            this.templateName = templateName;
+            this.sensorName = sensorName;
+        }
+
+        @Override
+        public Optional<Object> evaluate(ToscaEvaluationContext context) {
+            return Optional.<Object>fromNullable(BrooklynDslCommon.entity(context.resolveNodeName(templateName)).attributeWhenReady(sensorName));
+        }
+
+        @Override
+        public String toString() {
+            return "sensor(" + templateName + ", " + sensorName + ")";
+        }
+    }
+
+    /**
+     * {@code get_input}, resolved at runtime from config of the same name, so that the same topology can be
+     * deployed with different inputs. Defaults declared in the topology are set on the application.
+     */
+    static class GetInput implements ToscaExpression {
+        private final String inputName;
+
+        GetInput(String inputName) {
+            this.inputName = inputName;
+        }
+
+        @Override
+        public Optional<Object> evaluate(ToscaEvaluationContext context) {
+            return Optional.<Object>of(BrooklynDslCommon.config(inputName));
+        }
+
+        @Override
+        public String toString() {
+            return "get_input(" + inputName + ")";
+        }
+    }
+
+    /** {@code concat}, with any argument which cannot be resolved treated as empty. */
+    static class Concat implements ToscaExpression {
+        private final List<ToscaExpression> parts;
+        private final String format;
+
+        Concat(List<ToscaExpression> parts) {
+            this.parts = ImmutableList.copyOf(parts);
+            this.format = Strings.repeat("%s", parts.size());
+        }
+
+        @Override
+        public Optional<Object> evaluate(ToscaEvaluationContext context) {
+            Object[] vals = new Object[parts.size()];
+            for (int i = 0; i < vals.length; i++) {
+                vals[i] = parts.get(i).evaluate(context).or("");
+            }
+            return Optional.<Object>of(BrooklynDslCommon.formatString(format, vals));
+        }
+
+        @Override
+        public String toString() {
+            return "concat" + parts;
+        }
+    }
+
+}
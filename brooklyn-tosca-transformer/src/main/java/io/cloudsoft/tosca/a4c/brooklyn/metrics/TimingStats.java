@@ -0,0 +1,73 @@
+package io.cloudsoft.tosca.a4c.brooklyn.metrics;
+
+import java.beans.ConstructorProperties;
+import java.io.Serializable;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * A snapshot of a {@link ToscaMetrics} timing histogram. Percentiles are estimated from the histogram's
+ * buckets, so are accurate to the bucket boundary above the true value.
+ */
+public class TimingStats implements Serializable {
+
+    private static final long serialVersionUID = 4727532087468452130L;
+
+    private final long count;
+    private final double totalMillis;
+    private final double maxMillis;
+    private final double p50Millis;
+    private final double p90Millis;
+    private final double p99Millis;
+
+    @ConstructorProperties({"count", "totalMillis", "maxMillis", "p50Millis", "p90Millis", "p99Millis"})
+    public TimingStats(long count, double totalMillis, double maxMillis, double p50Millis, double p90Millis, double p99Millis) {
+        this.count = count;
+        this.totalMillis = totalMillis;
+        this.maxMillis = maxMillis;
+        this.p50Millis = p50Millis;
+        this.p90Millis = p90Millis;
+        this.p99Millis = p99Millis;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getTotalMillis() {
+        return totalMillis;
+    }
+
+    public double getMeanMillis() {
+        return count == 0 ? 0 : totalMillis / count;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP90Millis() {
+        return p90Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("count", count)
+                .add("meanMillis", getMeanMillis())
+                .add("p50Millis", p50Millis)
+                .add("p90Millis", p90Millis)
+                .add("p99Millis", p99Millis)
+                .add("maxMillis", maxMillis)
+                .toString();
+    }
+
+}
@@ -0,0 +1,239 @@
+package io.cloudsoft.tosca.a4c.brooklyn.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+import io.cloudsoft.tosca.a4c.brooklyn.spec.EntitySpecModifier;
+
+/**
+ * Timings of the phases of turning a TOSCA plan into an application spec, and of each {@link EntitySpecModifier},
+ * with counts of the nodes, relationships and policies processed.
+ * <p>
+ * Registered as an MXBean under {@code io.cloudsoft.tosca:type=ToscaMetrics}, and published as sensors on any
+ * entity with a {@link ToscaMetricsSensors} initializer.
+ */
+@Component
+public class ToscaMetrics implements ToscaMetricsMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ToscaMetrics.class);
+
+    public static final String PARSE = "parse";
+    public static final String UPLOAD = "upload";
+    public static final String TOPOLOGY = "topology";
+    public static final String SPECS = "specs";
+    public static final String POLICIES = "policies";
+    public static final String MODIFIER_PREFIX = "modifier.";
+
+    public static final String NODES = "nodes";
+    public static final String RELATIONSHIPS = "relationships";
+    public static final String POLICIES_ADDED = "policies.added";
+
+    /** Upper bounds of the histogram buckets, in milliseconds; the last bucket is unbounded. */
+    private static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000, 60000};
+
+    private final ConcurrentMap<String, Histogram> timings = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, AtomicLong> counters = Maps.newConcurrentMap();
+    private final ObjectName objectName;
+    private boolean registered;
+
+    /** Creates metrics which are not registered with JMX. */
+    public ToscaMetrics() {
+        this.objectName = null;
+    }
+
+    @Inject
+    public ToscaMetrics(ManagementContext mgmt) {
+        try {
+            this.objectName = new ObjectName("io.cloudsoft.tosca:type=ToscaMetrics,managementNode=" + ObjectName.quote(mgmt.getManagementNodeId()));
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @PostConstruct
+    public synchronized void registerMBean() {
+        if (objectName == null || registered) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            registered = true;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.warn("Could not register TOSCA metrics as " + objectName + " (continuing): " + e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void unregisterMBean() {
+        if (!registered) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(objectName);
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            LOG.debug("Could not unregister TOSCA metrics " + objectName + ": " + e);
+        } finally {
+            registered = false;
+        }
+    }
+
+    /**
+     * Starts timing the named phase, to be recorded when the returned timer is closed:
+     * <pre>
+     * try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.PARSE)) {
+     *     ...
+     * }
+     * </pre>
+     */
+    public Timer time(String name) {
+        return new Timer(histogram(name));
+    }
+
+    /**
+     * @return a timer for the given modifier, named {@link #MODIFIER_PREFIX} and its simple class name
+     */
+    public Timer time(EntitySpecModifier modifier) {
+        return time(MODIFIER_PREFIX + modifier.getClass().getSimpleName());
+    }
+
+    public void recordTime(String name, long duration, TimeUnit unit) {
+        histogram(name).record(unit.toNanos(duration));
+    }
+
+    public void increment(String counter, long delta) {
+        AtomicLong count = counters.get(counter);
+        if (count == null) {
+            count = counters.computeIfAbsent(counter, k -> new AtomicLong());
+        }
+        count.addAndGet(delta);
+    }
+
+    public long getCount(String counter) {
+        AtomicLong count = counters.get(counter);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the timings of the named phase, or stats with a count of zero if it has not been recorded
+     */
+    public TimingStats getTiming(String name) {
+        Histogram histogram = timings.get(name);
+        return histogram == null ? new Histogram().snapshot() : histogram.snapshot();
+    }
+
+    @Override
+    public Map<String, TimingStats> getTimings() {
+        ImmutableSortedMap.Builder<String, TimingStats> result = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, Histogram> timing : timings.entrySet()) {
+            result.put(timing.getKey(), timing.getValue().snapshot());
+        }
+        return result.build();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        ImmutableSortedMap.Builder<String, Long> result = ImmutableSortedMap.naturalOrder();
+        for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+            result.put(counter.getKey(), counter.getValue().get());
+        }
+        return result.build();
+    }
+
+    @Override
+    public void reset() {
+        timings.clear();
+        counters.clear();
+    }
+
+    private Histogram histogram(String name) {
+        Histogram histogram = timings.get(name);
+        if (histogram == null) {
+            histogram = timings.computeIfAbsent(name, k -> new Histogram());
+        }
+        return histogram;
+    }
+
+    /** Records the time since it was created into its histogram when closed. */
+    public static class Timer implements AutoCloseable {
+        private final Histogram histogram;
+        private final long start = System.nanoTime();
+
+        private Timer(Histogram histogram) {
+            this.histogram = histogram;
+        }
+
+        @Override
+        public void close() {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /** A lock-free histogram of durations over {@link #BUCKET_BOUNDS_MILLIS}. */
+    private static class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_BOUNDS_MILLIS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && millis >= BUCKET_BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        TimingStats snapshot() {
+            long[] counts = new long[buckets.length()];
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            double max = toMillis(maxNanos.get());
+            return new TimingStats(total, toMillis(totalNanos.sum()), max,
+                    percentile(counts, total, 0.5, max), percentile(counts, total, 0.9, max), percentile(counts, total, 0.99, max));
+        }
+
+        private static double percentile(long[] counts, long total, double quantile, double max) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(quantile * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i < BUCKET_BOUNDS_MILLIS.length ? Math.min(BUCKET_BOUNDS_MILLIS[i], max) : max;
+                }
+            }
+            return max;
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1e6;
+        }
+    }
+
+}
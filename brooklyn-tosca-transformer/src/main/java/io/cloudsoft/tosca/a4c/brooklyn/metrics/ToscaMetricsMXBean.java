@@ -0,0 +1,23 @@
+package io.cloudsoft.tosca.a4c.brooklyn.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ToscaMetrics}.
+ */
+public interface ToscaMetricsMXBean {
+
+    /**
+     * @return the timings of each phase and spec modifier recorded so far, keyed by name
+     */
+    Map<String, TimingStats> getTimings();
+
+    /**
+     * @return the number of nodes, relationships and policies processed so far, keyed by name
+     */
+    Map<String, Long> getCounters();
+
+    /** Discards all timings and counts recorded so far. */
+    void reset();
+
+}
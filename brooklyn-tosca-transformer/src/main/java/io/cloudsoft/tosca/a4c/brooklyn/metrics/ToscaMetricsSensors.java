@@ -0,0 +1,147 @@
+package io.cloudsoft.tosca.a4c.brooklyn.metrics;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.api.entity.EntityInitializer;
+import org.apache.brooklyn.api.entity.EntityLocal;
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.api.sensor.AttributeSensor;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.feed.function.FunctionFeed;
+import org.apache.brooklyn.feed.function.FunctionPollConfig;
+import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.reflect.TypeToken;
+
+import io.cloudsoft.tosca.a4c.brooklyn.ScratchStore;
+import io.cloudsoft.tosca.a4c.brooklyn.plan.PlatformWarmUp;
+import io.cloudsoft.tosca.a4c.brooklyn.plan.ToscaTypePlanTransformer;
+import io.cloudsoft.tosca.a4c.platform.Alien4CloudToscaPlatform;
+
+/**
+ * Publishes the server's {@link ToscaMetrics}, the readiness of its TOSCA platform and the use of its
+ * {@link ScratchStore}, as sensors on the entity it is applied to, for example a monitoring application:
+ * <pre>
+ * brooklyn.initializers:
+ * - type: io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetricsSensors
+ *   brooklyn.config:
+ *     period: 30s
+ * </pre>
+ * Brooklyn has no sensors of its own at the level of the server, so this is how the metrics are made
+ * available to enrichers and policies.
+ */
+public class ToscaMetricsSensors implements EntityInitializer {
+
+    public static final ConfigKey<Duration> PERIOD = ConfigKeys.newConfigKey(Duration.class, "period",
+            "How often to publish the metrics", Duration.THIRTY_SECONDS);
+
+    @SuppressWarnings("serial")
+    public static final AttributeSensor<Map<String, TimingStats>> TIMINGS = Sensors.newSensor(new TypeToken<Map<String, TimingStats>>() {},
+            "tosca.metrics.timings", "Timings of each phase of creating specs from TOSCA plans, and of each spec modifier");
+
+    @SuppressWarnings("serial")
+    public static final AttributeSensor<Map<String, Long>> COUNTERS = Sensors.newSensor(new TypeToken<Map<String, Long>>() {},
+            "tosca.metrics.counters", "Number of TOSCA nodes, relationships and policies processed");
+
+    public static final AttributeSensor<Boolean> PLATFORM_READY = Sensors.newBooleanSensor(
+            "tosca.platform.ready", "Whether the Alien4Cloud platform has initialised and TOSCA plans can be used");
+
+    public static final AttributeSensor<String> PLATFORM_STATUS = Sensors.newStringSensor(
+            "tosca.platform.status", "Progress of initialising the Alien4Cloud platform");
+
+    public static final AttributeSensor<Long> SCRATCH_BYTES = Sensors.newLongSensor(
+            "tosca.scratch.bytes", "Bytes of archives being built and uploaded in the scratch directory");
+
+    public static final AttributeSensor<Long> SCRATCH_FILES = Sensors.newLongSensor(
+            "tosca.scratch.files", "Number of files of archives being built and uploaded in the scratch directory");
+
+    private final Duration period;
+
+    public ToscaMetricsSensors() {
+        this(ConfigBag.newInstance());
+    }
+
+    public ToscaMetricsSensors(Map<String, ?> params) {
+        this(ConfigBag.newInstance(params));
+    }
+
+    public ToscaMetricsSensors(ConfigBag params) {
+        this.period = params.get(PERIOD);
+    }
+
+    @Override
+    public void apply(final EntityLocal entity) {
+        final ManagementContext mgmt = entity.getManagementContext();
+        entity.feeds().add(FunctionFeed.builder()
+                .entity(entity)
+                .period(period)
+                .poll(new FunctionPollConfig<Map<String, TimingStats>, Map<String, TimingStats>>(TIMINGS)
+                        .callable(new Callable<Map<String, TimingStats>>() {
+                            @Override
+                            public Map<String, TimingStats> call() {
+                                ToscaMetrics metrics = getMetrics(mgmt);
+                                return metrics != null ? metrics.getTimings() : ImmutableMap.<String, TimingStats>of();
+                            }
+                        }))
+                .poll(new FunctionPollConfig<Map<String, Long>, Map<String, Long>>(COUNTERS)
+                        .callable(new Callable<Map<String, Long>>() {
+                            @Override
+                            public Map<String, Long> call() {
+                                ToscaMetrics metrics = getMetrics(mgmt);
+                                return metrics != null ? metrics.getCounters() : ImmutableMap.<String, Long>of();
+                            }
+                        }))
+                .poll(new FunctionPollConfig<Boolean, Boolean>(PLATFORM_READY)
+                        .callable(new Callable<Boolean>() {
+                            @Override
+                            public Boolean call() {
+                                PlatformWarmUp warmUp = mgmt.getConfig().getConfig(ToscaTypePlanTransformer.TOSCA_ALIEN_WARM_UP);
+                                return warmUp != null ? warmUp.isReady() : getBean(mgmt, ToscaMetrics.class) != null;
+                            }
+                        }))
+                .poll(new FunctionPollConfig<String, String>(PLATFORM_STATUS)
+                        .callable(new Callable<String>() {
+                            @Override
+                            public String call() {
+                                PlatformWarmUp warmUp = mgmt.getConfig().getConfig(ToscaTypePlanTransformer.TOSCA_ALIEN_WARM_UP);
+                                return warmUp != null ? warmUp.getStatus() : "not started";
+                            }
+                        }))
+                .poll(new FunctionPollConfig<Long, Long>(SCRATCH_BYTES)
+                        .callable(new Callable<Long>() {
+                            @Override
+                            public Long call() {
+                                ScratchStore scratch = getBean(mgmt, ScratchStore.class);
+                                return scratch != null ? scratch.getBytesInUse() : 0L;
+                            }
+                        }))
+                .poll(new FunctionPollConfig<Long, Long>(SCRATCH_FILES)
+                        .callable(new Callable<Long>() {
+                            @Override
+                            public Long call() {
+                                ScratchStore scratch = getBean(mgmt, ScratchStore.class);
+                                return scratch != null ? scratch.getFilesInUse() : 0L;
+                            }
+                        }))
+                .build());
+    }
+
+    /**
+     * @return the metrics of the TOSCA platform initialised for the given management context, or null if it has not been
+     */
+    public static ToscaMetrics getMetrics(ManagementContext mgmt) {
+        return getBean(mgmt, ToscaMetrics.class);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static <T> T getBean(ManagementContext mgmt, Class<T> type) {
+        Alien4CloudToscaPlatform platform = mgmt.getConfig().getConfig(ToscaTypePlanTransformer.TOSCA_ALIEN_PLATFORM);
+        return platform != null ? platform.getBean(type) : null;
+    }
+
+}
@@ -0,0 +1,136 @@
+package io.cloudsoft.tosca.a4c.brooklyn.plan;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.brooklyn.core.typereg.UnsupportedTypePlanException;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The initialisation of the Alien4Cloud platform, which may run in the background so that Brooklyn does not wait
+ * for the Spring context, Elasticsearch and the default types before it finishes starting.
+ * <p>
+ * Its state is published by {@link io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetricsSensors}.
+ */
+public class PlatformWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlatformWarmUp.class);
+
+    public enum State { INITIALISING, READY, FAILED }
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime;
+
+    /**
+     * Runs the initialisation on a new background thread.
+     */
+    public static PlatformWarmUp start(final Runnable initialisation, String threadName) {
+        final PlatformWarmUp result = new PlatformWarmUp();
+        Thread thread = new Thread(() -> result.run(initialisation), threadName);
+        thread.setDaemon(true);
+        thread.start();
+        return result;
+    }
+
+    /**
+     * Runs the initialisation on the calling thread, rethrowing any failure.
+     */
+    public static PlatformWarmUp run(Runnable initialisation) {
+        PlatformWarmUp result = new PlatformWarmUp();
+        result.run(initialisation);
+        if (result.getError() != null) {
+            throw Exceptions.propagate(result.getError());
+        }
+        return result;
+    }
+
+    private void run(Runnable initialisation) {
+        try {
+            initialisation.run();
+            endTime = System.currentTimeMillis();
+            future.complete(null);
+        } catch (Throwable e) {
+            endTime = System.currentTimeMillis();
+            LOG.debug("Alien4Cloud platform failed to initialise after " + getElapsed(), e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Waits for the platform to be initialised.
+     *
+     * @throws UnsupportedTypePlanException if it failed, or is still initialising after the timeout
+     */
+    public void await(Duration timeout) {
+        try {
+            future.get(timeout.toMilliseconds(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new UnsupportedTypePlanException("Alien4Cloud platform is still initialising after " + getElapsed()
+                    + "; try again later");
+        } catch (ExecutionException e) {
+            throw new UnsupportedTypePlanException("Alien4Cloud platform failed to initialise: " + Exceptions.collapseText(e.getCause()), e.getCause());
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** @return a future which completes when the platform is initialised, or fails if it could not be */
+    public Future<Void> getFuture() {
+        return future;
+    }
+
+    public State getState() {
+        if (!future.isDone()) {
+            return State.INITIALISING;
+        }
+        return future.isCompletedExceptionally() ? State.FAILED : State.READY;
+    }
+
+    public boolean isReady() {
+        return getState() == State.READY;
+    }
+
+    /** @return why initialisation failed, or null if it has not */
+    public Throwable getError() {
+        if (!future.isCompletedExceptionally()) {
+            return null;
+        }
+        try {
+            future.join();
+            return null;
+        } catch (Exception e) {
+            return e.getCause() != null ? e.getCause() : e;
+        }
+    }
+
+    /** @return how long initialisation took, or has taken so far */
+    public Duration getElapsed() {
+        long end = endTime;
+        return Duration.millis((end > 0 ? end : System.currentTimeMillis()) - startTime);
+    }
+
+    /** @return a description of the state, for example {@code initialising for 12s} */
+    public String getStatus() {
+        switch (getState()) {
+        case INITIALISING:
+            return "initialising for " + getElapsed();
+        case READY:
+            return "ready after " + getElapsed();
+        default:
+            return "failed after " + getElapsed() + ": " + Exceptions.collapseText(getError());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PlatformWarmUp[" + getStatus() + "]";
+    }
+
+}
@@ -19,13 +19,13 @@ import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
 import org.apache.brooklyn.core.typereg.AbstractFormatSpecificTypeImplementationPlan;
 import org.apache.brooklyn.core.typereg.AbstractTypePlanTransformer;
 import org.apache.brooklyn.core.typereg.BasicTypeImplementationPlan;
-import org.apache.brooklyn.core.typereg.RegisteredTypes;
 import org.apache.brooklyn.core.typereg.UnsupportedTypePlanException;
 import org.apache.brooklyn.entity.stock.BasicApplication;
 import org.apache.brooklyn.util.exceptions.Exceptions;
-import org.apache.brooklyn.util.guava.Maybe;
+import org.apache.brooklyn.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 
 import com.google.common.annotations.VisibleForTesting;
 
@@ -33,6 +33,9 @@ import io.cloudsoft.tosca.a4c.brooklyn.AlienPlatformFactory;
 import io.cloudsoft.tosca.a4c.brooklyn.ApplicationSpecsBuilder;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaParser;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaPlanSniffer;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaWorkerPool;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
 import io.cloudsoft.tosca.a4c.platform.Alien4CloudToscaPlatform;
 import io.cloudsoft.tosca.a4c.platform.ToscaPlatform;
 
@@ -44,6 +47,21 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
             .name("tosca.a4c.platform")
             .build();
 
+    public static final ConfigKey<Boolean> INIT_ASYNC = ConfigKeys.newBooleanConfigKey(
+            "tosca.a4c.init.async",
+            "Whether to initialise the Alien4Cloud platform in the background, so Brooklyn starts without waiting for it",
+            false);
+
+    public static final ConfigKey<Duration> INIT_TIMEOUT = ConfigKeys.newConfigKey(Duration.class,
+            "tosca.a4c.init.timeout",
+            "How long a TOSCA plan waits for the Alien4Cloud platform to finish initialising in the background",
+            Duration.FIVE_MINUTES);
+
+    /** The initialisation of the platform, set once it has started. */
+    public static final ConfigKey<PlatformWarmUp> TOSCA_ALIEN_WARM_UP = ConfigKeys.builder(PlatformWarmUp.class)
+            .name("tosca.a4c.platform.warmUp")
+            .build();
+
     @VisibleForTesting
     public static final String FEATURE_TOSCA_ENABLED = BrooklynFeatureEnablement.FEATURE_PROPERTY_PREFIX + ".tosca";
     private static final AtomicBoolean hasLoggedDisabled = new AtomicBoolean(false);
@@ -53,10 +71,14 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
     private static final ConfigKey<String> TOSCA_DEPLOYMENT_ID = ConfigKeys.newStringConfigKey("tosca.deployment.id");
 
     private ManagementContext mgmt;
-    private ToscaPlatform platform;
+    // set by the warm-up thread if initialising in the background
+    private volatile ToscaPlatform platform;
     private AlienPlatformFactory platformFactory;
+    // set once by setManagementContext, read by callers on other threads
+    private volatile PlatformWarmUp warmUp;
 
     private final AtomicBoolean alienInitialised = new AtomicBoolean();
+    private final ToscaMetrics unpublishedMetrics = new ToscaMetrics();
 
     public static final String FORMAT = "brooklyn-tosca";
     // TODO support these -- more specific parsers (whereas this one autodetects between the first two and doesn't support the last one)
@@ -80,7 +102,15 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
             throw new IllegalStateException("Cannot switch mgmt context");
         } else if (this.mgmt == null) {
             this.mgmt = managementContext;
-            initialiseAlien();
+            if (Boolean.TRUE.equals(mgmt.getConfig().getConfig(INIT_ASYNC))) {
+                log.info("Initializing Alien4Cloud TOSCA for "+this+" in the background");
+                warmUp = PlatformWarmUp.start(this::initialiseAlien, "brooklyn-tosca-init");
+            } else {
+                warmUp = PlatformWarmUp.run(this::initialiseAlien);
+            }
+            if (mgmt instanceof LocalManagementContext) {
+                ((LocalManagementContext) mgmt).getBrooklynProperties().put(TOSCA_ALIEN_WARM_UP, warmUp);
+            }
         }
     }
 
@@ -104,6 +134,7 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
 
 
     public EntitySpec<? extends Application> createApplicationSpecFromTopologyId(String id) {
+        assertAvailable();
         return createApplicationSpec(platform.getToscaApplication(id));
     }
 
@@ -117,9 +148,16 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
 
         @SuppressWarnings("deprecation")
         ApplicationSpecsBuilder specsBuilder = platform.getBean(ApplicationSpecsBuilder.class);
-        Map<String, EntitySpec<?>> specs = specsBuilder.getSpecs(toscaApplication);
+        ToscaMetrics metrics = getMetrics();
+        Map<String, EntitySpec<?>> specs;
+        try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.SPECS)) {
+            specs = specsBuilder.getSpecs(toscaApplication);
+        }
         rootSpec.children(specs.values());
-        specsBuilder.addToscaPolicies(rootSpec, toscaApplication, specs);
+        try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.POLICIES)) {
+            specsBuilder.addToscaPolicies(rootSpec, toscaApplication, specs);
+        }
+        specsBuilder.addToscaInputs(rootSpec, toscaApplication);
 
         log.debug("Created entity from TOSCA spec: " + rootSpec);
         return rootSpec;
@@ -130,12 +168,13 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
         String planYaml = String.valueOf(type.getPlan().getPlanData());
         assertAvailable();
         try {
-            Alien4CloudToscaPlatform.grantAdminAuth();
-            @SuppressWarnings("deprecation")
-            ToscaApplication tApp = platform.parse(planYaml, CatalogUtils.newClassLoadingContext(mgmt, type, context!=null && context.getLoader()!=null ? context.getLoader() :
-                // deprecated pojo load used only for csar link integration test
-                JavaBrooklynClassLoadingContext.create(getClass().getClassLoader())));
-            return createApplicationSpec(tApp);
+            ToscaWorkerPool workers = getWorkers();
+            if (workers == null) {
+                Alien4CloudToscaPlatform.grantAdminAuth();
+                return createSpecFromPlan(planYaml, type, context);
+            }
+            // a scoped security context on a bounded worker, so concurrent transformations are safe
+            return workers.call(() -> createSpecFromPlan(planYaml, type, context));
         } catch (Exception e) {
             if (e instanceof UnsupportedTypePlanException) {
                 if (log.isTraceEnabled())
@@ -148,19 +187,63 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
         }
     }
 
+    private EntitySpec<? extends Application> createSpecFromPlan(String planYaml, RegisteredType type, RegisteredTypeLoadingContext context) {
+        ToscaApplication tApp;
+        try (ToscaMetrics.Timer t = getMetrics().time(ToscaMetrics.PARSE)) {
+            @SuppressWarnings("deprecation")
+            tApp = platform.parse(planYaml, CatalogUtils.newClassLoadingContext(mgmt, type, context!=null && context.getLoader()!=null ? context.getLoader() :
+                // deprecated pojo load used only for csar link integration test
+                JavaBrooklynClassLoadingContext.create(getClass().getClassLoader())));
+        }
+        return createApplicationSpec(tApp);
+    }
+
+    /**
+     * @return the platform's worker pool, or null to transform on the calling thread
+     */
+    private ToscaWorkerPool getWorkers() {
+        return findBean(ToscaWorkerPool.class);
+    }
+
+    /**
+     * @return the platform's metrics, or metrics which are not published if the platform does not provide them
+     */
+    private ToscaMetrics getMetrics() {
+        ToscaMetrics metrics = findBean(ToscaMetrics.class);
+        return metrics != null ? metrics : unpublishedMetrics;
+    }
+
+    /**
+     * @return the platform's bean of the given type, or null if it has none
+     */
+    @SuppressWarnings("deprecation")
+    private <T> T findBean(Class<T> type) {
+        try {
+            return platform.getBean(type);
+        } catch (NoSuchBeanDefinitionException e) {
+            return null;
+        }
+    }
+
     private boolean isEnabled() {
         return BrooklynFeatureEnablement.isEnabled(FEATURE_TOSCA_ENABLED);
     }
 
     /**
-     * Throws {@link IllegalStateException} if {@link BrooklynFeatureEnablement#isEnabled(String)}
-     * returns false for {@link #FEATURE_TOSCA_ENABLED} or if {@link #alienInitialised} is false.
+     * Throws {@link UnsupportedTypePlanException} if {@link BrooklynFeatureEnablement#isEnabled(String)}
+     * returns false for {@link #FEATURE_TOSCA_ENABLED}, or if {@link #alienInitialised} is false once any
+     * initialisation in the background has finished or {@link #INIT_TIMEOUT} has passed.
      */
     private void assertAvailable() {
         if (!BrooklynFeatureEnablement.isEnabled(FEATURE_TOSCA_ENABLED)) {
             throw new UnsupportedTypePlanException("Brooklyn TOSCA support is disabled");
         } else if (!alienInitialised.get()) {
-            throw new UnsupportedTypePlanException("Alien4Cloud platform is uninitialised for " + this);
+            if (warmUp != null) {
+                warmUp.await(mgmt.getConfig().getConfig(INIT_TIMEOUT));
+            }
+            if (!alienInitialised.get()) {
+                throw new UnsupportedTypePlanException("Alien4Cloud platform is uninitialised for " + this);
+            }
         }
     }
 
@@ -176,16 +259,24 @@ public class ToscaTypePlanTransformer extends AbstractTypePlanTransformer {
     
     @Override
     protected double scoreForNullFormat(Object planData, RegisteredType type, RegisteredTypeLoadingContext context) {
-        Maybe<Map<?, ?>> yamlMap = RegisteredTypes.getAsYamlMap(planData);
-        if (yamlMap.isPresentAndNonNull()) {
-            if (yamlMap.get().containsKey("csar_link") || yamlMap.get().containsKey("tosca_link")) {
+        if (planData==null) {
+            return 0;
+        }
+        if (planData instanceof Map) {
+            Map<?, ?> yamlMap = (Map<?, ?>) planData;
+            if (yamlMap.containsKey(ToscaPlanSniffer.CSAR_LINK) || yamlMap.containsKey(ToscaPlanSniffer.TOSCA_LINK)) {
                 return 1;
-            } else {
-                return ToscaParser.isToscaScore(yamlMap.get());
             }
+            return ToscaParser.isToscaScore(yamlMap);
         }
-        if (planData==null) {
-            return 0;
+        // reads only the top-level keys, as this is called for every plan whatever its format;
+        // the result is reused if this plan is then parsed
+        ToscaPlanSniffer.Result sniffed = ToscaPlanSniffer.classify(planData.toString());
+        if (sniffed.isMap()) {
+            if (sniffed.getKeys().containsKey(ToscaPlanSniffer.CSAR_LINK) || sniffed.getKeys().containsKey(ToscaPlanSniffer.TOSCA_LINK)) {
+                return 1;
+            }
+            return sniffed.getToscaScore();
         }
         double unparseableScore = ToscaParser.isToscaScore(planData.toString());
         if (unparseableScore>0) {
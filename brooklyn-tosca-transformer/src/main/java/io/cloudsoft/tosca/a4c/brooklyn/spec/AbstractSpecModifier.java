@@ -27,6 +27,15 @@ public abstract class AbstractSpecModifier implements EntitySpecModifier {
         this.alien4CloudFacade = alien4CloudFacade;
     }
 
+    /**
+     * Modifiers built on this class hold no state of their own beyond their collaborators, which are thread-safe.
+     * Subclasses which keep state between calls must override this to return false.
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     protected ToscaFacade<ToscaApplication> getToscaFacade() {
         return (ToscaFacade<ToscaApplication>) alien4CloudFacade;
@@ -7,9 +7,23 @@ import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
 /**
  * A SpecModifier applies a set of changes to an entity spec with reference to a node
  * template and a topology.
+ * <p>
+ * When specs are built in parallel (see {@link io.cloudsoft.tosca.a4c.brooklyn.Alien4CloudApplicationSpecsBuilder#SPEC_BUILD_PARALLELISM}),
+ * {@link #apply} may be called concurrently for different nodes of the same application. A modifier which
+ * declares itself {@link #isThreadSafe() thread-safe} must then only change the spec it is given, and must not
+ * keep state between calls other than in thread-safe structures. Modifiers are always applied to a given
+ * node one at a time, in order.
  */
 public interface EntitySpecModifier {
 
     void apply(EntitySpec<?> entitySpec, String nodeId, ToscaApplication toscaApplication);
 
+    /**
+     * @return whether {@link #apply} may be called concurrently for different nodes; if any modifier
+     *         returns false, specs are built sequentially
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
 }
@@ -1,19 +1,29 @@
 package io.cloudsoft.tosca.a4c.brooklyn.spec;
 
+import java.util.Collection;
+
 import javax.inject.Inject;
 
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.camp.brooklyn.spi.dsl.methods.BrooklynDslCommon;
+import org.apache.brooklyn.core.sensor.ssh.SshCommandSensor;
 import org.apache.brooklyn.entity.software.base.VanillaSoftwareProcess;
+import org.apache.brooklyn.util.core.config.ConfigBag;
+import org.apache.brooklyn.util.text.Identifiers;
+import org.apache.brooklyn.util.text.Strings;
+import org.apache.brooklyn.util.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Multimap;
 
 import io.cloudsoft.tosca.a4c.brooklyn.ApplicationSpecsBuilder;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaFacade;
+import io.cloudsoft.tosca.a4c.brooklyn.function.OperationOutputs;
 
 // TODO: Handle interfaces differently.
 @Component
@@ -21,6 +31,10 @@ public class StandardInterfaceLifecycleModifier extends AbstractSpecModifier {
 
     private static final Logger LOG = LoggerFactory.getLogger(StandardInterfaceLifecycleModifier.class);
     public static final String EXPANDED_FOLDER = "/expanded/";
+    public static final String OUTPUTS_FOLDER = "$HOME/.brooklyn-tosca/outputs/";
+
+    private static final String STANDARD_INTERFACE = "Standard";
+    private static final Duration OUTPUTS_POLL_PERIOD = Duration.FIVE_SECONDS;
 
     @Inject
     public StandardInterfaceLifecycleModifier(ManagementContext mgmt, ToscaFacade<? extends ToscaApplication> alien4CloudFacade) {
@@ -44,13 +58,41 @@ public class StandardInterfaceLifecycleModifier extends AbstractSpecModifier {
         entitySpec.configure(VanillaSoftwareProcess.CHECK_RUNNING_COMMAND.getName(), "true");
 
         // Applying operations
+        final Multimap<String, String> outputs = getToscaFacade().getOperationOutputs(nodeId, toscaApplication);
+        // unique to the spec, as several nodes may be hosted on one machine
+        final String outputsDirectory = OUTPUTS_FOLDER + Strings.makeValidFilename(nodeId) + "-" + Identifiers.makeRandomId(8);
         final Iterable<String> operations = getToscaFacade().getInterfaceOperations(nodeId, toscaApplication);
         for (String opKey : operations) {
             String computeName = toscaApplication.getNodeName(nodeId).or(String.valueOf(entitySpec.getFlags().get(ApplicationSpecsBuilder.TOSCA_TEMPLATE_ID)));
             final Optional<Object> script = getToscaFacade().getScript(opKey, nodeId, toscaApplication, computeName, EXPANDED_FOLDER, mgmt);
             if (script.isPresent()) {
-                entitySpec.configure(getToscaFacade().getLifeCycle(opKey).getName(), script.get());
+                Object command = script.get();
+                if (outputs.containsKey(opKey)) {
+                    command = publishOutputs(entitySpec, opKey, outputs.get(opKey), outputsDirectory, command);
+                }
+                entitySpec.configure(getToscaFacade().getLifeCycle(opKey).getName(), command);
             }
         }
     }
+
+    /**
+     * Has the operation's script write the given outputs when it exits, and adds a sensor for each which reads it back
+     * for {@code get_operation_output}.
+     *
+     * @return the script to run for the operation
+     */
+    private Object publishOutputs(EntitySpec<?> entitySpec, String opKey, Collection<String> outputs, String outputsDirectory, Object script) {
+        LOG.debug("Publishing outputs {} of operation {} on {}", new Object[] { outputs, opKey, entitySpec });
+        for (String output : outputs) {
+            entitySpec.addInitializer(new SshCommandSensor<>(ConfigBag.newInstance()
+                    .configure(SshCommandSensor.SENSOR_NAME, OperationOutputs.sensorName(STANDARD_INTERFACE, opKey, output))
+                    .configure(SshCommandSensor.SENSOR_COMMAND, OperationOutputs.readCommand(outputsDirectory, opKey, output))
+                    .configure(SshCommandSensor.SENSOR_PERIOD, OUTPUTS_POLL_PERIOD)));
+        }
+        String trap = OperationOutputs.exitTrap(outputsDirectory, opKey, outputs);
+        if (script instanceof String) {
+            return trap + "\n" + script;
+        }
+        return BrooklynDslCommon.formatString("%s\n%s", trap, script);
+    }
 }
@@ -7,24 +7,16 @@ import org.apache.brooklyn.api.mgmt.ManagementContext;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.FilterType;
 import org.springframework.core.io.ResourceLoader;
 
 import alien4cloud.security.ResourceRoleService;
 
+/**
+ * Beans of the Alien4Cloud platform besides its components, which are listed in the {@link ComponentIndex}.
+ */
 @Configuration
 @EnableAutoConfiguration
-@ComponentScan(basePackages = {
-        "alien4cloud",
-        "org.elasticsearch.mapping",
-        "io.cloudsoft.tosca.a4c.brooklyn"
-}, excludeFilters = {
-        @ComponentScan.Filter(type = FilterType.REGEX, pattern = "io.cloudsoft.tosca.a4c.brooklyn.spec.*"),
-        @ComponentScan.Filter(type = FilterType.REGEX, pattern = "alien4cloud.security.*"),
-        @ComponentScan.Filter(type = FilterType.REGEX, pattern = "alien4cloud.audit.*"),
-        @ComponentScan.Filter(type = FilterType.REGEX, pattern = "alien4cloud.ldap.*")})
 public class Alien4CloudSpringConfig {
 
     @Bean
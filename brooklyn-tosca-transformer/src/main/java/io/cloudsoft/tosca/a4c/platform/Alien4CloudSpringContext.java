@@ -1,6 +1,9 @@
 package io.cloudsoft.tosca.a4c.platform;
 
+import java.util.List;
+
 import alien4cloud.utils.AlienYamlPropertiesFactoryBeanFactory;
+import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
 import org.apache.brooklyn.api.mgmt.ManagementContext;
 import org.apache.brooklyn.util.exceptions.Exceptions;
@@ -10,12 +13,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.config.YamlPropertiesFactoryBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigApplicationContext;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.ImportResource;
 import org.springframework.core.env.PropertiesPropertySource;
 import org.springframework.core.io.ResourceLoader;
 
-@ComponentScan
 @ImportResource("classpath:/base-context.xml")
 public class Alien4CloudSpringContext {
 
@@ -52,6 +53,14 @@ public class Alien4CloudSpringContext {
             ctx.getBeanFactory().registerSingleton("brooklynManagementContext", mgmt);
 
             ctx.register(Alien4CloudSpringContext.class, Alien4CloudSpringConfig.class);
+            Optional<List<Class<?>>> components = ComponentIndex.load(ctx.getClassLoader());
+            if (components.isPresent()) {
+                log.debug("Registering " + components.get().size() + " Alien4Cloud platform components from " + ComponentIndex.LOCATION);
+            } else {
+                components = Optional.of(ComponentIndex.find(ctx.getClassLoader(), ctx.getEnvironment()));
+                log.debug("Registering " + components.get().size() + " Alien4Cloud platform components found by scanning");
+            }
+            ctx.register(components.get().toArray(new Class<?>[components.get().size()]));
             ctx.refresh();
             ctx.registerShutdownHook();
             log.info("Finished loading Alien4Cloud platform (" + Duration.of(s) + ")");
@@ -1,22 +1,30 @@
 package io.cloudsoft.tosca.a4c.platform;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
 import org.apache.brooklyn.api.mgmt.classloading.BrooklynClassLoadingContext;
 import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
 import org.apache.brooklyn.util.core.ResourceUtils;
 import org.apache.brooklyn.util.exceptions.Exceptions;
-import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.guava.Maybe;
 import org.apache.brooklyn.util.stream.Streams;
-import org.apache.brooklyn.util.text.Identifiers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
@@ -25,13 +33,26 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
 
+import alien4cloud.model.components.Csar;
 import alien4cloud.security.model.Role;
+import alien4cloud.tosca.parser.ParsingResult;
 import alien4cloud.utils.FileUtil;
 import io.cloudsoft.tosca.a4c.brooklyn.ConfigLoader;
+import io.cloudsoft.tosca.a4c.brooklyn.DefaultTypesSnapshot;
+import io.cloudsoft.tosca.a4c.brooklyn.ParsedPlanCache;
+import io.cloudsoft.tosca.a4c.brooklyn.ScratchStore;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaFacade;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaPlanSniffer;
 import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
 
 @Component
@@ -43,9 +64,10 @@ public class Alien4CloudToscaPlatform implements ToscaPlatform {
     private final BeanFactory beanFactory;
     private ToscaFacade<?> alien4CloudFacade;
     private Uploader uploader;
-
-    // State
-    private final File tmpRoot;
+    private ParsedPlanCache parsedPlans;
+    private final ScratchStore scratch;
+    private final DefaultTypesSnapshot typesSnapshot;
+    private final TypeArchiveLoader archiveLoader;
 
     public static void grantAdminAuth() {
         final AnonymousAuthenticationToken anonToken = new AnonymousAuthenticationToken("brooklyn", "java",
@@ -54,12 +76,15 @@ public class Alien4CloudToscaPlatform implements ToscaPlatform {
     }
 
     @Inject
-    public Alien4CloudToscaPlatform(BeanFactory beanFactory, ToscaFacade<?> alien4CloudFacade, Uploader uploader) {
+    public Alien4CloudToscaPlatform(BeanFactory beanFactory, ToscaFacade<?> alien4CloudFacade, Uploader uploader, ParsedPlanCache parsedPlans, ScratchStore scratch,
+            @Nullable DefaultTypesSnapshot typesSnapshot, TypeArchiveLoader archiveLoader) {
         this.beanFactory = beanFactory;
         this.alien4CloudFacade = alien4CloudFacade;
         this.uploader = uploader;
-        tmpRoot = Os.newTempDir("brooklyn-a4c");
-        Os.deleteOnExitRecursively(tmpRoot);
+        this.parsedPlans = parsedPlans;
+        this.scratch = scratch;
+        this.typesSnapshot = typesSnapshot;
+        this.archiveLoader = archiveLoader;
         loadDefaultTypes();
     }
 
@@ -67,30 +92,94 @@ public class Alien4CloudToscaPlatform implements ToscaPlatform {
         // NullPointerException thrown in alien4cloud.security.AuthorizationUtil if admin auth is not granted.
         grantAdminAuth();
         final Iterable<String> defaultTypes = ConfigLoader.getDefaultTypes();
-        try {
+        // loaded together, so that independent archives of different resources are uploaded concurrently
+        try (ScratchStore.Lease lease = scratch.lease("default-types")) {
+            List<TypesResource> resources = MutableList.of();
+            int count = 0;
             for (String resource : defaultTypes) {
-                // TODO: Check for cached location too.
-                loadTypesFromUrl(resource);
+                LOG.info("Loading types from " + resource);
+                TypesResource prepared = prepareTypes(resource, lease.newFile("url-types." + count++).toPath());
+                if (prepared != null) {
+                    resources.add(prepared);
+                }
             }
+            loadTypes(resources, lease.newFile("archives").toPath());
         } catch (Exception e) {
             throw Exceptions.propagateAnnotated("Error loading default types " + Iterables.toString(defaultTypes), e);
         }
         final String brooklynTypes = "classpath://brooklyn/types/brooklyn-types.yaml";
         LOG.info("Loading types from " + brooklynTypes);
-        uploader.uploadSingleYaml(new ResourceUtils(this).getResourceFromUrl(brooklynTypes), "brooklyn-types");
+        byte[] yaml;
+        try (InputStream in = new ResourceUtils(this).getResourceFromUrl(brooklynTypes)) {
+            yaml = ByteStreams.toByteArray(in);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+        String digest = Hashing.sha256().hashBytes(yaml).toString();
+        if (isIndexed(brooklynTypes, digest)) {
+            return;
+        }
+        ParsingResult<Csar> result = uploader.uploadSingleYaml(new ByteArrayInputStream(yaml), "brooklyn-types");
+        // not recorded if nothing was indexed, so the types are loaded again on the next start
+        if (typesSnapshot != null && result != null && result.getResult() != null) {
+            typesSnapshot.put(brooklynTypes, digest, ImmutableList.of(result.getResult()));
+        }
+    }
+
+    private boolean isIndexed(String url, String digest) {
+        if (typesSnapshot != null && typesSnapshot.isIndexed(url, digest)) {
+            LOG.info("Types from " + url + " are already indexed; not loading them again");
+            return true;
+        }
+        return false;
     }
 
     @Override
     public void loadTypesFromUrl(String url) throws Exception {
         LOG.info("Loading types from " + url);
-        Path artifactsDirectory = Paths.get(tmpRoot.toString(), "url-types");
-        Path zipName = artifactsDirectory.resolve(Paths.get("url-types." + Identifiers.makeRandomId(6)));
+        try (ScratchStore.Lease lease = scratch.lease("url-types")) {
+            TypesResource resource = prepareTypes(url, lease.newFile("url-types").toPath());
+            if (resource != null) {
+                loadTypes(ImmutableList.of(resource), lease.newFile("archives").toPath());
+            }
+        }
+    }
+
+    /** The directories of a types resource to load as archives, keyed by a label for each. */
+    private static class TypesResource {
+        final String url;
+        final String digest;
+        // whether the resource is a single archive, whose failure to load is an error
+        final boolean single;
+        final Map<String, Path> archives = MutableMap.of();
+
+        TypesResource(String url, String digest, boolean single) {
+            this.url = url;
+            this.digest = digest;
+            this.single = single;
+        }
+    }
+
+    /**
+     * Downloads and unpacks the resource.
+     *
+     * @return the archives to load, or null if the resource is already indexed
+     */
+    private TypesResource prepareTypes(String url, Path zipName) throws Exception {
         Path zipNameAndExtension = Paths.get(zipName.toString() + ".orig.zip");
-        Files.createDirectories(zipNameAndExtension.getParent());
 
         // Retrieve resource and copy to zipNameAndExtension.
-        Streams.copy(new ResourceUtils(Alien4CloudToscaPlatform.class).getResourceFromUrl(url),
-                new FileOutputStream(zipNameAndExtension.toString()));
+        HashingInputStream resource = new HashingInputStream(Hashing.sha256(),
+                new ResourceUtils(Alien4CloudToscaPlatform.class).getResourceFromUrl(url));
+        try (FileOutputStream out = new FileOutputStream(zipNameAndExtension.toString())) {
+            Streams.copy(resource, out);
+        } finally {
+            Streams.closeQuietly(resource);
+        }
+        String digest = resource.hash().toString();
+        if (isIndexed(url, digest)) {
+            return null;
+        }
         Path zipExploded = Paths.get(zipName.toString() + "_expanded");
         FileUtil.unzip(zipNameAndExtension, zipExploded);
 
@@ -105,29 +194,52 @@ public class Alien4CloudToscaPlatform implements ToscaPlatform {
             hasMultiple = Iterables.isEmpty(s);
         }
 
+        TypesResource result = new TypesResource(url, digest, !hasMultiple);
         if (hasMultiple) {
-            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(zipExploded.resolve(zipRootDir))) {
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(zipRootDirPath)) {
                 for (Path p : directoryStream) {
-                    try {
-                        if (Files.isDirectory(p)) {
-                            Path outputPath = Paths.get(zipName.toString(), p.getFileName() + ".csar.zip");
-                            FileUtil.zip(p, outputPath);
-                            uploader.upload(outputPath);
-                        }
-                    } catch (Exception e) {
-                        LOG.warn("Cannot load {}: {}", p.getFileName(), e);
+                    if (Files.isDirectory(p)) {
+                        result.archives.put(url + "!/" + p.getFileName(), p);
                     }
                 }
             }
         } else {
-            Path outputPath = Paths.get(zipName.toString() + ".csar.zip");
-            FileUtil.zip(zipExploded.resolve(zipRootDir), outputPath);
-            uploader.upload(outputPath);
+            result.archives.put(url, zipRootDirPath);
+        }
+        return result;
+    }
+
+    private void loadTypes(List<TypesResource> resources, Path workDir) {
+        Map<String, Path> archives = MutableMap.of();
+        for (TypesResource resource : resources) {
+            archives.putAll(resource.archives);
+        }
+        Map<String, TypeArchiveLoader.Result> results = archiveLoader.load(archives, workDir);
+
+        for (TypesResource resource : resources) {
+            List<Csar> indexed = MutableList.of();
+            boolean complete = true;
+            for (String label : resource.archives.keySet()) {
+                TypeArchiveLoader.Result result = results.get(label);
+                if (result.getArchive().isPresent()) {
+                    indexed.add(result.getArchive().get());
+                } else if (resource.single) {
+                    throw Exceptions.propagate(result.getError());
+                } else {
+                    LOG.warn("Cannot load {}: {}", resource.archives.get(label).getFileName(), result.getError());
+                    complete = false;
+                }
+            }
+            if (typesSnapshot != null && complete) {
+                // so the next start can skip this if the same content is still indexed
+                typesSnapshot.put(resource.url, resource.digest, indexed);
+            }
         }
     }
 
     public synchronized void close() {
-        Os.deleteRecursively(tmpRoot);
+        // scratch files are deleted as each load completes; this also removes any left by loads in progress
+        scratch.close();
     }
 
     // TODO: Uses of this should be turned into proper methods on this class.
@@ -139,7 +251,65 @@ public class Alien4CloudToscaPlatform implements ToscaPlatform {
 
     @Override
     public ToscaApplication parse(String plan, BrooklynClassLoadingContext context) {
-        return alien4CloudFacade.parsePlan(plan, uploader, context);
+        // the archive is shared, the application built from it is not: specs may rename its nodes
+        Csar archive = parsedPlans.get(plan, context, () -> alien4CloudFacade.parseArchive(plan, uploader, context));
+        return alien4CloudFacade.newToscaApplication(archive);
+    }
+
+    @Override
+    public Map<String, Maybe<ToscaApplication>> parseAll(Map<String, String> plans, BrooklynClassLoadingContext context) {
+        // parsed through the plan cache, so creating each item's spec afterwards does not parse it again
+        return parseAll(plans, plan -> parse(plan, context));
+    }
+
+    @VisibleForTesting
+    static Map<String, Maybe<ToscaApplication>> parseAll(Map<String, String> plans, Function<String, ToscaApplication> parser) {
+        Multimap<String, String> itemsByPlan = LinkedHashMultimap.create();
+        for (Map.Entry<String, String> item : plans.entrySet()) {
+            itemsByPlan.put(item.getValue(), item.getKey());
+        }
+        List<String> distinct = MutableList.copyOf(itemsByPlan.keySet());
+        // stable, so otherwise in the order given
+        distinct.sort(Comparator.comparingInt(Alien4CloudToscaPlatform::batchOrder));
+        LOG.debug("Parsing {} distinct TOSCA plan(s) for {} item(s)", distinct.size(), plans.size());
+
+        Map<String, Maybe<ToscaApplication>> parsed = MutableMap.of();
+        for (String plan : distinct) {
+            Maybe<ToscaApplication> application;
+            try {
+                application = Maybe.of(parser.apply(plan));
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Error parsing TOSCA plan for " + itemsByPlan.get(plan) + " (continuing with other items)", e);
+                application = Maybe.absent(e);
+            }
+            for (String item : itemsByPlan.get(plan)) {
+                parsed.put(item, application);
+            }
+        }
+        Map<String, Maybe<ToscaApplication>> result = MutableMap.of();
+        for (String item : plans.keySet()) {
+            result.put(item, parsed.get(item));
+        }
+        return result;
+    }
+
+    /**
+     * @return 0 for links to archives, 1 for plans without a topology, such as type definitions, otherwise 2;
+     * only a hint, as any plan may import others
+     */
+    private static int batchOrder(String plan) {
+        if (ToscaPlanSniffer.classify(plan).isLink()) {
+            return 0;
+        }
+        try {
+            // the top-level key only, not the word anywhere in the plan
+            return ToscaPlanSniffer.readKeyNames(new StringReader(plan)).contains("topology_template") ? 2 : 1;
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            // not YAML; parsing it will report why
+            return 2;
+        }
     }
 
     @Override
@@ -0,0 +1,281 @@
+package io.cloudsoft.tosca.a4c.platform;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.type.filter.RegexPatternTypeFilter;
+import org.springframework.util.ClassUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Sets;
+
+/**
+ * A list of the Spring components of the Alien4Cloud platform, written at build time to {@link #LOCATION}, so that
+ * starting the platform registers them directly rather than scanning every class in {@link #BASE_PACKAGES}.
+ * <p>
+ * Only the components which are used are listed: those matching {@link #ROOTS}, and those which they have
+ * injected, transitively. The build runs {@link #main(String[])} once the classes are compiled, and the platform
+ * calls {@link #find(ClassLoader, Environment)} itself if the index is absent or names a class which cannot be loaded.
+ */
+public class ComponentIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ComponentIndex.class);
+
+    /** The index, one class name per line, in the style of Spring's {@code META-INF/spring.components}. */
+    public static final String LOCATION = "META-INF/brooklyn-tosca.components";
+
+    public static final String[] BASE_PACKAGES = {
+            "alien4cloud",
+            "org.elasticsearch.mapping",
+            "io.cloudsoft.tosca.a4c.brooklyn",
+            "io.cloudsoft.tosca.a4c.platform"
+    };
+
+    private static final String[] EXCLUDES = {
+            "io.cloudsoft.tosca.a4c.brooklyn.spec.*",
+            // registered explicitly
+            "io.cloudsoft.tosca.a4c.platform.Alien4CloudSpring.*",
+            "alien4cloud.security.*",
+            "alien4cloud.audit.*",
+            "alien4cloud.ldap.*"
+    };
+
+    /**
+     * The components used other than by injection: our own, which are looked up from the platform, and those which
+     * Alien4Cloud looks up by type from the application context.
+     */
+    private static final String[] ROOTS = {
+            "io.cloudsoft.tosca.a4c.*",
+            // the parsers, mappings and post-processors the TOSCA parser finds by type
+            "alien4cloud.tosca.parser.*",
+            // the mappings the DAO builds for each indexed class
+            "org.elasticsearch.mapping.*"
+    };
+
+    /**
+     * Finds the components used as the platform would at runtime, and writes the index under the given output directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: ComponentIndex <classes-directory>");
+        }
+        File index = new File(args[0], LOCATION);
+        List<String> components = MutableList.of();
+        for (Class<?> component : find(ComponentIndex.class.getClassLoader(), new StandardEnvironment())) {
+            components.add(component.getName());
+        }
+        index.getParentFile().mkdirs();
+        Files.write(index.toPath(), components, StandardCharsets.UTF_8);
+        LOG.info("Wrote {} Alien4Cloud platform component(s) to {}", components.size(), index);
+    }
+
+    /**
+     * Scans {@link #BASE_PACKAGES} for components, which is slow.
+     *
+     * @param environment against which any profile conditions of the components are evaluated
+     * @return the component classes which are used, sorted by name
+     */
+    public static List<Class<?>> find(ClassLoader classLoader, Environment environment) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(true, environment);
+        for (String exclude : EXCLUDES) {
+            scanner.addExcludeFilter(new RegexPatternTypeFilter(Pattern.compile(exclude)));
+        }
+        scanner.setResourceLoader(new DefaultResourceLoader(classLoader));
+        Set<String> names = Sets.newTreeSet();
+        for (String basePackage : BASE_PACKAGES) {
+            for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+                names.add(candidate.getBeanClassName());
+            }
+        }
+        List<Class<?>> candidates = MutableList.of();
+        for (String name : names) {
+            candidates.add(ClassUtils.resolveClassName(name, classLoader));
+        }
+        Set<Class<?>> used = used(candidates, ComponentIndex::isRoot);
+        LOG.debug("Found {} Alien4Cloud platform component(s), of which {} are used", candidates.size(), used.size());
+        List<Class<?>> result = MutableList.copyOf(used);
+        result.sort(Comparator.comparing(Class::getName));
+        return result;
+    }
+
+    @VisibleForTesting
+    static boolean isRoot(Class<?> component) {
+        for (String root : ROOTS) {
+            if (component.getName().matches(root)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the roots among the candidates, and the candidates they inject, transitively
+     */
+    @VisibleForTesting
+    static Set<Class<?>> used(Collection<Class<?>> candidates, Predicate<Class<?>> isRoot) {
+        Set<Class<?>> result = Sets.newLinkedHashSet();
+        Deque<Class<?>> toVisit = new ArrayDeque<>();
+        for (Class<?> candidate : candidates) {
+            if (isRoot.apply(candidate)) {
+                toVisit.add(candidate);
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            Class<?> component = toVisit.pop();
+            if (!result.add(component)) {
+                continue;
+            }
+            for (Class<?> type : injectedTypes(component)) {
+                for (Class<?> candidate : candidates) {
+                    if (!result.contains(candidate) && provides(candidate, type)) {
+                        toVisit.add(candidate);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return whether the candidate is a bean of the given type, or is configuration declaring one
+     */
+    private static boolean provides(Class<?> candidate, Class<?> type) {
+        if (type.isAssignableFrom(candidate)) {
+            return true;
+        }
+        if (AnnotationUtils.findAnnotation(candidate, Configuration.class) != null) {
+            for (Method method : candidate.getDeclaredMethods()) {
+                if (method.isAnnotationPresent(Bean.class) && type.isAssignableFrom(method.getReturnType())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the types of the beans which the component has injected, including the elements of injected
+     * collections, and of the parameters of any {@link Bean} methods
+     */
+    @VisibleForTesting
+    static Set<Class<?>> injectedTypes(Class<?> component) {
+        Set<Class<?>> result = Sets.newLinkedHashSet();
+        for (Class<?> type = component; type != null && type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (isInjected(field)) {
+                    addBeanType(field.getGenericType(), result);
+                }
+            }
+            for (Method method : type.getDeclaredMethods()) {
+                if (isInjected(method) || method.isAnnotationPresent(Bean.class)) {
+                    for (Type parameter : method.getGenericParameterTypes()) {
+                        addBeanType(parameter, result);
+                    }
+                }
+            }
+            for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+                if (isInjected(constructor)) {
+                    for (Type parameter : constructor.getGenericParameterTypes()) {
+                        addBeanType(parameter, result);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean isInjected(AnnotatedElement element) {
+        return element.isAnnotationPresent(Inject.class) || element.isAnnotationPresent(Autowired.class) || element.isAnnotationPresent(Resource.class);
+    }
+
+    private static void addBeanType(Type type, Set<Class<?>> result) {
+        if (type instanceof Class) {
+            Class<?> clazz = (Class<?>) type;
+            if (clazz.isArray()) {
+                addBeanType(clazz.getComponentType(), result);
+            } else if (!clazz.isPrimitive() && clazz != Object.class) {
+                result.add(clazz);
+            }
+        } else if (type instanceof ParameterizedType) {
+            Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (Map.class.isAssignableFrom(raw)) {
+                addBeanType(arguments[1], result);
+            } else if (Iterable.class.isAssignableFrom(raw) || Provider.class.isAssignableFrom(raw) || ObjectFactory.class.isAssignableFrom(raw)) {
+                addBeanType(arguments[0], result);
+            } else {
+                addBeanType(raw, result);
+            }
+        } else if (type instanceof WildcardType) {
+            addBeanType(((WildcardType) type).getUpperBounds()[0], result);
+        } else if (type instanceof TypeVariable) {
+            addBeanType(((TypeVariable<?>) type).getBounds()[0], result);
+        }
+    }
+
+    /**
+     * @return the component classes in the index, or absent if there is no index or it cannot be used
+     */
+    public static Optional<List<Class<?>>> load(ClassLoader classLoader) {
+        List<Class<?>> result = MutableList.of();
+        try (InputStream in = classLoader.getResourceAsStream(LOCATION)) {
+            if (in == null) {
+                LOG.debug("No component index {}; will scan for Alien4Cloud platform components", LOCATION);
+                return Optional.absent();
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    result.add(ClassUtils.forName(line, classLoader));
+                }
+            }
+        } catch (Exception | LinkageError e) {
+            LOG.warn("Could not use component index " + LOCATION + "; will scan for Alien4Cloud platform components: " + e);
+            return Optional.absent();
+        }
+        return Optional.of(result);
+    }
+
+}
@@ -1,8 +1,10 @@
 package io.cloudsoft.tosca.a4c.platform;
 
 import java.nio.file.Path;
+import java.util.Map;
 
 import org.apache.brooklyn.api.mgmt.classloading.BrooklynClassLoadingContext;
+import org.apache.brooklyn.util.guava.Maybe;
 
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
 
@@ -18,6 +20,14 @@ public interface ToscaPlatform {
     /** parse a plan (service template) as yaml text */
     ToscaApplication parse(String plan, BrooklynClassLoadingContext brooklynClassLoadingContext);
 
+    /**
+     * parse many plans from one bundle, keyed by catalog item, parsing each distinct plan once and plans which other
+     * plans may depend on, such as {@code csar_link}s and type definitions, first; a failure affects only its items.
+     * For installers of whole bundles; Brooklyn itself transforms items one at a time with {@link #parse(String, BrooklynClassLoadingContext)}.
+     * Plans are parsed in turn on the calling thread, as one may import types indexed by an earlier one.
+     */
+    Map<String, Maybe<ToscaApplication>> parseAll(Map<String, String> plans, BrooklynClassLoadingContext brooklynClassLoadingContext);
+
     /** parse a CSAR given path to the archive */
     ToscaApplication parse(Path path);
 
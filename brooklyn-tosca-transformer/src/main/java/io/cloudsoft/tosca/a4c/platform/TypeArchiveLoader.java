@@ -0,0 +1,299 @@
+package io.cloudsoft.tosca.a4c.platform;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.config.ConfigKey;
+import org.apache.brooklyn.core.config.ConfigKeys;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import alien4cloud.model.components.Csar;
+import alien4cloud.utils.FileUtil;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaPlanSniffer;
+import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+/**
+ * Zips and uploads the directories of a types resource as archives, several at once, uploading each archive only
+ * once the archives it {@code imports} from the same batch have been uploaded.
+ * <p>
+ * At most {@link #PARALLELISM} archives are uploaded at once. Each archive's outcome is reported separately, so
+ * one archive failing does not stop the others; an archive whose dependency failed is still attempted, and A4C
+ * reports the missing import. The time taken for each archive is logged and recorded as {@link #LOAD}.
+ */
+@Component
+public class TypeArchiveLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TypeArchiveLoader.class);
+
+    public static final ConfigKey<Integer> PARALLELISM = ConfigKeys.newIntegerConfigKey(
+            "tosca.a4c.types.load.parallelism",
+            "Maximum number of type archives uploaded at once; defaults to the number of processors, up to 4");
+
+    /** Timings of zipping and uploading each type archive. */
+    public static final String LOAD = "types.load";
+
+    private static final Set<String> DEFINITION_KEYS = ImmutableSet.of("metadata", "template_name", "template_version", "imports");
+
+    /** The outcome of loading one archive. */
+    public static class Result {
+        private final Maybe<Csar> archive;
+        private final Exception error;
+        private final long millis;
+
+        Result(Maybe<Csar> archive, @Nullable Exception error, long millis) {
+            this.archive = archive;
+            this.error = error;
+            this.millis = millis;
+        }
+
+        /** @return the archive indexed, or absent if it could not be loaded */
+        public Maybe<Csar> getArchive() {
+            return archive;
+        }
+
+        /** @return why the archive could not be loaded, or null if it was */
+        @Nullable
+        public Exception getError() {
+            return error;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    /** An archive's name and version, and those of the archives it imports, from its definition files. */
+    @VisibleForTesting
+    static class Definitions {
+        final Set<String> ids = MutableSet.of();
+        final Set<String> imports = MutableSet.of();
+    }
+
+    private final Uploader uploader;
+    private final ToscaMetrics metrics;
+    private final int parallelism;
+
+    @Inject
+    public TypeArchiveLoader(Uploader uploader, ToscaMetrics metrics, ManagementContext mgmt) {
+        this(uploader, metrics, parallelism(mgmt));
+    }
+
+    public TypeArchiveLoader(Uploader uploader, ToscaMetrics metrics, int parallelism) {
+        this.uploader = uploader;
+        this.metrics = metrics;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    private static int parallelism(ManagementContext mgmt) {
+        Integer configured = mgmt.getConfig().getConfig(PARALLELISM);
+        return configured != null && configured > 0 ? configured : Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Zips each directory into the given working directory and uploads it.
+     *
+     * @param archives the directories to load, keyed by a unique label used in logging
+     * @return the outcome for each label, in the order given
+     */
+    public Map<String, Result> load(Map<String, Path> archives, Path workDir) {
+        Map<String, Definitions> definitions = MutableMap.of();
+        for (Map.Entry<String, Path> archive : archives.entrySet()) {
+            definitions.put(archive.getKey(), readDefinitions(archive.getValue()));
+        }
+        Map<String, Set<String>> dependencies = dependencies(definitions);
+        try {
+            Files.createDirectories(workDir);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, archives.size())),
+                new ThreadFactoryBuilder().setNameFormat("brooklyn-tosca-types-%d").setDaemon(true).build());
+        try {
+            Map<String, CompletableFuture<Result>> futures = MutableMap.of();
+            for (String label : archives.keySet()) {
+                schedule(label, archives, workDir, dependencies, futures, MutableSet.<String>of(), executor);
+            }
+            Map<String, Result> results = MutableMap.of();
+            for (String label : archives.keySet()) {
+                results.put(label, futures.get(label).join());
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<Result> schedule(final String label, final Map<String, Path> archives, final Path workDir,
+            Map<String, Set<String>> dependencies, Map<String, CompletableFuture<Result>> futures, Set<String> visiting,
+            final ExecutorService executor) {
+        CompletableFuture<Result> future = futures.get(label);
+        if (future != null) {
+            return future;
+        }
+        visiting.add(label);
+        List<CompletableFuture<Result>> prerequisites = MutableList.of();
+        for (String dependency : dependencies.get(label)) {
+            if (visiting.contains(dependency)) {
+                LOG.warn("Type archives " + label + " and " + dependency + " import each other; loading without ordering them");
+                continue;
+            }
+            prerequisites.add(schedule(dependency, archives, workDir, dependencies, futures, visiting, executor));
+        }
+        visiting.remove(label);
+        final Path zip = workDir.resolve(futures.size() + ".csar.zip");
+        // results of prerequisites are always normal, so this runs whether or not they succeeded
+        future = CompletableFuture.allOf(prerequisites.toArray(new CompletableFuture<?>[prerequisites.size()]))
+                .thenApplyAsync(v -> loadOne(label, archives.get(label), zip), executor);
+        futures.put(label, future);
+        return future;
+    }
+
+    private Result loadOne(String label, Path directory, Path zip) {
+        long start = System.nanoTime();
+        Maybe<Csar> archive;
+        Exception error = null;
+        // A4C authorises uploads against the security context of the current thread
+        SecurityContextHolder.setContext(SecurityContextHolder.createEmptyContext());
+        try {
+            Alien4CloudToscaPlatform.grantAdminAuth();
+            FileUtil.zip(directory, zip);
+            archive = Maybe.of(uploader.upload(zip).getResult());
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            error = e;
+            archive = Maybe.absent(e);
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+        long nanos = System.nanoTime() - start;
+        metrics.recordTime(LOAD, nanos, TimeUnit.NANOSECONDS);
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (archive.isPresent()) {
+            LOG.info("Loaded type archive {} in {}ms", label, millis);
+        } else {
+            LOG.debug("Failed to load type archive " + label + " after " + millis + "ms", error);
+        }
+        return new Result(archive, error, millis);
+    }
+
+    /**
+     * @return for each label, the labels of the other archives which it imports
+     */
+    @VisibleForTesting
+    static Map<String, Set<String>> dependencies(Map<String, Definitions> definitions) {
+        Map<String, String> labelsById = MutableMap.of();
+        for (Map.Entry<String, Definitions> archive : definitions.entrySet()) {
+            for (String id : archive.getValue().ids) {
+                labelsById.put(id, archive.getKey());
+            }
+        }
+        Map<String, Set<String>> result = MutableMap.of();
+        for (Map.Entry<String, Definitions> archive : definitions.entrySet()) {
+            Set<String> dependencies = MutableSet.of();
+            for (String imported : archive.getValue().imports) {
+                String label = labelsById.get(imported);
+                if (label != null && !label.equals(archive.getKey())) {
+                    dependencies.add(label);
+                }
+            }
+            result.put(archive.getKey(), dependencies);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the name, version and imports from the definition files in the directory. Unreadable files are
+     * skipped; the archive is then loaded without ordering and A4C reports any problem.
+     */
+    @VisibleForTesting
+    static Definitions readDefinitions(Path directory) {
+        Definitions result = new Definitions();
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(directory)) {
+            files = walk.filter(p -> p.toString().endsWith(".yaml") || p.toString().endsWith(".yml")).collect(Collectors.toList());
+        } catch (IOException e) {
+            LOG.debug("Could not list definitions in " + directory + "; loading without ordering", e);
+            return result;
+        }
+        for (Path file : files) {
+            Map<String, Object> yaml;
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                // only the keys needed for ordering, so the types and templates are not built
+                yaml = ToscaPlanSniffer.readKeys(reader, DEFINITION_KEYS);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                LOG.debug("Could not read " + file + "; loading without ordering", e);
+                continue;
+            }
+            addDefinitions(result, yaml);
+        }
+        return result;
+    }
+
+    private static void addDefinitions(Definitions result, Map<?, ?> yaml) {
+        Object metadata = yaml.get("metadata");
+        Map<?, ?> meta = metadata instanceof Map ? (Map<?, ?>) metadata : MutableMap.of();
+        Object name = yaml.containsKey("template_name") ? yaml.get("template_name") : meta.get("template_name");
+        Object version = yaml.containsKey("template_version") ? yaml.get("template_version") : meta.get("template_version");
+        if (name != null) {
+            result.ids.add(version != null ? name + ":" + version : String.valueOf(name));
+            result.ids.add(String.valueOf(name));
+        }
+        Object imports = yaml.get("imports");
+        if (imports instanceof Collection) {
+            for (Object imported : (Collection<?>) imports) {
+                // either "name:version", or a single-entry map of a name to it
+                if (imported instanceof Map) {
+                    for (Object value : ((Map<?, ?>) imported).values()) {
+                        addImport(result, value);
+                    }
+                } else {
+                    addImport(result, imported);
+                }
+            }
+        }
+    }
+
+    private static void addImport(Definitions result, Object imported) {
+        if (imported instanceof String) {
+            String id = ((String) imported).trim();
+            result.imports.add(id);
+            if (id.contains(":")) {
+                // also match an archive which declares no version
+                result.imports.add(id.substring(0, id.indexOf(':')));
+            }
+        }
+    }
+
+}
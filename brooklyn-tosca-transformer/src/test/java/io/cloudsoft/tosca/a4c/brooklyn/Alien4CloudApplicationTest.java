@@ -1,6 +1,8 @@
 package io.cloudsoft.tosca.a4c.brooklyn;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Map;
@@ -11,7 +13,11 @@ import org.testng.Assert;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 
 import alien4cloud.model.topology.NodeTemplate;
 import alien4cloud.model.topology.RelationshipTemplate;
@@ -61,4 +67,59 @@ public class Alien4CloudApplicationTest {
         String expected = host;
         Assert.assertEquals(actual, expected);
     }
+
+    @Test
+    public void testRelationshipsAreIndexedOnce(){
+        NodeTemplate app = mock(NodeTemplate.class);
+        NodeTemplate db = mock(NodeTemplate.class);
+        NodeTemplate other = mock(NodeTemplate.class);
+        RelationshipTemplate connectsTo = mock(RelationshipTemplate.class);
+        when(connectsTo.getType()).thenReturn("tosca.relationships.ConnectsTo");
+        when(connectsTo.getTarget()).thenReturn("db");
+        when(app.getRelationships()).thenReturn(ImmutableMap.of("dbConnection", connectsTo));
+        when(deploymentTopology.getNodeTemplates()).thenReturn(ImmutableMap.of("app", app, "db", db, "other", other));
+
+        ToscaApplication.Relationship expected = new ToscaApplication.Relationship("app", "db", "dbConnection", "tosca.relationships.ConnectsTo");
+        Assert.assertEquals(ImmutableList.copyOf(alien4CloudApplication.getAllRelationships("app")), ImmutableList.of(expected));
+        Assert.assertEquals(ImmutableList.copyOf(alien4CloudApplication.getAllRelationships("db")), ImmutableList.of(expected));
+        Assert.assertTrue(Iterables.isEmpty(alien4CloudApplication.getAllRelationships("other")));
+        Assert.assertSame(alien4CloudApplication.getNodeTemplate("db"), db);
+        verify(deploymentTopology, times(1)).getNodeTemplates();
+
+        alien4CloudApplication.invalidate();
+        alien4CloudApplication.getNodeTemplate("db");
+        verify(deploymentTopology, times(2)).getNodeTemplates();
+    }
+
+    @Test
+    public void testGetKeywordMapFollowsDerivedHostedOnChain(){
+        NodeTemplate app = mockNode("app", "my.relationships.DeployedIn", "tomcat");
+        NodeTemplate tomcat = mockNode("tomcat", "tosca.relationships.HostedOn", "vm");
+        NodeTemplate vm = mockNode("vm", null, null);
+        when(deploymentTopology.getNodeTemplates()).thenReturn(ImmutableMap.of("app", app, "tomcat", tomcat, "vm", vm));
+        alien4CloudApplication = new Alien4CloudApplication("TestApplication", deploymentTopology, "testDeployment", null,
+                Predicates.in(ImmutableSet.of("tosca.relationships.HostedOn", "my.relationships.DeployedIn")));
+
+        Map<String, String> keywordMap = alien4CloudApplication.getKeywordMap("app");
+        Assert.assertEquals(keywordMap, ImmutableMap.of("SELF", "app", "HOST", "vm"));
+        Assert.assertSame(alien4CloudApplication.getKeywordMap(app), keywordMap);
+        Assert.assertEquals(alien4CloudApplication.getGraph().getHostOrder(), ImmutableList.of("vm", "tomcat", "app"));
+
+        // renaming the root is reflected in the keywords of the nodes it hosts
+        when(vm.getName()).thenReturn("renamed");
+        alien4CloudApplication.setNodeName("vm", "renamed");
+        Assert.assertEquals(alien4CloudApplication.getKeywordMap("app").get("HOST"), "renamed");
+    }
+
+    private NodeTemplate mockNode(String name, String relationshipType, String target) {
+        NodeTemplate node = mock(NodeTemplate.class);
+        when(node.getName()).thenReturn(name);
+        if (relationshipType != null) {
+            RelationshipTemplate relationship = mock(RelationshipTemplate.class);
+            when(relationship.getType()).thenReturn(relationshipType);
+            when(relationship.getTarget()).thenReturn(target);
+            when(node.getRelationships()).thenReturn(ImmutableMap.of("host", relationship));
+        }
+        return node;
+    }
 }
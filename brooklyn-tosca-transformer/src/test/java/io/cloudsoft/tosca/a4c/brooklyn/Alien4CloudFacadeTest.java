@@ -3,6 +3,8 @@ package io.cloudsoft.tosca.a4c.brooklyn;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
@@ -167,6 +169,29 @@ public class Alien4CloudFacadeTest {
         ));
     }
 
+    @Test
+    public void testPaaSTopologyIsBuiltOncePerApplication() {
+        Topology topology = mock(Topology.class);
+        NodeTemplate nodeTemplate = mock(NodeTemplate.class);
+        PaaSTopology paaSTopology = mock(PaaSTopology.class);
+        PaaSNodeTemplate paaSNodeTemplate = mock(PaaSNodeTemplate.class);
+        when(topology.getNodeTemplates()).thenReturn(ImmutableMap.of("TestNode", nodeTemplate));
+        when(nodeTemplate.getName()).thenReturn("TestNode");
+        when(nodeTemplate.getProperties()).thenReturn(ImmutableMap.<String, AbstractPropertyValue>of(
+                "property1", new ScalarPropertyValue("testValue")));
+        when(topologyTreeBuilderService.buildPaaSTopology(topology)).thenReturn(paaSTopology);
+        when(paaSTopology.getAllNodes()).thenReturn(ImmutableMap.of("TestNode", paaSNodeTemplate));
+        Alien4CloudApplication toscaApplication = new Alien4CloudApplication("TestApplication", topology, "testDeployment", null);
+
+        alien4CloudFacade.getTemplatePropertyObjects("TestNode", toscaApplication, "TestNode");
+        alien4CloudFacade.getTemplatePropertyObjects("TestNode", toscaApplication, "TestNode");
+        verify(topologyTreeBuilderService, times(1)).buildPaaSTopology(topology);
+
+        toscaApplication.invalidate();
+        alien4CloudFacade.getTemplatePropertyObjects("TestNode", toscaApplication, "TestNode");
+        verify(topologyTreeBuilderService, times(2)).buildPaaSTopology(topology);
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     public void testGetMapPropertiesOfRelation() {
@@ -2,15 +2,18 @@ package io.cloudsoft.tosca.a4c.brooklyn;
 
 import static org.apache.brooklyn.test.Asserts.assertTrue;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.testng.Assert.assertEquals;
 
+import java.util.List;
 import java.util.Map;
 
 import org.apache.brooklyn.api.entity.EntitySpec;
 import org.apache.brooklyn.config.ConfigKey;
 import org.apache.brooklyn.core.config.ConfigKeys;
 import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.util.collections.MutableList;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.testng.annotations.BeforeClass;
@@ -22,6 +25,7 @@ import com.google.common.collect.ImmutableList;
 
 import alien4cloud.model.topology.NodeTemplate;
 import io.cloudsoft.tosca.a4c.Alien4CloudToscaTest;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
 import io.cloudsoft.tosca.a4c.brooklyn.spec.EntitySpecFactory;
 import io.cloudsoft.tosca.a4c.brooklyn.spec.EntitySpecModifier;
 
@@ -71,4 +75,72 @@ public class ApplicationSpecModifierTest extends Alien4CloudToscaTest {
         assertEquals(spec.getConfig().get(CONFIG_KEY), CONFIG_VALUE);
     }
 
+    private static class NodeIdSpecModifier implements EntitySpecModifier {
+        @Override
+        public void apply(EntitySpec<?> entitySpec, String nodeId, ToscaApplication toscaApplication) {
+            entitySpec.configure(CONFIG_KEY, nodeId);
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+    }
+
+    @Test
+    public void testParallelBuildMatchesSequential() {
+        Alien4CloudApplication application = mock(Alien4CloudApplication.class);
+        List<String> nodeIds = MutableList.of();
+        for (int i = 0; i < 8; i++) {
+            nodeIds.add("compute" + i);
+            nodeIds.add("software" + i);
+            when(alien4CloudFacade.getParentId("software" + i, application)).thenReturn("compute" + i);
+        }
+        when(application.getNodeIds()).thenReturn(nodeIds);
+        when(application.getNodeName(anyString())).thenAnswer(invocation -> Optional.of(invocation.getArgument(0)));
+
+        String sequential = describe(new Alien4CloudApplicationSpecsBuilder(mgmt, new TestEntitySpecFactory(), ImmutableList.of(new NodeIdSpecModifier()), alien4CloudFacade)
+                .getSpecs(application));
+
+        SpecBuildPool pool = new SpecBuildPool(4);
+        try {
+            String parallel = describe(new Alien4CloudApplicationSpecsBuilder(mgmt, new TestEntitySpecFactory(), ImmutableList.of(new NodeIdSpecModifier()), alien4CloudFacade, new ToscaMetrics(), pool)
+                    .getSpecs(application));
+            assertEquals(parallel, sequential);
+        } finally {
+            pool.shutdown();
+        }
+        assertTrue(sequential.startsWith("compute0{compute0}[software0{software0}[]],compute1"), sequential);
+    }
+
+    @Test
+    public void testRecordsModifierTimingsAndNodeCount() {
+        Alien4CloudApplication application = mock(Alien4CloudApplication.class);
+        when(application.getNodeIds()).thenReturn(ImmutableList.of("node1", "node2"));
+        when(application.getNodeName(anyString())).thenReturn(Optional.of("Test"));
+        ToscaMetrics metrics = new ToscaMetrics();
+
+        new Alien4CloudApplicationSpecsBuilder(mgmt, new TestEntitySpecFactory(), ImmutableList.of(new TestSpecModifier()), alien4CloudFacade, metrics)
+                .getSpecs(application);
+
+        assertEquals(metrics.getCount(ToscaMetrics.NODES), 2);
+        assertEquals(metrics.getTiming(ToscaMetrics.MODIFIER_PREFIX + TestSpecModifier.class.getSimpleName()).getCount(), 2);
+    }
+
+    private static String describe(Map<String, EntitySpec<?>> specs) {
+        List<String> result = MutableList.of();
+        for (EntitySpec<?> spec : specs.values()) {
+            result.add(describe(spec));
+        }
+        return Joiner.on(",").join(result);
+    }
+
+    private static String describe(EntitySpec<?> spec) {
+        List<String> children = MutableList.of();
+        for (EntitySpec<?> child : spec.getChildren()) {
+            children.add(describe(child));
+        }
+        return spec.getDisplayName() + "{" + spec.getConfig().get(CONFIG_KEY) + "}[" + Joiner.on(",").join(children) + "]";
+    }
+
 }
@@ -0,0 +1,89 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.Csar;
+import alien4cloud.tosca.parser.ParsingResult;
+
+public class ArchiveDigestRegistryTest {
+
+    private static final String DIGEST = "0123456789abcdef";
+
+    private File dir;
+    private File file;
+    private Csar csar;
+    private ICSARRepositorySearchService repositorySearchService;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        dir = Os.newTempDir(getClass());
+        file = new File(dir, "digests.properties");
+        csar = mock(Csar.class);
+        when(csar.getName()).thenReturn("archive");
+        when(csar.getVersion()).thenReturn("1.0.0");
+        repositorySearchService = mock(ICSARRepositorySearchService.class);
+        when(repositorySearchService.getArchive("archive:1.0.0")).thenReturn(csar);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ParsingResult<Csar> uploaded(Csar archive) {
+        ParsingResult<Csar> result = mock(ParsingResult.class);
+        when(result.getResult()).thenReturn(archive);
+        return result;
+    }
+
+    @Test
+    public void testDigestsSurviveRestart() {
+        new ArchiveDigestRegistry(file, repositorySearchService).put(DIGEST, uploaded(csar));
+        assertTrue(file.exists());
+
+        ArchiveDigestRegistry restarted = new ArchiveDigestRegistry(file, repositorySearchService);
+        assertTrue(restarted.get(DIGEST).isPresent());
+        assertSame(restarted.get(DIGEST).get().getResult(), csar);
+        assertTrue(restarted.get(DIGEST).get().getContext().getParsingErrors().isEmpty());
+        assertEquals(restarted.getEntries().get(DIGEST).getName(), "archive");
+    }
+
+    @Test
+    public void testDigestOfArchiveNoLongerIndexedIsDiscarded() {
+        ArchiveDigestRegistry registry = new ArchiveDigestRegistry(file, repositorySearchService);
+        registry.put(DIGEST, uploaded(csar));
+        when(repositorySearchService.getArchive("archive:1.0.0")).thenReturn(null);
+        assertFalse(registry.get(DIGEST).isPresent());
+        assertTrue(registry.getEntries().isEmpty());
+        assertTrue(new ArchiveDigestRegistry(file, repositorySearchService).getEntries().isEmpty());
+    }
+
+    @Test
+    public void testIndexingArchiveDiscardsItsDigests() {
+        ArchiveDigestRegistry registry = new ArchiveDigestRegistry(file, repositorySearchService);
+        registry.put(DIGEST, uploaded(csar));
+        Csar other = mock(Csar.class);
+        when(other.getName()).thenReturn("other");
+        when(other.getVersion()).thenReturn("1.0.0");
+        registry.onArchiveIndexed(other);
+        assertTrue(registry.get(DIGEST).isPresent());
+
+        registry.onArchiveIndexed(csar);
+        assertFalse(registry.get(DIGEST).isPresent());
+    }
+
+}
@@ -0,0 +1,127 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+
+import alien4cloud.component.repository.ICsarRepositry;
+import alien4cloud.model.components.Csar;
+
+public class ArchiveRevisionIndexTest {
+
+    private static final String DEFINITIONS = "tosca_definitions_version: tosca_simple_yaml_1_0\n";
+
+    private File dir;
+    private Path stored;
+    private ICsarRepositry csarRepository;
+    private ArchiveRevisionIndex index;
+    private int archives;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        dir = Os.newTempDir(getClass());
+        stored = new File(dir, "repository/archive/1.0.0-SNAPSHOT/archive.csar").toPath();
+        Files.createDirectories(stored.getParent());
+        csarRepository = mock(ICsarRepositry.class);
+        when(csarRepository.getCSAR("archive", "1.0.0-SNAPSHOT")).thenReturn(stored);
+        index = new ArchiveRevisionIndex(csarRepository);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    private Csar csar(String version) {
+        Csar csar = mock(Csar.class);
+        when(csar.getName()).thenReturn("archive");
+        when(csar.getVersion()).thenReturn(version);
+        return csar;
+    }
+
+    private Path zip(String definitions, String script) throws Exception {
+        Map<String, String> entries = MutableMap.of("definitions.yaml", definitions, "scripts/start.sh", script);
+        Path result = new File(dir, "archive" + (archives++) + ".zip").toPath();
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(result.toFile()))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testScriptOnlyChangeUpdatesArtifactsWithoutUpload() throws Exception {
+        Csar csar = csar("1.0.0-SNAPSHOT");
+        Path first = zip(DEFINITIONS, "echo one");
+        Files.copy(first, stored);
+        index.record(first, csar);
+
+        Path second = zip(DEFINITIONS, "echo two");
+        Optional<Csar> updated = index.updateArtifactsOnly(second);
+        assertTrue(updated.isPresent());
+        assertSame(updated.get(), csar);
+        Path script = stored.getParent().resolve(CsarArtifactIndex.EXPANDED_FOLDER_NAME).resolve("scripts/start.sh");
+        assertEquals(new String(Files.readAllBytes(script), StandardCharsets.UTF_8), "echo two");
+        assertEquals(Files.readAllBytes(stored), Files.readAllBytes(second));
+        // the new files were renamed into place, leaving nothing beside them
+        assertEquals(MutableSet.copyOf(stored.getParent().toFile().list()), MutableSet.of("archive.csar", CsarArtifactIndex.EXPANDED_FOLDER_NAME));
+    }
+
+    @Test
+    public void testDefinitionChangeNeedsUpload() throws Exception {
+        Path first = zip(DEFINITIONS, "echo one");
+        Files.copy(first, stored);
+        index.record(first, csar("1.0.0-SNAPSHOT"));
+
+        assertFalse(index.updateArtifactsOnly(zip(DEFINITIONS + "description: changed\n", "echo two")).isPresent());
+        // identical content is left to the upload
+        assertFalse(index.updateArtifactsOnly(zip(DEFINITIONS, "echo one")).isPresent());
+    }
+
+    @Test
+    public void testReleasesAndReindexedArchivesNeedUpload() throws Exception {
+        index.record(zip(DEFINITIONS, "echo one"), csar("1.0.0"));
+        assertFalse(index.updateArtifactsOnly(zip(DEFINITIONS, "echo two")).isPresent());
+
+        Csar snapshot = csar("1.0.0-SNAPSHOT");
+        Path first = zip(DEFINITIONS, "echo one");
+        Files.copy(first, stored);
+        index.record(first, snapshot);
+        index.onArchiveIndexed(snapshot);
+        assertFalse(index.updateArtifactsOnly(zip(DEFINITIONS, "echo two")).isPresent());
+    }
+
+    @Test
+    public void testDefinitionsDigestIgnoresOtherFiles() throws Exception {
+        String withOne = ArchiveRevisionIndex.definitionsDigest(ArchiveRevisionIndex.fileDigests(zip(DEFINITIONS, "echo one")));
+        String withTwo = ArchiveRevisionIndex.definitionsDigest(ArchiveRevisionIndex.fileDigests(zip(DEFINITIONS, "echo two")));
+        String changed = ArchiveRevisionIndex.definitionsDigest(ArchiveRevisionIndex.fileDigests(zip(DEFINITIONS + "#\n", "echo one")));
+        assertEquals(withTwo, withOne);
+        assertFalse(changed.equals(withOne));
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.time.Duration;
+import org.apache.brooklyn.util.time.Time;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+
+import alien4cloud.component.repository.ICsarRepositry;
+import alien4cloud.exception.NotFoundException;
+import alien4cloud.model.components.Csar;
+
+public class CsarArtifactIndexTest {
+
+    private File dir;
+    private ICsarRepositry repository;
+    private CsarArtifactIndex index;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        dir = Os.newTempDir(getClass());
+        repository = mock(ICsarRepositry.class);
+        index = new CsarArtifactIndex(repository);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        Os.deleteRecursively(dir);
+    }
+
+    private Path newCsar(String name) throws Exception {
+        File csar = new File(dir, name + ".csar");
+        FileUtils.writeStringToFile(csar, "zip", Charsets.UTF_8);
+        FileUtils.writeStringToFile(new File(dir, "expanded/scripts/create.sh"), "echo create", Charsets.UTF_8);
+        return csar.toPath();
+    }
+
+    @Test
+    public void testFindsArtifactsInExpandedFolder() throws Exception {
+        Path csar = newCsar("my-archive");
+        when(repository.getCSAR("my-archive", "1.0")).thenReturn(csar);
+
+        assertEquals(index.getCsarPath("my-archive", "1.0").get(), csar);
+        CsarArtifactIndex.Artifact script = index.getArtifact("my-archive", "1.0", "scripts/create.sh").get();
+        assertEquals(script.getPath().toFile().getCanonicalFile(), new File(dir, "expanded/scripts/create.sh").getCanonicalFile());
+        assertEquals(script.getSize(), "echo create".length());
+        assertFalse(script.isDirectory());
+        assertTrue(index.getArtifact("my-archive", "1.0", "./scripts//create.sh").isPresent());
+        assertTrue(index.getArtifact("my-archive", "1.0", "scripts").get().isDirectory());
+        assertFalse(index.getArtifact("my-archive", "1.0", "scripts/missing.sh").isPresent());
+
+        // the repository is consulted once per archive
+        verify(repository, times(1)).getCSAR("my-archive", "1.0");
+    }
+
+    @Test
+    public void testUnknownArchiveIsAbsentUntilIndexed() throws Exception {
+        when(repository.getCSAR("my-archive", "1.0")).thenThrow(new NotFoundException("not there"));
+        assertFalse(index.getCsarPath("my-archive", "1.0").isPresent());
+        assertFalse(index.getCsarPath("my-archive", "1.0").isPresent());
+        assertFalse(index.getCsarPath(null, null).isPresent());
+        verify(repository, times(1)).getCSAR("my-archive", "1.0");
+
+        Path csar = newCsar("my-archive");
+        doReturn(csar).when(repository).getCSAR("my-archive", "1.0");
+        index.onArchiveIndexed(new Csar("my-archive", "1.0"));
+        assertTrue(index.getArtifact("my-archive", "1.0", "scripts/create.sh").isPresent());
+    }
+
+    @Test
+    public void testUnknownArchiveIsProbedAgainAfterTtl() throws Exception {
+        index = new CsarArtifactIndex(repository, CsarArtifactIndex.DEFAULT_MAXIMUM_ARCHIVES, Duration.ZERO);
+        when(repository.getCSAR("my-archive", "1.0")).thenThrow(new NotFoundException("not there"));
+        assertFalse(index.getCsarPath("my-archive", "1.0").isPresent());
+
+        // added to the repository without going through the Uploader
+        Path csar = newCsar("my-archive");
+        doReturn(csar).when(repository).getCSAR("my-archive", "1.0");
+        Time.sleep(Duration.millis(1));
+        assertEquals(index.getCsarPath("my-archive", "1.0").get(), csar);
+    }
+
+    @Test
+    public void testNumberOfArchivesIsBounded() throws Exception {
+        index = new CsarArtifactIndex(repository, 1, CsarArtifactIndex.DEFAULT_ABSENT_TTL);
+        Path csar = newCsar("my-archive");
+        when(repository.getCSAR("my-archive", "1.0")).thenReturn(csar);
+        when(repository.getCSAR("my-archive", "2.0")).thenReturn(csar);
+
+        index.getCsarPath("my-archive", "1.0");
+        index.getCsarPath("my-archive", "2.0");
+        index.getCsarPath("my-archive", "1.0");
+        verify(repository, times(2)).getCSAR("my-archive", "1.0");
+    }
+
+}
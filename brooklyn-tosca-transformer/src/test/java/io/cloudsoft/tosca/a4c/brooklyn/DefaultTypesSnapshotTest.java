@@ -0,0 +1,86 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.Csar;
+
+public class DefaultTypesSnapshotTest {
+
+    private static final String URL = "classpath://tosca-normative-types.zip";
+
+    private File dir;
+    private File file;
+    private ICSARRepositorySearchService repositorySearchService;
+    private Csar normative;
+    private Csar other;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        dir = Os.newTempDir(getClass());
+        file = new File(dir, "snapshot.properties");
+        repositorySearchService = mock(ICSARRepositorySearchService.class);
+        normative = csar("tosca-normative-types", "1.0.0");
+        other = csar("other-types", "1.0.0");
+        when(repositorySearchService.getArchive("tosca-normative-types:1.0.0")).thenReturn(normative);
+        when(repositorySearchService.getArchive("other-types:1.0.0")).thenReturn(other);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    private static Csar csar(String name, String version) {
+        Csar csar = mock(Csar.class);
+        when(csar.getName()).thenReturn(name);
+        when(csar.getVersion()).thenReturn(version);
+        return csar;
+    }
+
+    @Test
+    public void testSameContentIndexedAfterRestart() {
+        new DefaultTypesSnapshot(file, repositorySearchService).put(URL, "abc", ImmutableList.of(normative, other));
+
+        DefaultTypesSnapshot restarted = new DefaultTypesSnapshot(file, repositorySearchService);
+        assertTrue(restarted.isIndexed(URL, "abc"));
+        assertFalse(restarted.isIndexed(URL, "def"));
+        assertFalse(restarted.isIndexed("classpath://other.zip", "abc"));
+    }
+
+    @Test
+    public void testNotIndexedWhenAnArchiveIsMissing() {
+        DefaultTypesSnapshot snapshot = new DefaultTypesSnapshot(file, repositorySearchService);
+        snapshot.put(URL, "abc", ImmutableList.of(normative, other));
+        when(repositorySearchService.getArchive("other-types:1.0.0")).thenReturn(null);
+
+        assertFalse(snapshot.isIndexed(URL, "abc"));
+        when(repositorySearchService.getArchive("other-types:1.0.0")).thenReturn(other);
+        assertFalse(snapshot.isIndexed(URL, "abc"), "entry should have been discarded");
+    }
+
+    @Test
+    public void testNotIndexedWhenAnArchiveIsReplaced() {
+        DefaultTypesSnapshot snapshot = new DefaultTypesSnapshot(file, repositorySearchService);
+        snapshot.put(URL, "abc", ImmutableList.of(normative));
+        snapshot.onArchiveIndexed(other);
+        assertTrue(snapshot.isIndexed(URL, "abc"));
+
+        snapshot.onArchiveIndexed(normative);
+        assertFalse(snapshot.isIndexed(URL, "abc"));
+        assertFalse(new DefaultTypesSnapshot(file, repositorySearchService).isIndexed(URL, "abc"));
+    }
+
+}
@@ -0,0 +1,112 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.CSARDependency;
+import alien4cloud.model.components.Csar;
+import alien4cloud.model.components.IndexedArtifactToscaElement;
+import alien4cloud.model.components.IndexedNodeType;
+import alien4cloud.model.components.IndexedRelationshipType;
+
+public class IndexedToscaElementCacheTest {
+
+    private static final Set<CSARDependency> DEPENDENCIES = ImmutableSet.of(new CSARDependency("tosca-normative-types", "1.0.0.wd06-SNAPSHOT"));
+
+    private ICSARRepositorySearchService searchService;
+    private IndexedToscaElementCache cache;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        searchService = mock(ICSARRepositorySearchService.class);
+        cache = new IndexedToscaElementCache(searchService);
+    }
+
+    @Test
+    public void testRepeatedLookupIsCached() {
+        IndexedNodeType type = new IndexedNodeType();
+        when(searchService.getRequiredElementInDependencies(eq(IndexedArtifactToscaElement.class), eq("tosca.nodes.Compute"), any()))
+                .thenReturn(type);
+
+        assertSame(cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "tosca.nodes.Compute", DEPENDENCIES), type);
+        assertSame(cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "tosca.nodes.Compute", ImmutableSet.copyOf(DEPENDENCIES)), type);
+
+        verify(searchService, times(1)).getRequiredElementInDependencies(eq(IndexedArtifactToscaElement.class), eq("tosca.nodes.Compute"), any());
+        assertEquals(cache.getStats().hitCount(), 1);
+        assertEquals(cache.getStats().missCount(), 1);
+    }
+
+    @Test
+    public void testKeyIncludesClassAndDependencies() {
+        when(searchService.getRequiredElementInDependencies(any(), anyString(), any())).thenReturn(new IndexedRelationshipType());
+
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+        cache.getRequiredElementInDependencies(IndexedRelationshipType.class, "t", DEPENDENCIES);
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", ImmutableSet.<CSARDependency>of());
+
+        verify(searchService, times(3)).getRequiredElementInDependencies(any(), anyString(), any());
+        assertEquals(cache.size(), 3);
+    }
+
+    @Test
+    public void testNullIsNotCached() {
+        assertNull(cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "missing", DEPENDENCIES));
+        assertNull(cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "missing", DEPENDENCIES));
+        verify(searchService, times(2)).getRequiredElementInDependencies(any(), anyString(), any());
+    }
+
+    @Test
+    public void testIndexingADependencyInvalidates() {
+        when(searchService.getRequiredElementInDependencies(any(), anyString(), any())).thenReturn(new IndexedNodeType());
+
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", ImmutableSet.<CSARDependency>of());
+        cache.onArchiveIndexed(new Csar("tosca-normative-types", "1.0.0.wd06-SNAPSHOT"));
+        assertEquals(cache.size(), 1);
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+
+        verify(searchService, times(3)).getRequiredElementInDependencies(any(), anyString(), any());
+    }
+
+    @Test
+    public void testUnknownArchiveInvalidatesAll() {
+        when(searchService.getRequiredElementInDependencies(any(), anyString(), any())).thenReturn(new IndexedNodeType());
+
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", ImmutableSet.<CSARDependency>of());
+        cache.onArchiveIndexed(null);
+        assertEquals(cache.size(), 0);
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+
+        verify(searchService, times(3)).getRequiredElementInDependencies(any(), anyString(), any());
+    }
+
+    @Test
+    public void testIndexingAnotherArchiveKeepsEntries() {
+        when(searchService.getRequiredElementInDependencies(any(), anyString(), any())).thenReturn(new IndexedNodeType());
+
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+        cache.onArchiveIndexed(new Csar("my-archive", "1.0"));
+        assertEquals(cache.size(), 1);
+        cache.getRequiredElementInDependencies(IndexedArtifactToscaElement.class, "t", DEPENDENCIES);
+
+        verify(searchService, times(1)).getRequiredElementInDependencies(any(), anyString(), any());
+    }
+
+}
@@ -0,0 +1,198 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.stream.Streams;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+public class LinkedResourceCacheTest {
+
+    private File dir;
+    private File cacheDir;
+    private ToscaMetrics metrics;
+    private LinkedResourceCache cache;
+    private HttpServer server;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        dir = Os.newTempDir(getClass());
+        cacheDir = new File(dir, "cache");
+        metrics = new ToscaMetrics();
+        cache = new LinkedResourceCache(cacheDir, 1024, 1024, metrics);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (server != null) server.stop(0);
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    private String read(String url) {
+        return Streams.readFullyStringAndClose(cache.getResourceFromUrl(url, ResourceUtils.create(this)));
+    }
+
+    private void assertCached(LinkedResourceCache cache, String url) throws Exception {
+        long hits = metrics.getCount(LinkedResourceCache.HITS);
+        InputStream in = cache.open(url);
+        assertNotNull(in);
+        in.close();
+        assertEquals(metrics.getCount(LinkedResourceCache.HITS), hits + 1);
+    }
+
+    private File write(String name, String contents, long modified) throws Exception {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        file.setLastModified(modified);
+        return file;
+    }
+
+    @Test
+    public void testFileRevalidatedByModificationTime() throws Exception {
+        File file = write("a.yaml", "one", 100_000L);
+        String url = file.toURI().toString();
+        assertEquals(read(url), "one");
+        assertEquals(read(url), "one");
+        assertEquals(metrics.getCount(LinkedResourceCache.MISSES), 1);
+        assertEquals(metrics.getCount(LinkedResourceCache.HITS), 1);
+
+        write("a.yaml", "two", 200_000L);
+        assertEquals(read(url), "two");
+        assertEquals(metrics.getCount(LinkedResourceCache.MISSES), 2);
+        assertEquals(cache.getHitRate(), 1.0 / 3);
+    }
+
+    @Test
+    public void testHttpRevalidatedByETag() throws Exception {
+        final List<String> conditions = MutableList.of();
+        final String[] body = {"version-1"};
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plan.yaml", exchange -> {
+            String etag = "\"" + body[0] + "\"";
+            String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+            conditions.add(String.valueOf(condition));
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(condition)) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = body[0].getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/plan.yaml";
+
+        assertEquals(read(url), "version-1");
+        assertEquals(read(url), "version-1");
+        body[0] = "version-2";
+        assertEquals(read(url), "version-2");
+
+        assertEquals(conditions, MutableList.of("null", "\"version-1\"", "\"version-1\""));
+        assertEquals(metrics.getCount(LinkedResourceCache.HITS), 1);
+        assertEquals(metrics.getCount(LinkedResourceCache.MISSES), 2);
+    }
+
+    @Test
+    public void testHttpWithoutValidatorsStreamedOnce() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/plan.yaml", exchange -> {
+            requests.incrementAndGet();
+            byte[] bytes = "unversioned".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+            exchange.close();
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/plan.yaml";
+
+        assertEquals(read(url), "unversioned");
+        assertEquals(requests.get(), 1);
+        assertEquals(read(url), "unversioned");
+        assertEquals(requests.get(), 2);
+        assertEquals(cache.size(), 0);
+        assertEquals(metrics.getCount(LinkedResourceCache.MISSES), 2);
+    }
+
+    @Test
+    public void testHttpErrorPassedToCallerWithoutRefetching() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/missing.yaml", exchange -> {
+            requests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        server.start();
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/missing.yaml";
+
+        try {
+            read(url);
+            fail("expected the server's error");
+        } catch (RuntimeException e) {
+            assertNotNull(Exceptions.getFirstThrowableMatching(e, t -> String.valueOf(t.getMessage()).contains("404")), "e=" + e);
+        }
+        assertEquals(requests.get(), 1);
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvictedWhenFull() throws Exception {
+        String content = new String(new char[400]).replace('\0', 'x');
+        String a = write("a", content, 100_000L).toURI().toString();
+        String b = write("b", content, 100_000L).toURI().toString();
+        String c = write("c", content, 100_000L).toURI().toString();
+        read(a);
+        read(b);
+        read(a);
+        read(c);
+
+        assertEquals(cache.size(), 2);
+        assertEquals(cache.getResidentBytes(), 800);
+        assertCached(cache, a);
+        assertEquals(metrics.getCount(LinkedResourceCache.MISSES), 3);
+        read(b);
+        assertEquals(metrics.getCount(LinkedResourceCache.MISSES), 4);
+    }
+
+    @Test
+    public void testEntriesSurviveRestartAndOthersNotCached() throws Exception {
+        String url = write("a.yaml", "one", 100_000L).toURI().toString();
+        read(url);
+
+        LinkedResourceCache restarted = new LinkedResourceCache(cacheDir, 1024, 1024, metrics);
+        assertEquals(restarted.size(), 1);
+        assertCached(restarted, url);
+
+        assertNull(restarted.open("classpath://brooklyn/default.catalog.bom"));
+        assertNull(new LinkedResourceCache(cacheDir, 0, 1024, metrics).open(url));
+    }
+
+}
@@ -0,0 +1,108 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.api.mgmt.classloading.BrooklynClassLoadingContext;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableSet;
+
+import alien4cloud.model.components.CSARDependency;
+import alien4cloud.model.components.Csar;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+public class ParsedPlanCacheTest {
+
+    private static final String PLAN = "tosca_definitions_version: tosca_simple_yaml_1_0\ntopology_template: {}";
+
+    private ToscaMetrics metrics;
+    private ParsedPlanCache cache;
+    private AtomicInteger parses;
+    private BrooklynClassLoadingContext context;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        metrics = new ToscaMetrics();
+        cache = new ParsedPlanCache(10, Duration.ONE_HOUR, metrics);
+        parses = new AtomicInteger();
+        context = mock(BrooklynClassLoadingContext.class);
+    }
+
+    private Callable<Csar> parser(final String archiveName) {
+        return () -> {
+            parses.incrementAndGet();
+            Csar csar = mock(Csar.class);
+            when(csar.getName()).thenReturn(archiveName);
+            when(csar.getVersion()).thenReturn("1.0.0");
+            when(csar.getDependencies()).thenReturn(ImmutableSet.of(new CSARDependency("tosca-normative-types", "1.0.0")));
+            return csar;
+        };
+    }
+
+    @Test
+    public void testSamePlanAndContextParsedOnce() {
+        Csar first = cache.get(PLAN, context, parser("app"));
+        Csar second = cache.get(PLAN, context, parser("app"));
+        assertSame(second, first);
+        assertEquals(parses.get(), 1);
+        assertEquals(metrics.getCount(ParsedPlanCache.HITS), 1);
+        assertEquals(metrics.getCount(ParsedPlanCache.MISSES), 1);
+    }
+
+    @Test
+    public void testDifferentPlanOrContextParsedAgain() {
+        Csar first = cache.get(PLAN, context, parser("app"));
+        assertNotSame(cache.get(PLAN + "\n", context, parser("app")), first);
+        assertNotSame(cache.get(PLAN, mock(BrooklynClassLoadingContext.class), parser("app")), first);
+        assertEquals(parses.get(), 3);
+    }
+
+    @Test
+    public void testFailuresAreNotCached() {
+        try {
+            cache.get(PLAN, context, () -> {
+                throw new IllegalStateException("simulated parse failure");
+            });
+            fail("expected parse failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "simulated parse failure");
+        }
+        cache.get(PLAN, context, parser("app"));
+        assertEquals(parses.get(), 1);
+    }
+
+    @Test
+    public void testIndexingArchiveDiscardsPlansUsingIt() {
+        Csar first = cache.get(PLAN, context, parser("app"));
+        cache.onArchiveIndexed(new Csar("other", "1.0.0"));
+        assertSame(cache.get(PLAN, context, parser("app")), first);
+
+        cache.onArchiveIndexed(first);
+        Csar second = cache.get(PLAN, context, parser("app"));
+        assertNotSame(second, first);
+
+        cache.onArchiveIndexed(new Csar("tosca-normative-types", "1.0.0"));
+        assertNotSame(cache.get(PLAN, context, parser("app")), second);
+        assertEquals(parses.get(), 3);
+    }
+
+    @Test
+    public void testZeroSizeDisablesCache() {
+        cache = new ParsedPlanCache(0, Duration.ONE_HOUR, metrics);
+        cache.get(PLAN, context, parser("app"));
+        cache.get(PLAN, context, parser("app"));
+        assertEquals(parses.get(), 2);
+        assertEquals(cache.size(), 0);
+    }
+
+}
@@ -0,0 +1,116 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.util.exceptions.UserFacingException;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ScratchStoreTest {
+
+    private File dir;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        dir = Os.newTempDir(getClass());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    @Test
+    public void testLeaseDeletedWhenClosed() throws Exception {
+        ScratchStore scratch = new ScratchStore(dir.getAbsolutePath(), 0, Duration.ONE_SECOND);
+        File file;
+        try (ScratchStore.Lease lease = scratch.lease("my upload")) {
+            file = lease.newFile("archive.zip");
+            Files.write(file.toPath(), new byte[100]);
+            assertEquals(scratch.getBytesInUse(), 100);
+            assertEquals(scratch.getFilesInUse(), 1);
+            assertEquals(scratch.getLeaseCount(), 1);
+        }
+        assertFalse(file.exists());
+        assertEquals(scratch.getBytesInUse(), 0);
+        assertEquals(scratch.getFilesInUse(), 0);
+        assertEquals(scratch.getLeaseCount(), 0);
+    }
+
+    @Test
+    public void testUsageRemeasuredWhenLeaseClosed() throws Exception {
+        ScratchStore scratch = new ScratchStore(dir.getAbsolutePath(), 0, Duration.ONE_SECOND);
+        try (ScratchStore.Lease kept = scratch.lease("kept")) {
+            Files.write(kept.newFile("archive.zip").toPath(), new byte[100]);
+            ScratchStore.Lease closed = scratch.lease("closed");
+            Files.write(closed.newFile("archive.zip").toPath(), new byte[50]);
+            assertEquals(scratch.getBytesInUse(), 150);
+            assertEquals(scratch.getFilesInUse(), 2);
+
+            // the measurement just taken is not reused once a lease has closed
+            closed.close();
+            assertEquals(scratch.getBytesInUse(), 100);
+            assertEquals(scratch.getFilesInUse(), 1);
+        }
+    }
+
+    @Test
+    public void testOnlyOwnDirectoryDeleted() throws Exception {
+        File other = new File(dir, "other.zip");
+        Files.write(other.toPath(), new byte[10]);
+        ScratchStore scratch = new ScratchStore(dir.getAbsolutePath(), 0, Duration.ONE_SECOND);
+        assertEquals(scratch.getRoot().getParentFile(), dir.getAbsoluteFile());
+        assertTrue(scratch.getRoot().isDirectory());
+        assertTrue(other.exists());
+
+        scratch.close();
+        assertFalse(scratch.getRoot().exists());
+        assertTrue(other.exists());
+        assertTrue(dir.isDirectory());
+    }
+
+    @Test
+    public void testLeaseRefusedWhileQuotaUsed() throws Exception {
+        ScratchStore scratch = new ScratchStore(dir.getAbsolutePath(), 100, Duration.millis(100));
+        try (ScratchStore.Lease lease = scratch.lease("big")) {
+            Files.write(lease.newFile("archive.zip").toPath(), new byte[100]);
+            try {
+                scratch.lease("refused");
+                fail("expected lease to be refused");
+            } catch (UserFacingException e) {
+                assertTrue(e.getMessage().contains("100 of 100 bytes"), "e=" + e);
+            }
+        }
+        scratch.lease("admitted").close();
+    }
+
+    @Test
+    public void testLeaseWaitsForSpace() throws Exception {
+        final ScratchStore scratch = new ScratchStore(dir.getAbsolutePath(), 100, Duration.TEN_SECONDS);
+        ScratchStore.Lease big = scratch.lease("big");
+        Files.write(big.newFile("archive.zip").toPath(), new byte[100]);
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            scratch.lease("waiting").close();
+            admitted.countDown();
+        });
+        waiter.start();
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        big.close();
+        assertTrue(admitted.await(5, TimeUnit.SECONDS));
+        waiter.join();
+    }
+
+}
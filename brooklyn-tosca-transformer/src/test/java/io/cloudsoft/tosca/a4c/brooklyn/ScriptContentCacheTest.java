@@ -0,0 +1,94 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+public class ScriptContentCacheTest {
+
+    private File dir;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        dir = Os.newTempDir(getClass());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        Os.deleteRecursively(dir);
+    }
+
+    @Test
+    public void testFileIsReadOnceWhileUnchanged() throws Exception {
+        ScriptContentCache cache = new ScriptContentCache();
+        File script = new File(dir, "create.sh");
+        FileUtils.writeStringToFile(script, "echo hello", Charsets.UTF_8);
+
+        assertEquals(cache.getFileContents(script).get(), "echo hello");
+        assertEquals(cache.getFileContents(script).get(), "echo hello");
+
+        assertEquals(cache.getStats().hitCount(), 1);
+        assertEquals(cache.getStats().missCount(), 1);
+        assertEquals(cache.getResidentBytes(), 2 * "echo hello".length());
+    }
+
+    @Test
+    public void testChangedFileIsReread() throws Exception {
+        ScriptContentCache cache = new ScriptContentCache();
+        File script = new File(dir, "configure.sh");
+        FileUtils.writeStringToFile(script, "echo one", Charsets.UTF_8);
+        assertEquals(cache.getFileContents(script).get(), "echo one");
+
+        FileUtils.writeStringToFile(script, "echo three", Charsets.UTF_8);
+        assertTrue(script.setLastModified(script.lastModified() + 10000));
+        assertEquals(cache.getFileContents(script).get(), "echo three");
+    }
+
+    @Test
+    public void testFileRefIsRereadWhenChanged() throws Exception {
+        ScriptContentCache cache = new ScriptContentCache();
+        File script = new File(dir, "start.sh");
+        FileUtils.writeStringToFile(script, "echo one", Charsets.UTF_8);
+        ResourceUtils loader = ResourceUtils.create(this);
+        assertEquals(cache.getResourceContents(script.getPath(), loader), "echo one");
+        assertEquals(cache.getResourceContents(script.toURI().toString(), loader), "echo one");
+
+        FileUtils.writeStringToFile(script, "echo three", Charsets.UTF_8);
+        assertTrue(script.setLastModified(script.lastModified() + 10000));
+        assertEquals(cache.getResourceContents(script.getPath(), loader), "echo three");
+        assertEquals(cache.getResourceContents(script.toURI().toString(), loader), "echo three");
+    }
+
+    @Test
+    public void testMissingFileIsAbsent() {
+        ScriptContentCache cache = new ScriptContentCache();
+        assertFalse(cache.getFileContents(new File(dir, "missing.sh")).isPresent());
+        assertEquals(cache.size(), 0);
+    }
+
+    @Test
+    public void testEvictsToStayWithinByteBound() throws Exception {
+        // far too small to hold all of the scripts
+        ScriptContentCache cache = new ScriptContentCache(3000);
+        for (int i = 0; i < 5; i++) {
+            File script = new File(dir, "script" + i + ".sh");
+            FileUtils.writeStringToFile(script, Strings.repeat("x", 1000), Charsets.UTF_8);
+            cache.getFileContents(script);
+        }
+        assertTrue(cache.getResidentBytes() <= 3000, "resident=" + cache.getResidentBytes());
+        assertEquals(cache.getResidentBytes(), 2000 * cache.size());
+    }
+
+}
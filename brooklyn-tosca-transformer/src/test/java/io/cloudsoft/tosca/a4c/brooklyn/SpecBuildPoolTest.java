@@ -0,0 +1,97 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.brooklyn.api.mgmt.entitlement.EntitlementContext;
+import org.apache.brooklyn.core.mgmt.entitlement.Entitlements;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class SpecBuildPoolTest {
+
+    private SpecBuildPool pool;
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (pool != null) pool.shutdown();
+        SecurityContextHolder.clearContext();
+        Entitlements.clearEntitlementContext();
+    }
+
+    @Test
+    public void testResultsInOrderOfTasks() {
+        pool = new SpecBuildPool(4);
+        List<Callable<Integer>> tasks = MutableList.of();
+        for (int i = 0; i < 20; i++) {
+            final int id = i;
+            tasks.add(() -> {
+                Thread.sleep(20 - id);
+                return id;
+            });
+        }
+        List<Integer> results = pool.invokeAll(tasks);
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).intValue(), i);
+        }
+        assertEquals(results.size(), 20);
+    }
+
+    @Test
+    public void testTasksHaveCallersContexts() {
+        pool = new SpecBuildPool(2);
+        Authentication caller = new TestingAuthenticationToken("caller", "password");
+        SecurityContextHolder.getContext().setAuthentication(caller);
+        EntitlementContext entitlementContext = mock(EntitlementContext.class);
+        Entitlements.setEntitlementContext(entitlementContext);
+
+        List<Object[]> seen = pool.invokeAll(ImmutableList.<Callable<Object[]>>of(
+                () -> new Object[] { SecurityContextHolder.getContext().getAuthentication(), Entitlements.getEntitlementContext() },
+                () -> new Object[] { SecurityContextHolder.getContext().getAuthentication(), Entitlements.getEntitlementContext() }));
+        for (Object[] contexts : seen) {
+            assertSame(contexts[0], caller);
+            assertSame(contexts[1], entitlementContext);
+        }
+
+        // and the workers do not keep them
+        Entitlements.clearEntitlementContext();
+        SecurityContextHolder.clearContext();
+        List<Object> after = pool.invokeAll(ImmutableList.<Callable<Object>>of(
+                Entitlements::getEntitlementContext, Entitlements::getEntitlementContext));
+        assertNull(after.get(0));
+        assertNull(after.get(1));
+    }
+
+    @Test
+    public void testTaskExceptionsRethrown() {
+        pool = new SpecBuildPool(2);
+        try {
+            pool.invokeAll(ImmutableList.<Callable<String>>of(() -> "ok", () -> {
+                throw new IllegalStateException("simulated failure");
+            }));
+            fail("expected failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "simulated failure");
+        }
+    }
+
+    @Test
+    public void testSequentialRunsOnCaller() {
+        pool = new SpecBuildPool(1);
+        Thread caller = Thread.currentThread();
+        assertSame(pool.invokeAll(ImmutableList.<Callable<Thread>>of(Thread::currentThread)).get(0), caller);
+    }
+
+}
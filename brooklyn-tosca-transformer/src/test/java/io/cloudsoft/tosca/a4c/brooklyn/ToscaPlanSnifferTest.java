@@ -0,0 +1,115 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.Map;
+
+import org.apache.brooklyn.util.yaml.Yamls;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class ToscaPlanSnifferTest {
+
+    @DataProvider(name = "plans")
+    public Object[][] plans() {
+        return new Object[][] {
+                {"tosca_definitions_version: tosca_simple_yaml_1_0\ntopology_template: {}"},
+                {"description: x\ntopology_template:\n  node_templates:\n    a: {type: tosca.nodes.Compute}"},
+                {"topology_name: t\nnode_types:\n  - [a, {b: c}]"},
+                {"node_types: {}"},
+                {"services:\n- type: org.apache.brooklyn.entity.stock.BasicApplication\n  brooklyn.config:\n    topology_template: x"},
+                {"name: camp\nservices: []"},
+        };
+    }
+
+    @Test(dataProvider = "plans")
+    public void testScoreMatchesParsedMap(String plan) {
+        ToscaPlanSniffer.Result sniffed = ToscaPlanSniffer.sniff(plan);
+        assertTrue(sniffed.isYaml(), "plan=" + plan);
+        assertTrue(sniffed.isMap(), "plan=" + plan);
+        assertEquals(sniffed.getToscaScore(), ToscaParser.isToscaScore((Map<?, ?>) Yamls.parseAll(plan).iterator().next()), "plan=" + plan);
+    }
+
+    @Test
+    public void testStopsAtDefinitionsVersion() {
+        // the rest of the plan is not valid YAML, so reading it would fail
+        ToscaPlanSniffer.Result sniffed = ToscaPlanSniffer.sniff("tosca_definitions_version: tosca_simple_yaml_1_0\nfoo: [bar\n");
+        assertTrue(sniffed.isYaml());
+        assertFalse(sniffed.isComplete());
+        assertEquals(sniffed.getToscaScore(), 1.0);
+        assertEquals(sniffed.get(ToscaPlanSniffer.TOSCA_DEFINITIONS_VERSION), "tosca_simple_yaml_1_0");
+    }
+
+    @Test
+    public void testLinks() {
+        ToscaPlanSniffer.Result sniffed = ToscaPlanSniffer.sniff("csar_link: classpath://x.zip");
+        assertTrue(sniffed.isLink());
+        assertEquals(sniffed.get(ToscaPlanSniffer.CSAR_LINK), "classpath://x.zip");
+
+        assertTrue(ToscaPlanSniffer.sniff("tosca_link: http://example.com/x.yaml").isLink());
+        assertFalse(ToscaPlanSniffer.sniff("csar_link: x\nname: y").isLink());
+        assertNull(ToscaPlanSniffer.sniff("csar_link: {url: x}").get(ToscaPlanSniffer.CSAR_LINK));
+    }
+
+    @Test
+    public void testClassificationReusedForSamePlanInstance() {
+        String plan = "tosca_definitions_version: tosca_simple_yaml_1_0";
+        ToscaPlanSniffer.Result first = ToscaPlanSniffer.classify(plan);
+        assertSame(ToscaPlanSniffer.classify(plan), first);
+        // an equal plan from elsewhere is read again
+        assertNotSame(ToscaPlanSniffer.classify(new String(plan)), first);
+    }
+
+    @Test
+    public void testNotMapOrNotYaml() {
+        for (String plan : ImmutableList.of("just a string", "- a\n- b", "---\n")) {
+            ToscaPlanSniffer.Result sniffed = ToscaPlanSniffer.sniff(plan);
+            assertTrue(sniffed.isYaml(), "plan=" + plan);
+            assertFalse(sniffed.isMap(), "plan=" + plan);
+            assertEquals(sniffed.getToscaScore(), 0.0);
+        }
+        for (String plan : ImmutableList.of("", "a: [b", "a: b\nc")) {
+            ToscaPlanSniffer.Result sniffed = ToscaPlanSniffer.sniff(plan);
+            assertFalse(sniffed.isYaml(), "plan=" + plan);
+            assertFalse(sniffed.isMap(), "plan=" + plan);
+        }
+    }
+
+    @Test
+    public void testReadKeysBuildsOnlyWantedKeys() {
+        String definitions = "tosca_definitions_version: tosca_simple_yaml_1_0\n"
+                + "metadata: {template_name: types, template_version: !!float 1.0}\n"
+                + "node_types:\n  a: !!java.net.URL [\"http://example.com\"]\n"
+                + "imports:\n- root:1.0.0\n- network: {file: network.yaml}\n";
+        Map<String, Object> keys = ToscaPlanSniffer.readKeys(new StringReader(definitions), ImmutableSet.of("metadata", "imports", "template_name"));
+        assertEquals(keys, ImmutableMap.of(
+                "metadata", ImmutableMap.of("template_name", "types", "template_version", "1.0"),
+                "imports", ImmutableList.of("root:1.0.0", ImmutableMap.of("network", ImmutableMap.of("file", "network.yaml")))));
+
+        assertTrue(ToscaPlanSniffer.readKeys(new StringReader("- a\n- b"), ImmutableSet.of("a")).isEmpty());
+        assertTrue(ToscaPlanSniffer.readKeys(new StringReader(""), ImmutableSet.of("a")).isEmpty());
+    }
+
+    @Test
+    public void testReadKeyNames() {
+        String plan = "tosca_definitions_version: tosca_simple_yaml_1_0\n"
+                + "metadata: { template_name: app }\n"
+                + "topology_template:\n"
+                + "  node_templates:\n"
+                + "    server: { type: tosca.nodes.Compute }\n";
+        assertEquals(ImmutableList.copyOf(ToscaPlanSniffer.readKeyNames(new StringReader(plan))),
+                ImmutableList.of("tosca_definitions_version", "metadata", "topology_template"));
+        assertTrue(ToscaPlanSniffer.readKeyNames(new StringReader("- a\n- b")).isEmpty());
+    }
+
+}
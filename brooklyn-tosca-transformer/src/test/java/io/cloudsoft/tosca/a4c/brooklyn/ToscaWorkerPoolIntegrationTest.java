@@ -0,0 +1,75 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.brooklyn.api.typereg.RegisteredType;
+import org.apache.brooklyn.core.typereg.RegisteredTypes;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.apache.brooklyn.util.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.annotations.Test;
+
+import io.cloudsoft.tosca.a4c.Alien4CloudIntegrationTest;
+import io.cloudsoft.tosca.a4c.brooklyn.plan.ToscaTypePlanTransformer;
+
+/**
+ * Load test of {@link ToscaWorkerPool}: with many more callers than workers, transforming real plans through
+ * {@link ToscaTypePlanTransformer#createSpec} should gain throughput as the parallelism grows, up to the
+ * number of processors.
+ */
+public class ToscaWorkerPoolIntegrationTest extends Alien4CloudIntegrationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ToscaWorkerPoolIntegrationTest.class);
+
+    private static final int CALLERS = 32;
+    private static final int TASKS_PER_WORKER = 5;
+
+    @Test
+    public void testThroughputScalesWithParallelism() throws Exception {
+        String plan = new ResourceUtils(mgmt).getResourceAsString("classpath://templates/simple-web-server.yaml");
+        // warm up A4C and the JIT before measuring
+        throughput(plan, 1);
+        double single = throughput(plan, 1);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int parallelism : new int[] {2, 4}) {
+            double measured = throughput(plan, parallelism);
+            double scaling = measured / single;
+            LOG.info("TOSCA worker pool: parallelism {} gives {} plans/s, {}x single", parallelism, measured, scaling);
+            assertTrue(scaling >= 0.5 * Math.min(parallelism, processors), "parallelism=" + parallelism + "; scaling=" + scaling);
+        }
+    }
+
+    private double throughput(String plan, int parallelism) throws Exception {
+        // createSpec runs inline when already on a worker, so this pool decides how many transform at once
+        ToscaWorkerPool pool = new ToscaWorkerPool(parallelism, CALLERS, Duration.FIVE_MINUTES);
+        ExecutorService callers = Executors.newFixedThreadPool(CALLERS);
+        try {
+            int tasks = parallelism * TASKS_PER_WORKER;
+            long start = System.nanoTime();
+            List<Future<?>> results = MutableList.of();
+            for (int i = 0; i < tasks; i++) {
+                // a distinct plan each time, so that it is parsed rather than taken from the parsed plan cache
+                RegisteredType type = RegisteredTypes.spec("test" + i, "1.0",
+                        new ToscaTypePlanTransformer.ToscaTypeImplementationPlan(plan + "\n# plan " + i + " " + start + "\n"), null);
+                results.add(callers.submit(() -> pool.call(() -> transformer.createSpec(type, null))));
+            }
+            for (Future<?> result : results) {
+                assertNotNull(result.get(5, TimeUnit.MINUTES));
+            }
+            return tasks / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            callers.shutdownNow();
+            pool.shutdown();
+        }
+    }
+
+}
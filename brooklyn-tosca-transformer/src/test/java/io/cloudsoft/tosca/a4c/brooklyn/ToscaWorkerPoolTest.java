@@ -0,0 +1,152 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.exceptions.UserFacingException;
+import org.apache.brooklyn.util.time.Duration;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ToscaWorkerPoolTest {
+
+    private ToscaWorkerPool pool;
+    private ExecutorService callers;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        callers = Executors.newCachedThreadPool();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (pool != null) pool.shutdown();
+        if (callers != null) callers.shutdownNow();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testTaskHasScopedAdminContext() {
+        pool = new ToscaWorkerPool(1, 0, Duration.ONE_SECOND);
+        Authentication caller = new TestingAuthenticationToken("caller", "password");
+        SecurityContextHolder.getContext().setAuthentication(caller);
+
+        Authentication inTask = pool.call(() -> SecurityContextHolder.getContext().getAuthentication());
+        assertTrue(inTask.getAuthorities().toString().contains("ADMIN"), "authorities=" + inTask.getAuthorities());
+        assertSame(SecurityContextHolder.getContext().getAuthentication(), caller);
+
+        // nested calls run inline, and also leave the outer task's context as it was
+        Authentication afterNested = pool.call(() -> {
+            SecurityContextHolder.getContext().setAuthentication(caller);
+            pool.call(() -> null);
+            return SecurityContextHolder.getContext().getAuthentication();
+        });
+        assertSame(afterNested, caller);
+    }
+
+    @Test
+    public void testAtMostParallelismTasksRun() throws Exception {
+        pool = new ToscaWorkerPool(2, 10, Duration.ONE_MINUTE);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> results = MutableList.of();
+        for (int i = 0; i < 8; i++) {
+            final int id = i;
+            results.add(callers.submit(() -> pool.call(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return id;
+            })));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(results.get(i).get(30, TimeUnit.SECONDS).intValue(), i);
+        }
+        assertEquals(maxRunning.get(), 2);
+    }
+
+    @Test
+    public void testRefusesWhenFull() throws Exception {
+        pool = new ToscaWorkerPool(1, 0, Duration.millis(100));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> blocking = callers.submit(() -> pool.call(() -> {
+            started.countDown();
+            return release.await(30, TimeUnit.SECONDS);
+        }));
+        assertTrue(started.await(30, TimeUnit.SECONDS));
+        try {
+            pool.call(() -> "refused");
+            fail("expected task to be refused");
+        } catch (UserFacingException e) {
+            assertTrue(e.getMessage().contains("1 running"), "message=" + e.getMessage());
+        }
+        release.countDown();
+        assertTrue(blocking.get(30, TimeUnit.SECONDS));
+        assertEquals(pool.call(() -> "admitted"), "admitted");
+    }
+
+    @Test
+    public void testInterruptedCallerKeepsPermitUntilTaskEnds() throws Exception {
+        pool = new ToscaWorkerPool(1, 0, Duration.ONE_SECOND);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Future<Object> caller = callers.submit(() -> pool.call(() -> {
+            started.countDown();
+            // ignores interruption, as a transformation blocked in A4C may
+            while (true) {
+                try {
+                    return release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // keep running
+                }
+            }
+        }));
+        assertTrue(started.await(30, TimeUnit.SECONDS));
+        caller.cancel(true);
+        try {
+            pool.call(() -> "refused");
+            fail("expected task to be refused while the interrupted caller's task runs");
+        } catch (UserFacingException e) {
+            assertTrue(e.getMessage().contains("1 running"), "message=" + e.getMessage());
+        }
+        release.countDown();
+        assertEquals(pool.call(() -> "admitted"), "admitted");
+    }
+
+    @Test
+    public void testNestedCallRunsInline() {
+        pool = new ToscaWorkerPool(1, 0, Duration.millis(100));
+        String thread = pool.call(() -> pool.call(() -> Thread.currentThread().getName()));
+        assertTrue(thread.startsWith("brooklyn-tosca-worker-"), "thread=" + thread);
+    }
+
+    @Test
+    public void testTaskExceptionsRethrown() {
+        pool = new ToscaWorkerPool(1, 0, Duration.ONE_SECOND);
+        try {
+            pool.call(() -> {
+                throw new IllegalStateException("simulated failure");
+            });
+            fail("expected failure to be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "simulated failure");
+        }
+    }
+
+}
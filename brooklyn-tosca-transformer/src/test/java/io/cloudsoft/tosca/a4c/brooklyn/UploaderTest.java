@@ -0,0 +1,153 @@
+package io.cloudsoft.tosca.a4c.brooklyn;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.brooklyn.core.BrooklynFeatureEnablement;
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.stream.Streams;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import alien4cloud.component.ICSARRepositorySearchService;
+import alien4cloud.model.components.Csar;
+import alien4cloud.tosca.ArchiveUploadService;
+import alien4cloud.tosca.parser.ParsingContext;
+import alien4cloud.tosca.parser.ParsingResult;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+public class UploaderTest {
+
+    private static final String PLAN = "tosca_definitions_version: tosca_simple_yaml_1_0\n";
+
+    private ArchiveUploadService archiveUploadService;
+    private Uploader uploader;
+    private List<Path> uploaded;
+    private List<Map<String, String>> uploadedEntries;
+    private ParsingResult<Csar> result;
+
+    @BeforeMethod(alwaysRun = true)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        uploaded = MutableList.of();
+        uploadedEntries = MutableList.of();
+        ParsingContext context = mock(ParsingContext.class);
+        when(context.getParsingErrors()).thenReturn(ImmutableList.of());
+        result = mock(ParsingResult.class);
+        when(result.getContext()).thenReturn(context);
+        archiveUploadService = mock(ArchiveUploadService.class);
+        when(archiveUploadService.upload(any(Path.class))).thenAnswer(invocation -> {
+            Path path = invocation.getArgument(0);
+            uploaded.add(path);
+            // read now, as the archive is deleted once uploaded
+            uploadedEntries.add(entries(Files.readAllBytes(path)));
+            return result;
+        });
+        uploader = new Uploader(archiveUploadService);
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        BrooklynFeatureEnablement.clearCache();
+    }
+
+    @Test
+    public void testInMemoryArchiveMatchesDirectoryArchive() {
+        BrooklynFeatureEnablement.enable(Uploader.FEATURE_IN_MEMORY_CSAR);
+        uploader.uploadSingleYaml(Streams.newInputStreamWithContents(PLAN), "my plan");
+        BrooklynFeatureEnablement.disable(Uploader.FEATURE_IN_MEMORY_CSAR);
+        uploader.uploadSingleYaml(Streams.newInputStreamWithContents(PLAN), "my plan");
+
+        assertEquals(uploadedEntries.size(), 2);
+        assertEquals(uploadedEntries.get(0), uploadedEntries.get(1));
+        assertEquals(uploadedEntries.get(0).keySet().size(), 1, "entries=" + uploadedEntries.get(0));
+        assertEquals(uploadedEntries.get(0).values().iterator().next(), PLAN);
+    }
+
+    @Test
+    public void testInMemoryArchiveIsDeletedAfterUpload() {
+        BrooklynFeatureEnablement.enable(Uploader.FEATURE_IN_MEMORY_CSAR);
+        uploader.uploadSingleYaml(Streams.newInputStreamWithContents(PLAN), "plan");
+        assertEquals(uploaded.size(), 1);
+        assertFalse(Files.exists(uploaded.get(0)), "archive not deleted: " + uploaded.get(0));
+    }
+
+    @Test
+    public void testStreamedArchiveIsDeletedAfterUpload() throws Exception {
+        ScratchStore scratch = new ScratchStore();
+        uploader = new Uploader(archiveUploadService, ImmutableList.of(), new ToscaMetrics(), null, null, scratch);
+        byte[] archive = Uploader.singleEntryArchive("plan.yaml", Streams.newInputStreamWithContents(PLAN));
+        uploader.uploadArchive(new ByteArrayInputStream(archive), "archive");
+
+        assertEquals(uploaded.size(), 1);
+        assertFalse(Files.exists(uploaded.get(0)), "archive not deleted: " + uploaded.get(0));
+        assertEquals(scratch.getLeaseCount(), 0);
+        assertEquals(scratch.getRoot().list().length, 0);
+    }
+
+    @Test
+    public void testSingleEntryArchive() throws Exception {
+        byte[] archive = Uploader.singleEntryArchive("plan.yaml", new ByteArrayInputStream(PLAN.getBytes(StandardCharsets.UTF_8)));
+        Map<String, String> entries = entries(archive);
+        assertEquals(entries.get("plan.yaml"), PLAN);
+        assertNull(entries.get("plan.yml"));
+    }
+
+    @Test
+    public void testArchiveWithIndexedDigestIsNotUploadedAgain() throws Exception {
+        Csar csar = mock(Csar.class);
+        when(csar.getName()).thenReturn("archive");
+        when(csar.getVersion()).thenReturn("1.0.0");
+        when(result.getResult()).thenReturn(csar);
+        ICSARRepositorySearchService repositorySearchService = mock(ICSARRepositorySearchService.class);
+        when(repositorySearchService.getArchive("archive:1.0.0")).thenReturn(csar);
+        uploader = new Uploader(archiveUploadService, ImmutableList.of(), new ToscaMetrics(),
+                new ArchiveDigestRegistry((File) null, repositorySearchService), null, new ScratchStore());
+        byte[] archive = Uploader.singleEntryArchive("plan.yaml", Streams.newInputStreamWithContents(PLAN));
+
+        assertSame(uploader.uploadArchive(new ByteArrayInputStream(archive), "first").getResult(), csar);
+        assertSame(uploader.uploadArchive(new ByteArrayInputStream(archive), "second").getResult(), csar);
+        assertEquals(uploaded.size(), 1);
+
+        uploader.uploadArchive(new ByteArrayInputStream(Uploader.singleEntryArchive("plan.yaml",
+                Streams.newInputStreamWithContents(PLAN + "\n"))), "changed");
+        assertEquals(uploaded.size(), 2);
+    }
+
+    private static Map<String, String> entries(byte[] archive) throws IOException {
+        Map<String, String> result = MutableMap.of();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    // ArchiveBuilder may root entries at "./"
+                    String name = entry.getName().replaceFirst("^\\.?/", "");
+                    result.put(name, new String(ByteStreams.toByteArray(zip), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return result;
+    }
+
+}
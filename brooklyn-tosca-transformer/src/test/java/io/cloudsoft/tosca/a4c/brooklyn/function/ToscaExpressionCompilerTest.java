@@ -0,0 +1,85 @@
+package io.cloudsoft.tosca.a4c.brooklyn.function;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.apache.brooklyn.camp.brooklyn.spi.dsl.BrooklynDslDeferredSupplier;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import alien4cloud.model.components.ConcatPropertyValue;
+import alien4cloud.model.components.FunctionPropertyValue;
+import alien4cloud.model.components.IValue;
+import alien4cloud.model.components.ScalarPropertyValue;
+import alien4cloud.paas.model.PaaSNodeTemplate;
+import alien4cloud.tosca.normative.ToscaFunctionConstants;
+
+public class ToscaExpressionCompilerTest {
+
+    private ToscaExpressionCompiler compiler;
+    private ToscaEvaluationContext context;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        compiler = new ToscaExpressionCompiler();
+        context = new ToscaEvaluationContext(mock(PaaSNodeTemplate.class), ImmutableMap.<String, PaaSNodeTemplate>of(), ImmutableMap.of("SELF", "my_server"));
+    }
+
+    @Test
+    public void testCompilesEachValueOnce() {
+        ScalarPropertyValue value = new ScalarPropertyValue("hello");
+        ToscaExpression expression = compiler.compile(value);
+        assertSame(compiler.compile(value), expression);
+        assertEquals(expression.evaluate(context).get(), "hello");
+    }
+
+    @Test
+    public void testGetInputResolvesFromConfig() {
+        FunctionPropertyValue value = new FunctionPropertyValue(ToscaFunctionConstants.GET_INPUT, ImmutableList.of("port"));
+        Object result = compiler.compile(value).evaluate(context).get();
+        assertTrue(result instanceof BrooklynDslDeferredSupplier, "result=" + result);
+        assertTrue(result.toString().contains("config(\"port\")"), "result=" + result);
+    }
+
+    @Test
+    public void testGetOperationOutputWaitsOnPublishedSensor() {
+        FunctionPropertyValue value = new FunctionPropertyValue(ToscaFunctionConstants.GET_OPERATION_OUTPUT,
+                ImmutableList.of("SELF", "tosca.interfaces.node.lifecycle.Standard", "create", "generated_password"));
+        Object result = compiler.compile(value).evaluate(context).get();
+        assertTrue(result instanceof BrooklynDslDeferredSupplier, "result=" + result);
+        assertTrue(result.toString().contains("my_server"), "result=" + result);
+        assertTrue(result.toString().contains("tosca.output.standard.create.generated_password"), "result=" + result);
+    }
+
+    @Test
+    public void testGetOperationOutputWithoutOutputIsAbsent() {
+        FunctionPropertyValue value = new FunctionPropertyValue(ToscaFunctionConstants.GET_OPERATION_OUTPUT,
+                ImmutableList.of("SELF", "Standard", "create"));
+        assertFalse(compiler.compile(value).evaluate(context).isPresent());
+    }
+
+    @Test
+    public void testConcatOfFunctions() {
+        ConcatPropertyValue value = mock(ConcatPropertyValue.class);
+        when(value.getParameters()).thenReturn(ImmutableList.<IValue>of(
+                new ScalarPropertyValue("http://"),
+                new FunctionPropertyValue(ToscaFunctionConstants.GET_ATTRIBUTE, ImmutableList.of("SELF", "ip_address"))));
+        Object result = compiler.compile(value).evaluate(context).get();
+        assertTrue(result instanceof BrooklynDslDeferredSupplier, "result=" + result);
+        assertTrue(result.toString().contains("ip_address"), "result=" + result);
+    }
+
+    @Test
+    public void testUnsupportedFunctionIsAbsent() {
+        FunctionPropertyValue value = new FunctionPropertyValue("get_artifact", ImmutableList.of("SELF", "script"));
+        assertFalse(compiler.compile(value).evaluate(context).isPresent());
+    }
+
+}
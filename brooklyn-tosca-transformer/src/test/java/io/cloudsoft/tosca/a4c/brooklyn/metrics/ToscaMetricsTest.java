@@ -0,0 +1,87 @@
+package io.cloudsoft.tosca.a4c.brooklyn.metrics;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ToscaMetricsTest {
+
+    private ToscaMetrics metrics;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() {
+        metrics = new ToscaMetrics();
+    }
+
+    @Test
+    public void testRecordsTimingsIntoHistogram() {
+        for (int i = 0; i < 98; i++) {
+            metrics.recordTime(ToscaMetrics.PARSE, 3, TimeUnit.MILLISECONDS);
+        }
+        metrics.recordTime(ToscaMetrics.PARSE, 150, TimeUnit.MILLISECONDS);
+        metrics.recordTime(ToscaMetrics.PARSE, 700, TimeUnit.MILLISECONDS);
+
+        TimingStats stats = metrics.getTiming(ToscaMetrics.PARSE);
+        assertEquals(stats.getCount(), 100);
+        assertEquals(stats.getTotalMillis(), 98 * 3 + 150 + 700, 0.001);
+        assertEquals(stats.getMaxMillis(), 700, 0.001);
+        assertEquals(stats.getP50Millis(), 5, 0.001);
+        assertEquals(stats.getP90Millis(), 5, 0.001);
+        assertEquals(stats.getP99Millis(), 200, 0.001);
+    }
+
+    @Test
+    public void testTimerRecordsOnClose() {
+        try (ToscaMetrics.Timer t = metrics.time(ToscaMetrics.SPECS)) {
+            assertEquals(metrics.getTiming(ToscaMetrics.SPECS).getCount(), 0);
+        }
+        assertEquals(metrics.getTiming(ToscaMetrics.SPECS).getCount(), 1);
+        assertTrue(metrics.getTimings().containsKey(ToscaMetrics.SPECS), "timings=" + metrics.getTimings());
+    }
+
+    @Test
+    public void testCountersAndReset() {
+        metrics.increment(ToscaMetrics.NODES, 3);
+        metrics.increment(ToscaMetrics.NODES, 2);
+        metrics.increment(ToscaMetrics.RELATIONSHIPS, 1);
+        assertEquals(metrics.getCount(ToscaMetrics.NODES), 5);
+        assertEquals(metrics.getCounters().get(ToscaMetrics.RELATIONSHIPS), Long.valueOf(1));
+
+        metrics.reset();
+        assertEquals(metrics.getCount(ToscaMetrics.NODES), 0);
+        assertTrue(metrics.getCounters().isEmpty());
+    }
+
+    @Test
+    public void testRegistersAsMXBean() throws Exception {
+        ManagementContext mgmt = mock(ManagementContext.class);
+        when(mgmt.getManagementNodeId()).thenReturn("testnode");
+        ToscaMetrics registered = new ToscaMetrics(mgmt);
+        ObjectName name = new ObjectName("io.cloudsoft.tosca:type=ToscaMetrics,managementNode=" + ObjectName.quote("testnode"));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        registered.registerMBean();
+        try {
+            registered.increment(ToscaMetrics.POLICIES_ADDED, 2);
+            assertTrue(server.isRegistered(name));
+            assertTrue(server.getAttribute(name, "Counters") != null);
+            assertTrue(server.getAttribute(name, "Timings") != null);
+        } finally {
+            registered.unregisterMBean();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+}
@@ -0,0 +1,74 @@
+package io.cloudsoft.tosca.a4c.brooklyn.plan;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.brooklyn.core.typereg.UnsupportedTypePlanException;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.time.Duration;
+import org.testng.annotations.Test;
+
+public class PlatformWarmUpTest {
+
+    @Test
+    public void testBackgroundInitialisationAwaited() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        PlatformWarmUp warmUp = PlatformWarmUp.start(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw Exceptions.propagate(e);
+            }
+        }, "test-warm-up");
+
+        assertEquals(warmUp.getState(), PlatformWarmUp.State.INITIALISING);
+        assertFalse(warmUp.isReady());
+        assertTrue(warmUp.getStatus().startsWith("initialising for "), warmUp.getStatus());
+        try {
+            warmUp.await(Duration.millis(50));
+            fail("expected timeout");
+        } catch (UnsupportedTypePlanException e) {
+            assertTrue(e.getMessage().contains("still initialising"), "e=" + e);
+        }
+
+        release.countDown();
+        warmUp.await(Duration.TEN_SECONDS);
+        assertTrue(warmUp.isReady());
+        assertTrue(warmUp.getFuture().isDone());
+        assertTrue(warmUp.getStatus().startsWith("ready after "), warmUp.getStatus());
+    }
+
+    @Test
+    public void testBackgroundFailureReported() throws Exception {
+        PlatformWarmUp warmUp = PlatformWarmUp.start(() -> {
+            throw new IllegalStateException("simulated elasticsearch failure");
+        }, "test-warm-up");
+        try {
+            warmUp.await(Duration.TEN_SECONDS);
+            fail("expected failure");
+        } catch (UnsupportedTypePlanException e) {
+            assertTrue(e.getMessage().contains("simulated elasticsearch failure"), "e=" + e);
+        }
+        assertEquals(warmUp.getState(), PlatformWarmUp.State.FAILED);
+        assertTrue(warmUp.getError() instanceof IllegalStateException, "error=" + warmUp.getError());
+        assertTrue(warmUp.getStatus().contains("simulated elasticsearch failure"), warmUp.getStatus());
+    }
+
+    @Test
+    public void testSynchronousInitialisationRethrows() {
+        assertTrue(PlatformWarmUp.run(() -> { }).isReady());
+        try {
+            PlatformWarmUp.run(() -> {
+                throw new IllegalStateException("simulated failure");
+            });
+            fail("expected failure");
+        } catch (IllegalStateException e) {
+            assertEquals(e.getMessage(), "simulated failure");
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package io.cloudsoft.tosca.a4c.brooklyn.plan;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
@@ -38,6 +39,7 @@ import org.apache.brooklyn.core.mgmt.internal.LocalManagementContext;
 import org.apache.brooklyn.core.mgmt.internal.ManagementContextInternal;
 import org.apache.brooklyn.core.sensor.Sensors;
 import org.apache.brooklyn.core.sensor.StaticSensor;
+import org.apache.brooklyn.core.sensor.ssh.SshCommandSensor;
 import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
 import org.apache.brooklyn.core.test.policy.TestPolicy;
 import org.apache.brooklyn.enricher.stock.Transformer;
@@ -72,6 +74,7 @@ import alien4cloud.tosca.parser.ParsingException;
 import alien4cloud.utils.FileUtil;
 import io.cloudsoft.tosca.a4c.Alien4CloudIntegrationTest;
 import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.function.OperationOutputs;
 import io.cloudsoft.tosca.a4c.brooklyn.util.EntitySpecs;
 
 @Test(groups="Broken")  // TOSCA support is awaiting release of TOSCA-13
@@ -802,6 +805,29 @@ public class ToscaTypePlanTransformerIntegrationTest extends Alien4CloudIntegrat
         });
     }
 
+    @Test
+    public void testGetOperationOutputFunctionInTopology() throws Exception {
+        EntitySpec<? extends Application> app = create("classpath://templates/get_operation_output-function.yaml");
+        assertNotNull(app);
+
+        EntitySpec<?> foo1 = EntitySpecs.findChildEntitySpecByPlanId(app, "Foo1");
+        EntitySpec<?> foo2 = EntitySpecs.findChildEntitySpecByPlanId(app, "Foo2");
+        String sensor = OperationOutputs.sensorName("Standard", "create", "GENERATED");
+
+        // Foo1's create script writes the output when it exits, and a sensor reads it back
+        assertFlagValueContains(foo1, VanillaSoftwareProcess.INSTALL_COMMAND.getName(), "trap '");
+        assertFlagValueContains(foo1, VanillaSoftwareProcess.INSTALL_COMMAND.getName(), "${GENERATED}");
+        assertFlagValueContains(foo1, VanillaSoftwareProcess.INSTALL_COMMAND.getName(), "Install PostgreSQL");
+        assertEquals(Iterables.size(Iterables.filter(foo1.getInitializers(), SshCommandSensor.class)), 1, "initializers=" + foo1.getInitializers());
+        // no other operation's outputs are read
+        assertFalse(String.valueOf(foo1.getFlags().get(VanillaSoftwareProcess.CUSTOMIZE_COMMAND.getName())).contains("trap '"));
+        assertFalse(String.valueOf(foo2.getFlags().get(VanillaSoftwareProcess.INSTALL_COMMAND.getName())).contains("trap '"));
+
+        // and Foo2's configure input waits on that sensor
+        assertFlagValueContains(foo2, VanillaSoftwareProcess.CUSTOMIZE_COMMAND.getName(), "export generated");
+        assertFlagValueContains(foo2, VanillaSoftwareProcess.CUSTOMIZE_COMMAND.getName(), sensor);
+    }
+
     @Test
     public void testResolvesKeywordInFunction() throws Exception {
         EntitySpec<? extends Application> spec = create("classpath://templates/resolve-keyword-function.yaml");
@@ -0,0 +1,123 @@
+package io.cloudsoft.tosca.a4c.brooklyn.spec;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.brooklyn.api.entity.EntityInitializer;
+import org.apache.brooklyn.api.entity.EntitySpec;
+import org.apache.brooklyn.camp.brooklyn.BrooklynCampConstants;
+import org.apache.brooklyn.core.entity.EntityInternal;
+import org.apache.brooklyn.core.sensor.Sensors;
+import org.apache.brooklyn.core.sensor.ssh.SshCommandSensor;
+import org.apache.brooklyn.core.test.BrooklynAppUnitTestSupport;
+import org.apache.brooklyn.core.test.entity.TestEntity;
+import org.apache.brooklyn.entity.software.base.VanillaSoftwareProcess;
+import org.apache.brooklyn.util.core.task.Tasks;
+import org.apache.brooklyn.util.os.Os;
+import org.apache.brooklyn.util.stream.Streams;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Iterables;
+
+import alien4cloud.model.components.FunctionPropertyValue;
+import alien4cloud.paas.model.PaaSNodeTemplate;
+import alien4cloud.tosca.normative.ToscaFunctionConstants;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaFacade;
+import io.cloudsoft.tosca.a4c.brooklyn.function.OperationOutputs;
+import io.cloudsoft.tosca.a4c.brooklyn.function.ToscaEvaluationContext;
+import io.cloudsoft.tosca.a4c.brooklyn.function.ToscaExpressionCompiler;
+
+public class StandardInterfaceLifecycleModifierTest extends BrooklynAppUnitTestSupport {
+
+    @Mock
+    private ToscaFacade<ToscaApplication> alien4CloudFacade;
+    @Mock
+    private ToscaApplication toscaApplication;
+
+    private File home;
+
+    @BeforeMethod(alwaysRun = true)
+    public void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        home = Os.newTempDir(getClass());
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() throws Exception {
+        try {
+            super.tearDown();
+        } finally {
+            if (home != null) Os.deleteRecursively(home);
+        }
+    }
+
+    @Test
+    public void testCreateScriptPublishesReferencedOutput() throws Exception {
+        when(toscaApplication.getNodeName("db")).thenReturn(Optional.of("db"));
+        when(alien4CloudFacade.getInterfaceOperations("db", toscaApplication)).thenReturn(ImmutableList.of("create", "configure"));
+        when(alien4CloudFacade.getScript(eq("create"), eq("db"), eq(toscaApplication), anyString(), anyString(), any()))
+                .thenReturn(Optional.<Object>of("export PASSWORD=secret"));
+        when(alien4CloudFacade.getScript(eq("configure"), eq("db"), eq(toscaApplication), anyString(), anyString(), any()))
+                .thenReturn(Optional.<Object>of("echo configured"));
+        when(alien4CloudFacade.getLifeCycle("create")).thenReturn(VanillaSoftwareProcess.INSTALL_COMMAND);
+        when(alien4CloudFacade.getLifeCycle("configure")).thenReturn(VanillaSoftwareProcess.CUSTOMIZE_COMMAND);
+        when(alien4CloudFacade.getOperationOutputs("db", toscaApplication)).thenReturn(ImmutableMultimap.of("create", "PASSWORD"));
+
+        EntitySpec<VanillaSoftwareProcess> spec = EntitySpec.create(VanillaSoftwareProcess.class);
+        new StandardInterfaceLifecycleModifier(mgmt, alien4CloudFacade).apply(spec, "db", toscaApplication);
+
+        assertEquals(spec.getFlags().get(VanillaSoftwareProcess.CUSTOMIZE_COMMAND.getName()), "echo configured");
+        String install = (String) spec.getFlags().get(VanillaSoftwareProcess.INSTALL_COMMAND.getName());
+        assertTrue(install.endsWith("\nexport PASSWORD=secret"), "install=" + install);
+
+        EntityInitializer initializer = Iterables.getOnlyElement(spec.getInitializers());
+        assertTrue(initializer instanceof SshCommandSensor, "initializer=" + initializer);
+
+        // what the sensor reads is what the script exported
+        exec(install);
+        String directory = install.substring(install.indexOf(StandardInterfaceLifecycleModifier.OUTPUTS_FOLDER), install.indexOf('"', install.indexOf(StandardInterfaceLifecycleModifier.OUTPUTS_FOLDER)));
+        assertEquals(exec(OperationOutputs.readCommand(directory, "create", "PASSWORD")), "secret");
+    }
+
+    @Test
+    public void testGetOperationOutputResolvesFromPublishedSensor() throws Exception {
+        TestEntity db = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(BrooklynCampConstants.PLAN_ID, "db"));
+        ToscaEvaluationContext context = new ToscaEvaluationContext(null, ImmutableMap.<String, PaaSNodeTemplate>of(), ImmutableMap.of("SELF", "db"));
+        Object value = new ToscaExpressionCompiler().compile(new FunctionPropertyValue(ToscaFunctionConstants.GET_OPERATION_OUTPUT,
+                ImmutableList.of("SELF", "Standard", "create", "PASSWORD"))).evaluate(context).get();
+
+        db.sensors().set(Sensors.newStringSensor(OperationOutputs.sensorName("Standard", "create", "PASSWORD")), "secret");
+        assertEquals(Tasks.resolveValue(value, String.class, ((EntityInternal) db).getExecutionContext()), "secret");
+    }
+
+    private String exec(String script) throws IOException, InterruptedException {
+        ProcessBuilder builder = new ProcessBuilder("bash", "-c", script);
+        builder.environment().put("HOME", home.getAbsolutePath());
+        Process process = builder.redirectErrorStream(true).start();
+        try (InputStream out = process.getInputStream()) {
+            String output = Streams.readFullyString(out);
+            assertEquals(process.waitFor(), 0, "output=" + output);
+            return output;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package io.cloudsoft.tosca.a4c.platform;
+
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.exceptions.Exceptions;
+import org.apache.brooklyn.util.guava.Maybe;
+import org.testng.annotations.Test;
+
+import io.cloudsoft.tosca.a4c.brooklyn.ToscaApplication;
+
+public class Alien4CloudToscaPlatformTest {
+
+    private static final String LINK = "csar_link: classpath://archive.zip";
+    private static final String TYPES = "tosca_definitions_version: tosca_simple_yaml_1_0\nnode_types: {}";
+    private static final String TOPOLOGY = "tosca_definitions_version: tosca_simple_yaml_1_0\ntopology_template: {}";
+    private static final String TYPES_MENTIONING_TOPOLOGY = "tosca_definitions_version: tosca_simple_yaml_1_0\ndescription: types for a topology_template\nnode_types: {}";
+    private static final String BROKEN = "tosca_definitions_version: tosca_simple_yaml_1_0\ntopology_template: broken";
+
+    @Test
+    public void testParseAllParsesDistinctPlansOnceDependenciesFirst() {
+        final List<String> parsed = MutableList.of();
+        Map<String, String> plans = MutableMap.<String, String>builder()
+                .put("app1", TOPOLOGY)
+                .put("app2", TOPOLOGY)
+                .put("types", TYPES)
+                .put("archive1", LINK)
+                .put("archive2", LINK)
+                .build();
+
+        Map<String, Maybe<ToscaApplication>> result = Alien4CloudToscaPlatform.parseAll(plans, plan -> {
+            parsed.add(plan);
+            return mock(ToscaApplication.class);
+        });
+
+        assertEquals(parsed, MutableList.of(LINK, TYPES, TOPOLOGY));
+        assertEquals(MutableList.copyOf(result.keySet()), MutableList.of("app1", "app2", "types", "archive1", "archive2"));
+        assertSame(result.get("app1").get(), result.get("app2").get());
+        assertSame(result.get("archive1").get(), result.get("archive2").get());
+    }
+
+    @Test
+    public void testParseAllOrdersByTopLevelKeys() {
+        final List<String> parsed = MutableList.of();
+        Map<String, String> plans = MutableMap.of("app", TOPOLOGY, "types", TYPES_MENTIONING_TOPOLOGY);
+
+        Alien4CloudToscaPlatform.parseAll(plans, plan -> {
+            parsed.add(plan);
+            return mock(ToscaApplication.class);
+        });
+
+        assertEquals(parsed, MutableList.of(TYPES_MENTIONING_TOPOLOGY, TOPOLOGY));
+    }
+
+    @Test
+    public void testParseAllIsolatesFailures() {
+        Map<String, String> plans = MutableMap.of("broken", BROKEN, "app", TOPOLOGY);
+
+        Map<String, Maybe<ToscaApplication>> result = Alien4CloudToscaPlatform.parseAll(plans, plan -> {
+            if (plan.equals(BROKEN)) throw new IllegalStateException("simulated parse failure");
+            return mock(ToscaApplication.class);
+        });
+
+        assertTrue(result.get("app").isPresent());
+        assertFalse(result.get("broken").isPresent());
+        try {
+            result.get("broken").get();
+            fail("expected the parse failure");
+        } catch (RuntimeException e) {
+            assertTrue(Exceptions.collapseText(e).contains("simulated parse failure"), "e=" + e);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package io.cloudsoft.tosca.a4c.platform;
+
+import static org.testng.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.apache.brooklyn.api.mgmt.ManagementContext;
+import org.apache.brooklyn.core.entity.Entities;
+import org.apache.brooklyn.core.test.entity.LocalManagementContextForTests;
+import org.apache.brooklyn.util.core.ResourceUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testng.annotations.Test;
+
+import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
+
+/**
+ * Times starting the platform from the {@link ComponentIndex} written by the build, against finding the same
+ * components by scanning, as happens when there is no index. The number of beans is logged too: before the index
+ * every component in {@link ComponentIndex#BASE_PACKAGES} was registered.
+ * <p>
+ * On Karaf, compare the "Finished loading Alien4Cloud platform" line logged when the bundle starts, with and
+ * without {@link ComponentIndex#LOCATION} in the bundle.
+ */
+public class ComponentIndexIntegrationTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ComponentIndexIntegrationTest.class);
+
+    @Test
+    public void testStartsFasterFromIndex() throws Exception {
+        Alien4CloudToscaPlatform.grantAdminAuth();
+        // warm up class loading and the JIT, so neither measurement pays for it
+        start(true);
+        long scanned = start(false);
+        long indexed = start(true);
+        LOG.info("Alien4Cloud platform started in {} ms from the component index, {} ms scanning for components", indexed, scanned);
+        assertTrue(indexed < scanned, "indexed=" + indexed + "ms; scanned=" + scanned + "ms");
+    }
+
+    /**
+     * @return how long the platform took to start, in milliseconds, having checked that it can parse a plan
+     */
+    private long start(boolean withIndex) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        ManagementContext mgmt = LocalManagementContextForTests.newInstance();
+        ConfigurableApplicationContext context = null;
+        try {
+            // the platform's class loader is the context loader when it starts
+            thread.setContextClassLoader(withIndex ? original : withoutIndex(original));
+            long start = System.nanoTime();
+            context = (ConfigurableApplicationContext) Alien4CloudSpringContext.newApplicationContext(mgmt);
+            long elapsed = (System.nanoTime() - start) / 1000000;
+            thread.setContextClassLoader(original);
+
+            LOG.info("Alien4Cloud platform {} index has {} bean(s)", withIndex ? "with" : "without", context.getBeanDefinitionCount());
+            parse(context);
+            return elapsed;
+        } finally {
+            thread.setContextClassLoader(original);
+            if (context != null) context.close();
+            Entities.destroyAll(mgmt);
+        }
+    }
+
+    private void parse(ApplicationContext context) throws Exception {
+        String name = "simple-web-server.yaml";
+        context.getBean(Uploader.class).uploadSingleYaml(new ResourceUtils(this).getResourceFromUrl("classpath://templates/" + name), name);
+    }
+
+    private ClassLoader withoutIndex(ClassLoader parent) {
+        return new ClassLoader(parent) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                return ComponentIndex.LOCATION.equals(name) ? null : super.getResourceAsStream(name);
+            }
+        };
+    }
+
+}
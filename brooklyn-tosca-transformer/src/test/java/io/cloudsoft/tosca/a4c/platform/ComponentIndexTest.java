@@ -0,0 +1,128 @@
+package io.cloudsoft.tosca.a4c.platform;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Resource;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.StandardEnvironment;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import alien4cloud.component.CSARRepositorySearchService;
+import alien4cloud.tosca.parser.ToscaParser;
+
+import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
+
+public class ComponentIndexTest {
+
+    interface Plugin {}
+
+    static class Root {
+        @Inject
+        private Dependency dependency;
+        @Resource
+        private Widget widget;
+    }
+
+    static class Dependency {
+        @Autowired
+        Dependency(List<Plugin> plugins, Provider<Helper> helper) {}
+    }
+
+    static class PluginA implements Plugin {}
+
+    static class PluginB implements Plugin {}
+
+    static class Helper {}
+
+    static class Widget {}
+
+    @Configuration
+    static class WidgetConfig {
+        @Bean
+        Widget widget(Helper helper) {
+            return new Widget();
+        }
+    }
+
+    static class Unused {
+        @Inject
+        private Root root;
+    }
+
+    /** Serves the given index in place of any on the test classpath. */
+    private ClassLoader withIndex(final String... lines) {
+        return new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                if (!ComponentIndex.LOCATION.equals(name)) {
+                    return super.getResourceAsStream(name);
+                }
+                return lines.length == 0 ? null : new ByteArrayInputStream(Joiner.on("\n").join(lines).getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    @Test
+    public void testUsedComponentsAreRootsAndWhatTheyInject() {
+        List<Class<?>> candidates = ImmutableList.<Class<?>>of(Root.class, Dependency.class, PluginA.class, PluginB.class,
+                Helper.class, Widget.class, WidgetConfig.class, Unused.class);
+        Set<Class<?>> used = ComponentIndex.used(candidates, Predicates.<Class<?>>equalTo(Root.class));
+        assertEquals(used, ImmutableSet.of(Root.class, Dependency.class, PluginA.class, PluginB.class, Helper.class, Widget.class, WidgetConfig.class));
+    }
+
+    @Test
+    public void testRoots() {
+        assertTrue(ComponentIndex.isRoot(Alien4CloudToscaPlatform.class));
+        assertTrue(ComponentIndex.isRoot(Uploader.class));
+        assertTrue(ComponentIndex.isRoot(ToscaParser.class));
+        assertFalse(ComponentIndex.isRoot(CSARRepositorySearchService.class));
+    }
+
+    @Test
+    public void testPlatformComponentsIncludeThoseInjected() {
+        // what the build writes to the index
+        List<Class<?>> used = ComponentIndex.find(getClass().getClassLoader(), new StandardEnvironment());
+        assertTrue(used.contains(Alien4CloudToscaPlatform.class), "used=" + used);
+        // injected into our facade, though not a root
+        assertTrue(used.contains(CSARRepositorySearchService.class), "used=" + used);
+    }
+
+    @Test
+    public void testIndexedComponentsLoaded() {
+        ClassLoader classLoader = withIndex("# generated", TypeArchiveLoader.class.getName(), "", Uploader.class.getName());
+        Optional<List<Class<?>>> components = ComponentIndex.load(classLoader);
+        assertEquals(components.get(), MutableList.of(TypeArchiveLoader.class, Uploader.class));
+    }
+
+    @Test
+    public void testAbsentWithoutIndex() {
+        assertFalse(ComponentIndex.load(withIndex()).isPresent());
+    }
+
+    @Test
+    public void testAbsentIfComponentMissing() {
+        ClassLoader classLoader = withIndex(TypeArchiveLoader.class.getName(), "io.cloudsoft.tosca.a4c.NoSuchComponent");
+        assertFalse(ComponentIndex.load(classLoader).isPresent());
+    }
+
+}
@@ -0,0 +1,141 @@
+package io.cloudsoft.tosca.a4c.platform;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+import org.apache.brooklyn.util.collections.MutableList;
+import org.apache.brooklyn.util.collections.MutableMap;
+import org.apache.brooklyn.util.collections.MutableSet;
+import org.apache.brooklyn.util.os.Os;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import alien4cloud.model.components.Csar;
+import alien4cloud.tosca.parser.ParsingResult;
+import io.cloudsoft.tosca.a4c.brooklyn.Uploader;
+import io.cloudsoft.tosca.a4c.brooklyn.metrics.ToscaMetrics;
+
+public class TypeArchiveLoaderTest {
+
+    private File dir;
+    private Uploader uploader;
+    private ToscaMetrics metrics;
+    private List<String> uploaded;
+
+    @BeforeMethod(alwaysRun = true)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        dir = Os.newTempDir(getClass());
+        metrics = new ToscaMetrics();
+        uploaded = Collections.synchronizedList(MutableList.<String>of());
+        uploader = mock(Uploader.class);
+        when(uploader.upload(any(Path.class))).thenAnswer(invocation -> {
+            Path zip = invocation.getArgument(0);
+            String name;
+            try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+                name = zipFile.stream().filter(e -> e.getName().endsWith(".yaml")).findFirst().get().getName();
+            }
+            if (name.contains("broken")) {
+                throw new IllegalStateException("simulated upload failure of " + name);
+            }
+            uploaded.add(name.replaceFirst("^.*/", ""));
+            Csar csar = mock(Csar.class);
+            ParsingResult<Csar> result = mock(ParsingResult.class);
+            when(result.getResult()).thenReturn(csar);
+            return result;
+        });
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown() {
+        if (dir != null) Os.deleteRecursively(dir);
+    }
+
+    private Path archive(String name, String... imports) throws Exception {
+        Path archive = new File(dir, "types/" + name).toPath();
+        Files.createDirectories(archive);
+        StringBuilder yaml = new StringBuilder("tosca_definitions_version: tosca_simple_yaml_1_0\n"
+                + "template_name: " + name + "\ntemplate_version: 1.0.0\n");
+        if (imports.length > 0) {
+            yaml.append("imports:\n");
+            for (String imported : imports) {
+                yaml.append("- ").append(imported).append("\n");
+            }
+        }
+        Files.write(archive.resolve(name + ".yaml"), yaml.toString().getBytes(StandardCharsets.UTF_8));
+        return archive;
+    }
+
+    @Test
+    public void testImportsUploadedFirst() throws Exception {
+        Map<String, Path> archives = MutableMap.of(
+                "compute", archive("compute", "root:1.0.0", "network:1.0.0"),
+                "network", archive("network", "root:1.0.0"),
+                "root", archive("root"));
+
+        Map<String, TypeArchiveLoader.Result> results = new TypeArchiveLoader(uploader, metrics, 4).load(archives, dir.toPath().resolve("work"));
+
+        assertEquals(uploaded, MutableList.of("root.yaml", "network.yaml", "compute.yaml"));
+        assertEquals(MutableList.copyOf(results.keySet()), MutableList.of("compute", "network", "root"));
+        for (TypeArchiveLoader.Result result : results.values()) {
+            assertTrue(result.getArchive().isPresent());
+        }
+        assertEquals(metrics.getTiming(TypeArchiveLoader.LOAD).getCount(), 3);
+    }
+
+    @Test
+    public void testFailuresIsolated() throws Exception {
+        Map<String, Path> archives = MutableMap.of(
+                "broken", archive("broken"),
+                "dependent", archive("dependent", "broken:1.0.0"),
+                "other", archive("other"));
+
+        Map<String, TypeArchiveLoader.Result> results = new TypeArchiveLoader(uploader, metrics, 2).load(archives, dir.toPath().resolve("work"));
+
+        assertFalse(results.get("broken").getArchive().isPresent());
+        assertTrue(results.get("broken").getError().getMessage().contains("simulated upload failure"), "error=" + results.get("broken").getError());
+        // attempted regardless, A4C reports a missing import
+        assertTrue(results.get("dependent").getArchive().isPresent());
+        assertTrue(results.get("other").getArchive().isPresent());
+    }
+
+    @Test
+    public void testCyclicImportsStillLoaded() throws Exception {
+        Map<String, Path> archives = MutableMap.of(
+                "a", archive("a", "b:1.0.0"),
+                "b", archive("b", "a:1.0.0"));
+
+        Map<String, TypeArchiveLoader.Result> results = new TypeArchiveLoader(uploader, metrics, 2).load(archives, dir.toPath().resolve("work"));
+
+        assertEquals(MutableSet.copyOf(uploaded), MutableSet.of("a.yaml", "b.yaml"));
+        assertTrue(results.get("a").getArchive().isPresent());
+        assertTrue(results.get("b").getArchive().isPresent());
+    }
+
+    @Test
+    public void testDependenciesFromDefinitions() throws Exception {
+        Map<String, TypeArchiveLoader.Definitions> definitions = MutableMap.of(
+                "compute", TypeArchiveLoader.readDefinitions(archive("compute", "root:1.0.0", "elsewhere:2.0")),
+                "root", TypeArchiveLoader.readDefinitions(archive("root")));
+
+        Map<String, Set<String>> dependencies = TypeArchiveLoader.dependencies(definitions);
+        assertEquals(dependencies.get("compute"), MutableSet.of("root"));
+        assertEquals(dependencies.get("root"), MutableSet.of());
+    }
+
+}
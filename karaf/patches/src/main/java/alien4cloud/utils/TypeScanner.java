@@ -1,6 +1,7 @@
 package alien4cloud.utils;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.springframework.beans.factory.config.BeanDefinition;
@@ -8,6 +9,10 @@ import org.springframework.context.annotation.ClassPathScanningCandidateComponen
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.type.filter.AssignableTypeFilter;
 
+import com.google.common.base.Optional;
+
+import io.cloudsoft.tosca.a4c.patches.ScanIndex;
+
 public final class TypeScanner {
 
     private TypeScanner() {
@@ -20,25 +25,40 @@ public final class TypeScanner {
     }
     
     public static Set<Class<?>> scanTypes(String basePackage, Class<?> targetType) throws ClassNotFoundException {
-        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
-        if (resourceLoader!=null) {
-            scanner.setResourceLoader(resourceLoader);
-        }
-
-        AssignableTypeFilter filter = new AssignableTypeFilter(targetType);
-        scanner.addIncludeFilter(filter);
-        Set<BeanDefinition> beanSet = scanner.findCandidateComponents(basePackage);
-
         Set<Class<?>> classSet = new HashSet<Class<?>>();
-        for (BeanDefinition beanDef : beanSet) {
-            // log.debug("found candidate bean = {}", beanDef.getBeanClassName());
+        for (String className : findCandidates(basePackage, targetType)) {
+            // log.debug("found candidate bean = {}", className);
 
             Class<?> clazz;
 
-            clazz = Class.forName(beanDef.getBeanClassName(), true, Thread.currentThread().getContextClassLoader());
+            clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
             classSet.add(clazz);
         }
 
         return classSet;
     }
+
+    /** The names of the classes assignable to the type, from the build-time index if it covers the package. */
+    private static Set<String> findCandidates(String basePackage, Class<?> targetType) {
+        Optional<ScanIndex> index = ScanIndex.get();
+        if (index.isPresent()) {
+            Optional<Set<String>> indexed = index.get().findAssignable(basePackage, targetType);
+            if (indexed.isPresent()) {
+                return indexed.get();
+            }
+        }
+
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        if (resourceLoader!=null) {
+            scanner.setResourceLoader(resourceLoader);
+        }
+
+        AssignableTypeFilter filter = new AssignableTypeFilter(targetType);
+        scanner.addIncludeFilter(filter);
+        Set<String> classNames = new LinkedHashSet<String>();
+        for (BeanDefinition beanDef : scanner.findCandidateComponents(basePackage)) {
+            classNames.add(beanDef.getBeanClassName());
+        }
+        return classNames;
+    }
 }
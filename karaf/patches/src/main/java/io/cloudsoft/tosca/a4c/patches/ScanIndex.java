@@ -0,0 +1,262 @@
+package io.cloudsoft.tosca.a4c.patches;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.core.type.filter.TypeFilter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * The classes which {@link org.elasticsearch.util.AnnotationScanner} and {@link alien4cloud.utils.TypeScanner}
+ * would find by scanning, written at build time to {@link #LOCATION} with their annotations and supertypes, so that
+ * the scanners need only load the classes which match.
+ * <p>
+ * The build runs {@link #main(String[])} over the packages to index. Packages outside them, or any package when the
+ * index is absent, are still scanned.
+ */
+public final class ScanIndex {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanIndex.class);
+
+    /**
+     * The index: a {@code root <package>} line for each package indexed, then one line per candidate class of the
+     * form {@code <class>|<annotations>|<supertypes>}. A class which could not be loaded when indexing has just its
+     * name, and its package is then scanned.
+     */
+    public static final String LOCATION = "META-INF/brooklyn-tosca.scan-index";
+
+    private static final Splitter FIELDS = Splitter.on('|');
+    private static final Splitter NAMES = Splitter.on(',').omitEmptyStrings();
+
+    private static volatile Optional<ScanIndex> instance;
+
+    private final Set<String> roots;
+    private final Map<String, Set<String>> annotations;
+    private final Map<String, Set<String>> types;
+
+    private ScanIndex(Set<String> roots, Map<String, Set<String>> annotations, Map<String, Set<String>> types) {
+        this.roots = roots;
+        this.annotations = annotations;
+        this.types = types;
+    }
+
+    /**
+     * @return the index in the bundle, read once, or absent if there is none or it cannot be read
+     */
+    public static Optional<ScanIndex> get() {
+        Optional<ScanIndex> result = instance;
+        if (result == null) {
+            synchronized (ScanIndex.class) {
+                result = instance;
+                if (result == null) {
+                    result = instance = load(ScanIndex.class.getClassLoader());
+                }
+            }
+        }
+        return result;
+    }
+
+    static Optional<ScanIndex> load(ClassLoader classLoader) {
+        try (InputStream in = classLoader.getResourceAsStream(LOCATION)) {
+            if (in == null) {
+                LOG.debug("No scan index {}; will scan packages for annotations and types", LOCATION);
+                return Optional.absent();
+            }
+            ScanIndex result = read(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            LOG.debug("Read scan index of {} classes in {}", result.annotations.size(), result.roots);
+            return Optional.of(result);
+        } catch (Exception e) {
+            LOG.warn("Could not read scan index " + LOCATION + "; will scan packages for annotations and types: " + e);
+            return Optional.absent();
+        }
+    }
+
+    @VisibleForTesting
+    static ScanIndex read(BufferedReader reader) throws IOException {
+        Set<String> roots = Sets.newLinkedHashSet();
+        Map<String, Set<String>> annotations = Maps.newLinkedHashMap();
+        Map<String, Set<String>> types = Maps.newLinkedHashMap();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("root ")) {
+                roots.add(line.substring("root ".length()).trim());
+                continue;
+            }
+            List<String> fields = FIELDS.splitToList(line);
+            if (fields.size() == 3) {
+                annotations.put(fields.get(0), ImmutableSet.copyOf(NAMES.split(fields.get(1))));
+                types.put(fields.get(0), ImmutableSet.copyOf(NAMES.split(fields.get(2))));
+            } else {
+                annotations.put(fields.get(0), null);
+                types.put(fields.get(0), null);
+            }
+        }
+        return new ScanIndex(roots, annotations, types);
+    }
+
+    /**
+     * @return the names of the classes in the package with the annotation, directly, inherited or as a
+     * meta-annotation, or absent if the package must be scanned
+     */
+    public Optional<Set<String>> findAnnotated(String packageRoot, Class<? extends Annotation> annotation) {
+        return find(packageRoot, annotation.getName(), annotations);
+    }
+
+    /**
+     * @return the names of the classes in the package assignable to the type, or absent if the package must be scanned
+     */
+    public Optional<Set<String>> findAssignable(String packageRoot, Class<?> type) {
+        return find(packageRoot, type.getName(), types);
+    }
+
+    private Optional<Set<String>> find(String packageRoot, String name, Map<String, Set<String>> index) {
+        if (!covers(packageRoot)) {
+            return Optional.absent();
+        }
+        String prefix = packageRoot + ".";
+        Set<String> result = Sets.newLinkedHashSet();
+        for (Map.Entry<String, Set<String>> entry : index.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            if (entry.getValue() == null) {
+                // scanning would load it, and fail or not as it did when indexing
+                return Optional.absent();
+            }
+            if (entry.getValue().contains(name) || entry.getKey().equals(name)) {
+                result.add(entry.getKey());
+            }
+        }
+        return Optional.of(result);
+    }
+
+    private boolean covers(String packageRoot) {
+        for (String root : roots) {
+            if (packageRoot.equals(root) || packageRoot.startsWith(root + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the classes the scanners would consider in the given packages, and writes the index under the given
+     * output directory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: ScanIndex <classes-directory> <package>...");
+        }
+        File index = new File(args[0], LOCATION);
+        List<String> lines = build(ScanIndex.class.getClassLoader(), Arrays.asList(args).subList(1, args.length));
+        index.getParentFile().mkdirs();
+        Files.write(index.toPath(), lines, StandardCharsets.UTF_8);
+        LOG.info("Wrote scan index of {} lines to {}", lines.size(), index);
+    }
+
+    @VisibleForTesting
+    static List<String> build(ClassLoader classLoader, List<String> roots) {
+        // the candidates of both scanners: concrete, independent classes
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.setResourceLoader(new PathMatchingResourcePatternResolver(classLoader));
+        scanner.addIncludeFilter(new TypeFilter() {
+            @Override
+            public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+                return true;
+            }
+        });
+        List<String> result = Lists.newArrayList();
+        Set<String> classNames = Sets.newTreeSet();
+        for (String root : roots) {
+            result.add("root " + root);
+            for (BeanDefinition candidate : scanner.findCandidateComponents(root)) {
+                classNames.add(candidate.getBeanClassName());
+            }
+        }
+        for (String className : classNames) {
+            Class<?> clazz;
+            try {
+                clazz = Class.forName(className, false, classLoader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                LOG.debug("Could not load " + className + " to index; its package will be scanned: " + e);
+                result.add(className);
+                continue;
+            }
+            result.add(className + "|" + Joiner.on(',').join(annotationsOf(clazz)) + "|" + Joiner.on(',').join(supertypesOf(clazz)));
+        }
+        return result;
+    }
+
+    private static Set<String> annotationsOf(Class<?> clazz) {
+        Set<String> result = Sets.newTreeSet();
+        try {
+            for (Annotation annotation : clazz.getAnnotations()) {
+                addAnnotation(annotation.annotationType(), result);
+            }
+        } catch (LinkageError e) {
+            LOG.debug("Could not read annotations of " + clazz.getName() + ": " + e);
+        }
+        return result;
+    }
+
+    private static void addAnnotation(Class<? extends Annotation> type, Set<String> result) {
+        if (type.getName().startsWith("java.lang.annotation.") || !result.add(type.getName())) {
+            return;
+        }
+        for (Annotation meta : type.getAnnotations()) {
+            addAnnotation(meta.annotationType(), result);
+        }
+    }
+
+    private static Set<String> supertypesOf(Class<?> clazz) {
+        Set<String> result = Sets.newTreeSet();
+        addSupertypes(clazz, result);
+        result.remove(clazz.getName());
+        result.remove(Object.class.getName());
+        return result;
+    }
+
+    private static void addSupertypes(Class<?> type, Set<String> result) {
+        if (type == null || !result.add(type.getName())) {
+            return;
+        }
+        try {
+            addSupertypes(type.getSuperclass(), result);
+            for (Class<?> implemented : type.getInterfaces()) {
+                addSupertypes(implemented, result);
+            }
+        } catch (LinkageError e) {
+            LOG.debug("Could not read supertypes of " + type.getName() + ": " + e);
+        }
+    }
+
+}
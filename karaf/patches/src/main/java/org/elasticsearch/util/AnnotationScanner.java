@@ -2,6 +2,7 @@ package org.elasticsearch.util;
 
 import java.lang.annotation.Annotation;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.elasticsearch.common.logging.ESLogger;
@@ -12,6 +13,10 @@ import org.springframework.context.annotation.ClassPathScanningCandidateComponen
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.type.filter.AnnotationTypeFilter;
 
+import com.google.common.base.Optional;
+
+import io.cloudsoft.tosca.a4c.patches.ScanIndex;
+
 /**
  * Utility to scan a package for classes with a given annotation.
  * 
@@ -37,22 +42,13 @@ public final class AnnotationScanner {
      * @return A set of classes that have the annotation.
      */
     public static Set<Class<?>> scan(String packageRoot, Class<? extends Annotation> anno) {
-        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
-        if (resourceLoader!=null) {
-            scanner.setResourceLoader(resourceLoader);
-        }
-
-        AnnotationTypeFilter filter = new AnnotationTypeFilter(anno);
-        scanner.addIncludeFilter(filter);
-        Set<BeanDefinition> beanSet = scanner.findCandidateComponents(packageRoot);
-
         Set<Class<?>> classSet = new HashSet<Class<?>>();
-        for (BeanDefinition beanDef : beanSet) {
-            LOGGER.debug("found candidate bean = " + beanDef.getBeanClassName());
+        for (String className : findCandidates(packageRoot, anno)) {
+            LOGGER.debug("found candidate bean = " + className);
 
             Class<?> clazz;
             try {
-                clazz = Class.forName(beanDef.getBeanClassName(), true, Thread.currentThread().getContextClassLoader());
+                clazz = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
                 if (clazz.isAnnotationPresent(anno)) {
                     LOGGER.debug("found annotated class, " + clazz.getName());
                     classSet.add(clazz);
@@ -65,6 +61,30 @@ public final class AnnotationScanner {
         return classSet;
     }
 
+    /** The names of the classes with the annotation, from the build-time index if it covers the package. */
+    private static Set<String> findCandidates(String packageRoot, Class<? extends Annotation> anno) {
+        Optional<ScanIndex> index = ScanIndex.get();
+        if (index.isPresent()) {
+            Optional<Set<String>> indexed = index.get().findAnnotated(packageRoot, anno);
+            if (indexed.isPresent()) {
+                return indexed.get();
+            }
+        }
+
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        if (resourceLoader!=null) {
+            scanner.setResourceLoader(resourceLoader);
+        }
+
+        AnnotationTypeFilter filter = new AnnotationTypeFilter(anno);
+        scanner.addIncludeFilter(filter);
+        Set<String> classNames = new LinkedHashSet<String>();
+        for (BeanDefinition beanDef : scanner.findCandidateComponents(packageRoot)) {
+            classNames.add(beanDef.getBeanClassName());
+        }
+        return classNames;
+    }
+
     /**
      * Get an annotation on the class or one of the super classes.
      * 
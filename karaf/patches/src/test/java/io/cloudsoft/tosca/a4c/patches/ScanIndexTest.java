@@ -0,0 +1,162 @@
+package io.cloudsoft.tosca.a4c.patches;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import org.elasticsearch.util.AnnotationScanner;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.core.type.filter.TypeFilter;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import alien4cloud.utils.TypeScanner;
+import io.cloudsoft.tosca.a4c.patches.fixtures.Circle;
+import io.cloudsoft.tosca.a4c.patches.fixtures.Marker;
+import io.cloudsoft.tosca.a4c.patches.fixtures.MetaMarked;
+import io.cloudsoft.tosca.a4c.patches.fixtures.Plain;
+import io.cloudsoft.tosca.a4c.patches.fixtures.Polygon;
+import io.cloudsoft.tosca.a4c.patches.fixtures.Shape;
+
+public class ScanIndexTest {
+
+    private static final String FIXTURES = Marker.class.getPackage().getName();
+
+    @Test
+    public void testFindAnnotatedMatchesScanning() throws Exception {
+        ScanIndex index = index(getClass().getClassLoader());
+        for (Class<? extends Annotation> annotation : ImmutableList.of(Marker.class, MetaMarked.class)) {
+            Optional<Set<String>> found = index.findAnnotated(FIXTURES, annotation);
+            assertTrue(found.isPresent(), "annotation=" + annotation);
+            assertEquals(found.get(), scan(new AnnotationTypeFilter(annotation)), "annotation=" + annotation);
+        }
+        // directly, inherited from a superclass, and as a meta-annotation
+        assertEquals(index.findAnnotated(FIXTURES, Marker.class).get(), names("Circle", "Ellipse", "Square", "Triangle"));
+    }
+
+    @Test
+    public void testFindAssignableMatchesScanning() throws Exception {
+        ScanIndex index = index(getClass().getClassLoader());
+        for (Class<?> type : ImmutableList.of(Shape.class, Polygon.class, Circle.class, Plain.class)) {
+            Optional<Set<String>> found = index.findAssignable(FIXTURES, type);
+            assertTrue(found.isPresent(), "type=" + type);
+            assertEquals(found.get(), scan(new AssignableTypeFilter(type)), "type=" + type);
+        }
+        assertEquals(index.findAssignable(FIXTURES, Polygon.class).get(), names("Square", "Triangle"));
+    }
+
+    @Test
+    public void testUncoveredPackageIsScanned() throws Exception {
+        ScanIndex index = index(getClass().getClassLoader());
+        assertFalse(index.findAnnotated(ScanIndex.class.getPackage().getName(), Marker.class).isPresent());
+        assertFalse(index.findAssignable("io.cloudsoft.tosca.a4c.other", Shape.class).isPresent());
+        // a package inside a root is covered
+        assertTrue(index.findAssignable(FIXTURES + ".none", Shape.class).isPresent());
+    }
+
+    @Test
+    public void testPackageWithUnloadableClassIsScanned() throws Exception {
+        ClassLoader withoutPlain = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (name.equals(Plain.class.getName())) {
+                    throw new ClassNotFoundException(name);
+                }
+                return super.loadClass(name, resolve);
+            }
+        };
+        List<String> lines = ScanIndex.build(withoutPlain, ImmutableList.of(FIXTURES));
+        assertTrue(lines.contains(Plain.class.getName()), "lines=" + lines);
+
+        ScanIndex index = read(lines);
+        assertFalse(index.findAnnotated(FIXTURES, Marker.class).isPresent());
+        assertFalse(index.findAssignable(FIXTURES, Shape.class).isPresent());
+    }
+
+    @Test
+    public void testLoadReadsIndexFromClassLoader() throws Exception {
+        final byte[] bytes = Joiner.on('\n').join(ScanIndex.build(getClass().getClassLoader(), ImmutableList.of(FIXTURES)))
+                .getBytes(StandardCharsets.UTF_8);
+        Optional<ScanIndex> index = ScanIndex.load(new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                return ScanIndex.LOCATION.equals(name) ? new ByteArrayInputStream(bytes) : super.getResourceAsStream(name);
+            }
+        });
+        assertTrue(index.isPresent());
+        assertEquals(index.get().findAssignable(FIXTURES, Shape.class).get(), scan(new AssignableTypeFilter(Shape.class)));
+    }
+
+    @Test
+    public void testMissingIndexIsAbsent() {
+        Optional<ScanIndex> index = ScanIndex.load(new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public InputStream getResourceAsStream(String name) {
+                return ScanIndex.LOCATION.equals(name) ? null : super.getResourceAsStream(name);
+            }
+        });
+        assertFalse(index.isPresent());
+    }
+
+    @Test
+    public void testScannersScanWithoutIndex() throws Exception {
+        // the index is only written into the init bundle
+        assertFalse(ScanIndex.get().isPresent());
+        assertEquals(classNames(AnnotationScanner.scan(FIXTURES, Marker.class)), scan(new AnnotationTypeFilter(Marker.class)));
+        assertEquals(classNames(TypeScanner.scanTypes(FIXTURES, Shape.class)), scan(new AssignableTypeFilter(Shape.class)));
+    }
+
+    private ScanIndex index(ClassLoader classLoader) throws IOException {
+        return read(ScanIndex.build(classLoader, ImmutableList.of(FIXTURES)));
+    }
+
+    private ScanIndex read(List<String> lines) throws IOException {
+        return ScanIndex.read(new BufferedReader(new StringReader(Joiner.on('\n').join(lines))));
+    }
+
+    /** @return the classes in the fixtures package which the filter matches, as the scanners would find them */
+    private Set<String> scan(TypeFilter filter) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(filter);
+        Set<String> result = Sets.newHashSet();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(FIXTURES)) {
+            result.add(candidate.getBeanClassName());
+        }
+        return result;
+    }
+
+    private Set<String> names(String... simpleNames) {
+        Set<String> result = Sets.newHashSet();
+        for (String simpleName : simpleNames) {
+            result.add(FIXTURES + "." + simpleName);
+        }
+        return result;
+    }
+
+    private Set<String> classNames(Set<Class<?>> classes) {
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        for (Class<?> clazz : classes) {
+            result.add(clazz.getName());
+        }
+        return result.build();
+    }
+
+}
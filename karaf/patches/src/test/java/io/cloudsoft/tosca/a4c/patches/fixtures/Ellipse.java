@@ -0,0 +1,5 @@
+package io.cloudsoft.tosca.a4c.patches.fixtures;
+
+/** Inherits {@link Marker} from its superclass. */
+public class Ellipse extends Circle {
+}
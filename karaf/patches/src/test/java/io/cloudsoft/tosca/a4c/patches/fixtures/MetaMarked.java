@@ -0,0 +1,13 @@
+package io.cloudsoft.tosca.a4c.patches.fixtures;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** Marks a class with {@link Marker} as a meta-annotation. */
+@Marker
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface MetaMarked {
+}
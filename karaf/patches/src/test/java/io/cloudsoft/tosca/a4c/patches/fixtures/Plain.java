@@ -0,0 +1,4 @@
+package io.cloudsoft.tosca.a4c.patches.fixtures;
+
+public class Plain {
+}
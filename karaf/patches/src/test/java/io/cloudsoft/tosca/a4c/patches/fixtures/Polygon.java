@@ -0,0 +1,5 @@
+package io.cloudsoft.tosca.a4c.patches.fixtures;
+
+@Marker
+public abstract class Polygon implements Shape {
+}
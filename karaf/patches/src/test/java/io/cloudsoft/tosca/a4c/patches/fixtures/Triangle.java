@@ -0,0 +1,5 @@
+package io.cloudsoft.tosca.a4c.patches.fixtures;
+
+@MetaMarked
+public class Triangle extends Polygon {
+}